@@ -0,0 +1,9 @@
+package org.ldclrcq.dto;
+
+public record BlobMigrationResponse(
+        String target,
+        int migratedPages,
+        int migratedCovers,
+        long migratedBytes,
+        int failures
+) {}
@@ -10,6 +10,8 @@ public record CookbookDetailResponse(
         Instant createdAt,
         long recipeCount,
         boolean hasCover,
+        String coverHash,
+        String coverColor,
         String ocrStatus,
         String ocrErrorMessage
 ) {}
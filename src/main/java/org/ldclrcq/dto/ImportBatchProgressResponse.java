@@ -0,0 +1,19 @@
+package org.ldclrcq.dto;
+
+import org.ldclrcq.entity.Cookbook;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public record ImportBatchProgressResponse(
+        UUID batchId,
+        Instant createdAt,
+        int total,
+        int queued,
+        int processing,
+        int completed,
+        int failed,
+        boolean done,
+        List<Cookbook.BatchMemberRef> cookbooks
+) {}
@@ -0,0 +1,8 @@
+package org.ldclrcq.dto;
+
+import java.util.List;
+
+public record IngredientSuggestionsRequest(
+        List<String> names,
+        Integer limit
+) {}
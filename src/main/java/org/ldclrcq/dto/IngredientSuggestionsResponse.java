@@ -0,0 +1,18 @@
+package org.ldclrcq.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+public record IngredientSuggestionsResponse(
+        List<NameSuggestions> suggestions
+) {
+    /**
+     * Existing ingredients that look like a requested name, most similar first.
+     */
+    public record NameSuggestions(String name, List<Match> matches) {}
+
+    /**
+     * An existing ingredient and how similar it is to the requested name, from 0 to 1.
+     */
+    public record Match(UUID ingredientId, String name, double score) {}
+}
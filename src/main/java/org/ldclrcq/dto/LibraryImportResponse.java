@@ -0,0 +1,12 @@
+package org.ldclrcq.dto;
+
+import org.ldclrcq.service.LibraryImportService;
+
+import java.util.List;
+import java.util.UUID;
+
+public record LibraryImportResponse(
+        UUID batchId,
+        List<LibraryImportService.ImportedCookbook> cookbooks,
+        List<LibraryImportService.SkippedFolder> skipped
+) {}
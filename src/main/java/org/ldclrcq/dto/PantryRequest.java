@@ -0,0 +1,9 @@
+package org.ldclrcq.dto;
+
+import java.util.List;
+
+public record PantryRequest(
+        List<String> ingredients,
+        String cursor,
+        Integer limit
+) {}
@@ -0,0 +1,14 @@
+package org.ldclrcq.dto;
+
+import java.util.List;
+
+public record PantryResponse(
+        List<PantryRecipe> recipes,
+        String nextCursor,
+        boolean hasMore
+) {
+    /**
+     * A recipe with how many of its ingredients are on hand, and the names of those that are not.
+     */
+    public record PantryRecipe(RecipeResponse recipe, int ingredientsOnHand, int ingredientCount, List<String> missingIngredients) {}
+}
@@ -1,8 +1,15 @@
 package org.ldclrcq.dto;
 
+import java.util.List;
 import java.util.UUID;
 
 public record UploadIndexPagesResponse(
         UUID cookbookId,
-        int pageCount
-) {}
+        int pageCount,
+        List<DuplicatePage> duplicates
+) {
+    /**
+     * An uploaded page that the cookbook already had, and the page it was linked to instead.
+     */
+    public record DuplicatePage(String fileName, UUID pageId) {}
+}
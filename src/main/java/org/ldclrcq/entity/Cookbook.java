@@ -18,6 +18,7 @@ public class Cookbook extends PanacheEntityBase {
 
     public enum OcrStatus {
         NONE,
+        QUEUED,
         PROCESSING,
         COMPLETED,
         COMPLETED_WITH_ERRORS,
@@ -43,10 +44,26 @@ public class Cookbook extends PanacheEntityBase {
     @Column(name = "updated_at", nullable = false)
     public Instant updatedAt;
 
-    @Lob
-    @Basic(fetch = FetchType.LAZY)
-    @Column(name = "cover_data")
-    public byte[] coverData;
+    /**
+     * Blob store key of the cover image, if any.
+     */
+    @Column(name = "cover_key")
+    public String coverKey;
+
+    @Column(name = "cover_size")
+    public Long coverSize;
+
+    @Column(name = "cover_sha256")
+    public String coverSha256;
+
+    /**
+     * Dominant color of the cover as {@code #rrggbb}, or null if it could not be decoded.
+     */
+    @Column(name = "cover_color")
+    public String coverColor;
+
+    @Column(name = "cover_uploaded_at")
+    public Instant coverUploadedAt;
 
     @Column(name = "cover_content_type")
     public String coverContentType;
@@ -54,6 +71,12 @@ public class Cookbook extends PanacheEntityBase {
     @Column(name = "has_cover", nullable = false)
     public boolean hasCover = false;
 
+    /**
+     * When the index page images of a confirmed import are due for deletion, if ever.
+     */
+    @Column(name = "index_pages_purge_after")
+    public Instant indexPagesPurgeAfter;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "ocr_status", nullable = false)
     public OcrStatus ocrStatus = OcrStatus.NONE;
@@ -61,6 +84,12 @@ public class Cookbook extends PanacheEntityBase {
     @Column(name = "ocr_error_message")
     public String ocrErrorMessage;
 
+    /**
+     * Library import this cookbook was created by, if any.
+     */
+    @Column(name = "import_batch_id")
+    public UUID importBatchId;
+
     public Cookbook() {
     }
 
@@ -75,6 +104,14 @@ public class Cookbook extends PanacheEntityBase {
         return find("id", id).firstResultOptional();
     }
 
+    /**
+     * Loads a cookbook and locks its row until the end of the transaction, serializing
+     * concurrent writers of the same cookbook.
+     */
+    public static Optional<Cookbook> findByIdForUpdate(UUID id) {
+        return Optional.ofNullable(findById(id, LockModeType.PESSIMISTIC_WRITE));
+    }
+
     public static List<Cookbook> listAll() {
         return findAll().list();
     }
@@ -83,6 +120,84 @@ public class Cookbook extends PanacheEntityBase {
         return Recipe.countByCookbookId(this.id);
     }
 
+    /**
+     * Atomically moves a cookbook to PROCESSING unless it already is. Concurrent starts for the
+     * same cookbook coalesce on the row lock: exactly one of them gets 1 back.
+     */
+    public static int claimOcrProcessing(UUID id) {
+        return update("ocrStatus = ?1, ocrErrorMessage = null where id = ?2 and ocrStatus <> ?1",
+                OcrStatus.PROCESSING, id);
+    }
+
+    /**
+     * Moves a queued cookbook to PROCESSING. Returns 0 if it was started, deleted or processed
+     * some other way in the meantime.
+     */
+    public static int claimQueuedOcrProcessing(UUID id) {
+        return update("ocrStatus = ?1, ocrErrorMessage = null where id = ?2 and ocrStatus = ?3",
+                OcrStatus.PROCESSING, id, OcrStatus.QUEUED);
+    }
+
+    public static List<UUID> findIdsByOcrStatus(OcrStatus status) {
+        return getEntityManager()
+                .createQuery("SELECT c.id FROM Cookbook c WHERE c.ocrStatus = :status ORDER BY c.createdAt", UUID.class)
+                .setParameter("status", status)
+                .getResultList();
+    }
+
+    /**
+     * Title and OCR status of a cookbook, used to report the progress of an import batch.
+     */
+    public record BatchMemberRef(UUID id, String title, OcrStatus ocrStatus, String ocrErrorMessage) {
+    }
+
+    public static List<BatchMemberRef> findBatchMemberRefs(UUID importBatchId) {
+        return find("importBatchId = ?1 ORDER BY createdAt", importBatchId).project(BatchMemberRef.class).list();
+    }
+
+    /**
+     * Cover reference of a cookbook, used when moving covers between blob stores.
+     */
+    public record CoverRef(UUID id, String coverKey, String coverSha256) {
+    }
+
+    /**
+     * Cookbooks whose cover is not in the given blob store, by ascending id after {@code afterId}.
+     */
+    public static List<CoverRef> findCoverRefsOutsideStore(String scheme, UUID afterId, int limit) {
+        return find("coverKey IS NOT NULL AND coverKey NOT LIKE ?1 AND id > ?2 ORDER BY id", scheme + ":%", afterId)
+                .page(0, limit)
+                .project(CoverRef.class)
+                .list();
+    }
+
+    /**
+     * Points a cookbook at a new cover key, unless its cover changed in the meantime.
+     */
+    public static int moveCover(UUID id, String fromKey, String toKey) {
+        return update("coverKey = ?1 where id = ?2 and coverKey = ?3", toKey, id, fromKey);
+    }
+
+    public static long countByCoverKey(String coverKey) {
+        return count("coverKey", coverKey);
+    }
+
+    public static int scheduleIndexPagePurge(UUID id, Instant purgeAfter) {
+        return update("indexPagesPurgeAfter = ?1 where id = ?2", purgeAfter, id);
+    }
+
+    public static int clearIndexPagePurge(UUID id) {
+        return update("indexPagesPurgeAfter = null where id = ?1", id);
+    }
+
+    public static List<UUID> findIdsDueForIndexPagePurge(Instant now, int limit) {
+        return getEntityManager()
+                .createQuery("SELECT c.id FROM Cookbook c WHERE c.indexPagesPurgeAfter <= :now ORDER BY c.indexPagesPurgeAfter", UUID.class)
+                .setParameter("now", now)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
     public static int updateOcrStatus(UUID id, OcrStatus status, String errorMessage) {
         return update("ocrStatus = ?1, ocrErrorMessage = ?2 where id = ?3", status, errorMessage, id);
     }
@@ -6,9 +6,11 @@ import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.hibernate.annotations.UuidGenerator;
+import org.ldclrcq.service.BlobStore;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Entity
@@ -26,14 +28,61 @@ public class CookbookIndexPage extends PanacheEntityBase {
     @Column(name = "page_order", nullable = false)
     public int pageOrder;
 
-    @Lob
-    @Basic(fetch = FetchType.LAZY)
-    @Column(name = "image_data", nullable = false)
-    public byte[] imageData;
+    /**
+     * Blob store key of the image, resolved through {@link org.ldclrcq.service.Blobs}.
+     */
+    @Column(name = "image_key", nullable = false)
+    public String imageKey;
+
+    @Column(name = "image_size", nullable = false)
+    public long imageSize;
+
+    @Column(name = "image_sha256", nullable = false)
+    public String imageSha256;
 
     @Column(name = "content_type", nullable = false)
     public String contentType;
 
+    /**
+     * Whether the image was already recompressed to archive quality.
+     */
+    @Column(name = "archived", nullable = false)
+    public boolean archived;
+
+    /**
+     * Text extracted from the page of a digital PDF, or null for scanned pages and photos.
+     */
+    @Column(name = "text_layer")
+    public String textLayer;
+
+    /**
+     * Blob store key of a small JPEG preview for the review UI, if one could be made.
+     */
+    @Column(name = "preview_key")
+    public String previewKey;
+
+    @Column(name = "preview_size")
+    public Long previewSize;
+
+    /**
+     * 64-bit difference hash of the image, or null until it has been computed.
+     */
+    @Column(name = "perceptual_hash")
+    public Long perceptualHash;
+
+    /**
+     * Earlier page of the same cookbook that this page looks like, e.g. the same page photographed
+     * twice. Such pages are skipped by OCR.
+     */
+    @Column(name = "duplicate_of_page_id")
+    public UUID duplicateOfPageId;
+
+    /**
+     * Whether the user said this page is not a duplicate, so it is never flagged again.
+     */
+    @Column(name = "duplicate_dismissed", nullable = false)
+    public boolean duplicateDismissed;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     public Instant createdAt;
@@ -45,26 +94,199 @@ public class CookbookIndexPage extends PanacheEntityBase {
     public CookbookIndexPage() {
     }
 
-    public static CookbookIndexPage create(UUID cookbookId, int pageOrder, byte[] imageData, String contentType) {
+    /**
+     * Page metadata, used to list pages without loading their image data.
+     */
+    public record PageRef(UUID id, int pageOrder, String imageKey, String contentType, String textLayer) {
+    }
+
+    public static CookbookIndexPage create(UUID cookbookId, int pageOrder, BlobStore.StoredBlob image, String contentType) {
         validateContentType(contentType);
         CookbookIndexPage page = new CookbookIndexPage();
         page.cookbookId = cookbookId;
         page.pageOrder = pageOrder;
-        page.imageData = imageData;
+        page.imageKey = image.key();
+        page.imageSize = image.size();
+        page.imageSha256 = image.sha256();
         page.contentType = contentType;
         return page;
     }
 
-    private static void validateContentType(String contentType) {
+    /**
+     * Adds a page after the last page of a cookbook. The cookbook row is locked so that
+     * concurrent uploads append one after the other. Must run in a transaction.
+     *
+     * @return the new page, or empty if the cookbook does not exist
+     */
+    public static Optional<CookbookIndexPage> append(UUID cookbookId, BlobStore.StoredBlob image, String contentType,
+                                                     BlobStore.StoredBlob preview, Long perceptualHash,
+                                                     String textLayer) {
+        if (Cookbook.findByIdForUpdate(cookbookId).isEmpty()) {
+            return Optional.empty();
+        }
+        CookbookIndexPage page = create(cookbookId, nextPageOrder(cookbookId), image, contentType);
+        page.attachPreview(preview);
+        page.perceptualHash = perceptualHash;
+        page.textLayer = textLayer;
+        page.persist();
+        return Optional.of(page);
+    }
+
+    public void attachPreview(BlobStore.StoredBlob preview) {
+        previewKey = preview != null ? preview.key() : null;
+        previewSize = preview != null ? preview.size() : null;
+    }
+
+    public static void validateContentType(String contentType) {
         if (contentType == null || (!contentType.equals("image/jpeg") && !contentType.equals("image/png"))) {
             throw new IllegalArgumentException("Content type must be image/jpeg or image/png");
         }
     }
 
+    public static Optional<CookbookIndexPage> findByIdAndCookbookId(UUID id, UUID cookbookId) {
+        return find("id = ?1 AND cookbookId = ?2", id, cookbookId).firstResultOptional();
+    }
+
     public static List<CookbookIndexPage> findByCookbookIdOrdered(UUID cookbookId) {
         return list("cookbookId = ?1 ORDER BY pageOrder", cookbookId);
     }
 
+    public static List<PageRef> findRefsByCookbookIdOrdered(UUID cookbookId) {
+        return find("cookbookId = ?1 ORDER BY pageOrder", cookbookId).project(PageRef.class).list();
+    }
+
+    public static int nextPageOrder(UUID cookbookId) {
+        Integer max = getEntityManager()
+                .createQuery("SELECT MAX(p.pageOrder) FROM CookbookIndexPage p WHERE p.cookbookId = :cookbookId", Integer.class)
+                .setParameter("cookbookId", cookbookId)
+                .getSingleResult();
+        return max != null ? max + 1 : 0;
+    }
+
+    /**
+     * Image reference of a page, used when moving images between blob stores.
+     */
+    public record ImageRef(UUID id, String imageKey, String imageSha256) {
+    }
+
+    /**
+     * Pages whose image is not in the given blob store, by ascending id after {@code afterId}.
+     */
+    public static List<ImageRef> findImageRefsOutsideStore(String scheme, UUID afterId, int limit) {
+        return find("imageKey NOT LIKE ?1 AND id > ?2 ORDER BY id", scheme + ":%", afterId)
+                .page(0, limit)
+                .project(ImageRef.class)
+                .list();
+    }
+
+    /**
+     * Points a page at a new image key, unless its image changed in the meantime.
+     */
+    public static int moveImage(UUID id, String fromKey, String toKey) {
+        return update("imageKey = ?1 where id = ?2 and imageKey = ?3", toKey, id, fromKey);
+    }
+
+    /**
+     * Image reference of a page, used when archiving or purging images.
+     */
+    public record StoredImageRef(UUID id, String imageKey, long imageSize, String contentType, String previewKey) {
+    }
+
+    public static List<StoredImageRef> findStoredImageRefs(UUID cookbookId) {
+        return find("cookbookId = ?1 ORDER BY pageOrder", cookbookId).project(StoredImageRef.class).list();
+    }
+
+    public static List<StoredImageRef> findUnarchivedImageRefs(UUID cookbookId) {
+        return find("cookbookId = ?1 AND archived = false ORDER BY pageOrder", cookbookId)
+                .project(StoredImageRef.class)
+                .list();
+    }
+
+    /**
+     * Replaces a page image by its archive copy, unless the image changed in the meantime.
+     */
+    public static int replaceWithArchive(UUID id, String fromKey, BlobStore.StoredBlob archive, String contentType) {
+        return update("imageKey = ?1, imageSize = ?2, imageSha256 = ?3, contentType = ?4, archived = true where id = ?5 and imageKey = ?6",
+                archive.key(), archive.size(), archive.sha256(), contentType, id, fromKey);
+    }
+
+    public static int markArchived(UUID id) {
+        return update("archived = true where id = ?1", id);
+    }
+
+    /**
+     * Perceptual hash state of a page, used to flag near-duplicates.
+     */
+    public record HashRef(UUID id, int pageOrder, String imageKey, Long perceptualHash, UUID duplicateOfPageId,
+                          boolean duplicateDismissed) {
+    }
+
+    public static List<HashRef> findHashRefsByCookbookIdOrdered(UUID cookbookId) {
+        return find("cookbookId = ?1 ORDER BY pageOrder", cookbookId).project(HashRef.class).list();
+    }
+
+    public record HashedPage(UUID id, UUID cookbookId, long perceptualHash) {
+    }
+
+    public static List<HashedPage> findHashedPages() {
+        return find("perceptualHash IS NOT NULL").project(HashedPage.class).list();
+    }
+
+    /**
+     * Page identity for near-duplicate matches, by page id.
+     */
+    public record PageLocation(UUID id, UUID cookbookId, int pageOrder) {
+    }
+
+    public static List<PageLocation> findLocationsByIds(List<UUID> ids) {
+        return find("id IN ?1", ids).project(PageLocation.class).list();
+    }
+
+    public static int updatePerceptualHash(UUID id, long perceptualHash) {
+        return update("perceptualHash = ?1 where id = ?2", perceptualHash, id);
+    }
+
+    public static int updateDuplicateOf(UUID id, UUID duplicateOfPageId) {
+        return update("duplicateOfPageId = ?1 where id = ?2", duplicateOfPageId, id);
+    }
+
+    /**
+     * Records that a page is not a duplicate after all.
+     */
+    public static int dismissDuplicate(UUID id, UUID cookbookId) {
+        return update("duplicateOfPageId = null, duplicateDismissed = true where id = ?1 and cookbookId = ?2", id, cookbookId);
+    }
+
+    public static long countByPreviewKey(String previewKey) {
+        return count("previewKey", previewKey);
+    }
+
+    public static Optional<UUID> findIdByCookbookIdAndImageSha256(UUID cookbookId, String imageSha256) {
+        return getEntityManager()
+                .createQuery("SELECT p.id FROM CookbookIndexPage p WHERE p.cookbookId = :cookbookId AND p.imageSha256 = :sha256", UUID.class)
+                .setParameter("cookbookId", cookbookId)
+                .setParameter("sha256", imageSha256)
+                .setMaxResults(1)
+                .getResultStream()
+                .findFirst();
+    }
+
+    /**
+     * Finds a stored image with the given content, so that an identical upload can share it.
+     */
+    public static Optional<String> findImageKeyBySha256(String imageSha256) {
+        return getEntityManager()
+                .createQuery("SELECT p.imageKey FROM CookbookIndexPage p WHERE p.imageSha256 = :sha256", String.class)
+                .setParameter("sha256", imageSha256)
+                .setMaxResults(1)
+                .getResultStream()
+                .findFirst();
+    }
+
+    public static long countByImageKey(String imageKey) {
+        return count("imageKey", imageKey);
+    }
+
     public static long deleteByCookbookId(UUID cookbookId) {
         return delete("cookbookId", cookbookId);
     }
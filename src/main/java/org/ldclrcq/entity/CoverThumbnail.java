@@ -0,0 +1,80 @@
+package org.ldclrcq.entity;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UuidGenerator;
+import org.ldclrcq.service.BlobStore;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Fixed-width variant of a cookbook cover. Variants are tied to the hash of the cover they were
+ * made from, so a variant of a replaced cover is never served.
+ */
+@Entity
+@Table(name = "cover_thumbnail")
+public class CoverThumbnail extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue
+    @UuidGenerator(style = UuidGenerator.Style.TIME)
+    public UUID id;
+
+    @Column(name = "cookbook_id", nullable = false)
+    public UUID cookbookId;
+
+    @Column(name = "width", nullable = false)
+    public int width;
+
+    @Column(name = "cover_sha256", nullable = false)
+    public String coverSha256;
+
+    @Column(name = "blob_key", nullable = false)
+    public String blobKey;
+
+    @Column(name = "blob_size", nullable = false)
+    public long blobSize;
+
+    @Column(name = "content_type", nullable = false)
+    public String contentType;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    public Instant createdAt;
+
+    public CoverThumbnail() {
+    }
+
+    public static CoverThumbnail create(UUID cookbookId, int width, String coverSha256, BlobStore.StoredBlob blob,
+                                        String contentType) {
+        CoverThumbnail thumbnail = new CoverThumbnail();
+        thumbnail.cookbookId = cookbookId;
+        thumbnail.width = width;
+        thumbnail.coverSha256 = coverSha256;
+        thumbnail.blobKey = blob.key();
+        thumbnail.blobSize = blob.size();
+        thumbnail.contentType = contentType;
+        return thumbnail;
+    }
+
+    public static Optional<CoverThumbnail> findVariant(UUID cookbookId, int width, String coverSha256) {
+        return find("cookbookId = ?1 AND width = ?2 AND coverSha256 = ?3", cookbookId, width, coverSha256)
+                .firstResultOptional();
+    }
+
+    public static List<CoverThumbnail> findByCookbookId(UUID cookbookId) {
+        return list("cookbookId", cookbookId);
+    }
+
+    public static long countByBlobKey(String blobKey) {
+        return count("blobKey", blobKey);
+    }
+
+    public static long deleteByCookbookId(UUID cookbookId) {
+        return delete("cookbookId", cookbookId);
+    }
+}
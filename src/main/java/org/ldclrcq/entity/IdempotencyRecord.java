@@ -0,0 +1,114 @@
+package org.ldclrcq.entity;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+import org.hibernate.annotations.UuidGenerator;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Stored outcome of a request sent with an {@code Idempotency-Key} header. A row without a
+ * status code is a reservation for a request still in progress, identified by its id so that a
+ * request whose reservation was taken over cannot complete or release the new one.
+ */
+@Entity
+@Table(name = "idempotency_key")
+public class IdempotencyRecord extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue
+    @UuidGenerator(style = UuidGenerator.Style.TIME)
+    public UUID id;
+
+    @Column(name = "scope", nullable = false)
+    public String scope;
+
+    @Column(name = "idempotency_key", nullable = false)
+    public String idempotencyKey;
+
+    @Column(name = "status_code")
+    public Integer statusCode;
+
+    @Column(name = "content_type")
+    public String contentType;
+
+    @Column(name = "response_body")
+    public String responseBody;
+
+    @Column(name = "request_hash", length = 64)
+    public String requestHash;
+
+    @Column(name = "created_at", nullable = false)
+    public Instant createdAt;
+
+    @Column(name = "completed_at")
+    public Instant completedAt;
+
+    public IdempotencyRecord() {
+    }
+
+    public boolean isCompleted() {
+        return statusCode != null;
+    }
+
+    /**
+     * Atomically reserves a key. Records that have expired, and reservations older than the
+     * in-progress timeout, whose request most likely died without a response, are discarded
+     * first so that the key can be taken over.
+     *
+     * @return the id of the reservation, or empty if a record for the key already exists
+     */
+    public static Optional<UUID> reserve(String scope, String key, String requestHash, Duration ttl, Duration inProgressTimeout) {
+        var em = getEntityManager();
+        Instant now = Instant.now();
+        em.createNativeQuery("""
+                DELETE FROM idempotency_key
+                WHERE scope = :scope AND idempotency_key = :key
+                  AND (created_at < :expiredBefore OR (status_code IS NULL AND created_at < :staleBefore))
+                """)
+                .setParameter("scope", scope)
+                .setParameter("key", key)
+                .setParameter("expiredBefore", now.minus(ttl))
+                .setParameter("staleBefore", now.minus(inProgressTimeout))
+                .executeUpdate();
+
+        UUID id = UUID.randomUUID();
+        boolean reserved = em.createNativeQuery("""
+                INSERT INTO idempotency_key (id, scope, idempotency_key, request_hash, created_at)
+                VALUES (:id, :scope, :key, :requestHash, :createdAt)
+                ON CONFLICT (scope, idempotency_key) DO NOTHING
+                """)
+                .setParameter("id", id)
+                .setParameter("scope", scope)
+                .setParameter("key", key)
+                .setParameter("requestHash", requestHash)
+                .setParameter("createdAt", now)
+                .executeUpdate() == 1;
+        return reserved ? Optional.of(id) : Optional.empty();
+    }
+
+    public static Optional<IdempotencyRecord> findByScopeAndKey(String scope, String key) {
+        return find("scope = ?1 AND idempotencyKey = ?2", scope, key).firstResultOptional();
+    }
+
+    public static int complete(UUID id, int statusCode, String contentType, String responseBody) {
+        return update("statusCode = ?1, contentType = ?2, responseBody = ?3, completedAt = ?4 where id = ?5 and statusCode IS NULL",
+                statusCode, contentType, responseBody, Instant.now(), id);
+    }
+
+    public static long release(UUID id) {
+        return delete("id = ?1 AND statusCode IS NULL", id);
+    }
+
+    /**
+     * Deletes the records created before a given time, completed or not.
+     *
+     * @return the number of records deleted
+     */
+    public static long deleteCreatedBefore(Instant before) {
+        return delete("createdAt < ?1", before);
+    }
+}
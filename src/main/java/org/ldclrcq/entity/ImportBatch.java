@@ -0,0 +1,41 @@
+package org.ldclrcq.entity;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UuidGenerator;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Cookbooks imported together from one library archive, tracked for aggregate OCR progress.
+ */
+@Entity
+@Table(name = "import_batch")
+public class ImportBatch extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue
+    @UuidGenerator(style = UuidGenerator.Style.TIME)
+    public UUID id;
+
+    @Column(name = "cookbook_count", nullable = false)
+    public int cookbookCount;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    public Instant createdAt;
+
+    public ImportBatch() {
+    }
+
+    public static Optional<ImportBatch> findByIdOptional(UUID id) {
+        return find("id", id).firstResultOptional();
+    }
+
+    public static int incrementCookbookCount(UUID id) {
+        return update("cookbookCount = cookbookCount + 1 where id = ?1", id);
+    }
+}
@@ -67,6 +67,35 @@ public class Ingredient extends PanacheEntityBase {
         return find("name", normalize(name)).firstResultOptional();
     }
 
+    /**
+     * Resolves names to ingredients, by ingredient name or disambiguation, in one query. A name
+     * that is both the name of an ingredient and a disambiguation of another resolves to the
+     * former.
+     *
+     * @param names normalized names
+     * @return the ids of the names that were found
+     */
+    public static Map<String, UUID> findIdsByNames(Collection<String> names) {
+        if (names.isEmpty()) {
+            return Map.of();
+        }
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = getEntityManager().createNativeQuery("""
+                SELECT i.name, i.id, 0 AS priority FROM ingredient i WHERE i.name IN (:names)
+                UNION ALL
+                SELECT d.name, d.ingredient_id, 1 AS priority FROM ingredient_disambiguation d WHERE d.name IN (:names)
+                ORDER BY priority
+                """)
+                .setParameter("names", List.copyOf(names))
+                .getResultList();
+
+        Map<String, UUID> ids = new HashMap<>();
+        for (Object[] row : rows) {
+            ids.putIfAbsent((String) row[0], (UUID) row[1]);
+        }
+        return ids;
+    }
+
     public static List<Ingredient> findWithFilters(String query, Integer minRecipeCount, Boolean hasDisambiguations,
                                                    Boolean availableNow, UUID cursor, int limit) {
         StringBuilder jpql = new StringBuilder();
@@ -220,6 +249,96 @@ public class Ingredient extends PanacheEntityBase {
         return typedQuery.setMaxResults(limit).getResultList();
     }
 
+    /**
+     * Loads the months every ingredient is available in. Ingredients without months are left out.
+     */
+    public static Map<UUID, Set<Integer>> findAllAvailableMonths() {
+        return queryAvailableMonths("TRUE", Map.of());
+    }
+
+    /**
+     * Loads the months some ingredients are available in. Ingredients without months, including
+     * ingredients that do not exist anymore, are left out.
+     */
+    public static Map<UUID, Set<Integer>> findAvailableMonths(Collection<UUID> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return queryAvailableMonths("ingredient_id IN (:ids)", Map.of("ids", List.copyOf(ids)));
+    }
+
+    private static Map<UUID, Set<Integer>> queryAvailableMonths(String condition, Map<String, Object> params) {
+        var query = getEntityManager().createNativeQuery(
+                "SELECT ingredient_id, month FROM ingredient_available_month WHERE " + condition);
+        params.forEach(query::setParameter);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+
+        Map<UUID, Set<Integer>> months = new HashMap<>();
+        for (Object[] row : rows) {
+            months.computeIfAbsent((UUID) row[0], id -> new HashSet<>()).add(((Number) row[1]).intValue());
+        }
+        return months;
+    }
+
+    /**
+     * An existing ingredient that looks like a searched name.
+     */
+    public record SimilarIngredient(String query, UUID ingredientId, String name, double score) {
+    }
+
+    /**
+     * Finds, for each name, the existing ingredients whose name or one of its disambiguations is
+     * most similar to it, by trigram similarity, in a single query. Candidates come from the
+     * trigram indexes, which only return matches at least as similar as the
+     * pg_trgm.similarity_threshold set for the transaction.
+     *
+     * @param names         normalized names, without line breaks
+     * @param limit         maximum number of ingredients per name
+     * @param minSimilarity minimum similarity, from 0 to 1
+     * @return the matches, grouped by name in the order of the names, most similar first
+     */
+    public static List<SimilarIngredient> findSimilar(List<String> names, int limit, double minSimilarity) {
+        if (names.isEmpty()) {
+            return List.of();
+        }
+        var em = getEntityManager();
+        em.createNativeQuery("SELECT set_config('pg_trgm.similarity_threshold', :threshold, true)")
+                .setParameter("threshold", String.valueOf(minSimilarity))
+                .getSingleResult();
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery("""
+                SELECT q.name, i.id, i.name, m.score
+                FROM unnest(string_to_array(:names, E'\\n')) WITH ORDINALITY AS q(name, position)
+                CROSS JOIN LATERAL (
+                    SELECT c.ingredient_id, MAX(c.score) AS score
+                    FROM (
+                        SELECT i.id AS ingredient_id, similarity(i.name, q.name) AS score
+                        FROM ingredient i
+                        WHERE i.name % q.name
+                        UNION ALL
+                        SELECT d.ingredient_id, similarity(d.name, q.name)
+                        FROM ingredient_disambiguation d
+                        WHERE d.name % q.name
+                    ) c
+                    GROUP BY c.ingredient_id
+                    ORDER BY score DESC, c.ingredient_id
+                    LIMIT :limit
+                ) m
+                JOIN ingredient i ON i.id = m.ingredient_id
+                ORDER BY q.position, m.score DESC, i.name
+                """)
+                .setParameter("names", String.join("\n", names))
+                .setParameter("limit", limit)
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> new SimilarIngredient((String) row[0], (UUID) row[1], (String) row[2],
+                        ((Number) row[3]).doubleValue()))
+                .toList();
+    }
+
     public void addDisambiguation(String rawName) {
         IngredientDisambiguation disambiguation = IngredientDisambiguation.create(this, rawName);
         this.disambiguations.add(disambiguation);
@@ -0,0 +1,116 @@
+package org.ldclrcq.entity;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UuidGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archived raw model response for one index page, stored gzip-compressed so that
+ * OCR results can be re-parsed without calling the model again.
+ */
+@Entity
+@Table(name = "ocr_raw_response")
+public class OcrRawResponse extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue
+    @UuidGenerator(style = UuidGenerator.Style.TIME)
+    public UUID id;
+
+    @Column(name = "cookbook_id", nullable = false)
+    public UUID cookbookId;
+
+    @Column(name = "page_id", nullable = false)
+    public UUID pageId;
+
+    @Column(name = "page_order", nullable = false)
+    public int pageOrder;
+
+    @Column(name = "model")
+    public String model;
+
+    @Column(name = "prompt_version", nullable = false)
+    public String promptVersion;
+
+    @Column(name = "latency_ms", nullable = false)
+    public long latencyMs;
+
+    @Column(name = "finish_reason")
+    public String finishReason;
+
+    @Column(name = "partial", nullable = false)
+    public boolean partial;
+
+    @Column(name = "salvaged_count", nullable = false)
+    public int salvagedCount;
+
+    @Column(name = "response_size", nullable = false)
+    public int responseSize;
+
+    @Column(name = "response_gzip", nullable = false)
+    public byte[] responseGzip;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    public Instant createdAt;
+
+    public OcrRawResponse() {
+    }
+
+    public static OcrRawResponse create(UUID cookbookId, UUID pageId, int pageOrder, String model,
+                                        String promptVersion, long latencyMs, String finishReason, String responseText,
+                                        boolean partial, int salvagedCount) {
+        OcrRawResponse raw = new OcrRawResponse();
+        raw.cookbookId = cookbookId;
+        raw.pageId = pageId;
+        raw.pageOrder = pageOrder;
+        raw.model = model;
+        raw.promptVersion = promptVersion;
+        raw.latencyMs = latencyMs;
+        raw.finishReason = finishReason;
+        raw.partial = partial;
+        raw.salvagedCount = salvagedCount;
+        byte[] bytes = responseText.getBytes(StandardCharsets.UTF_8);
+        raw.responseSize = bytes.length;
+        raw.responseGzip = gzip(bytes);
+        return raw;
+    }
+
+    public String responseText() {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(responseGzip))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupted OCR response archive " + id, e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static List<OcrRawResponse> findByCookbookIdOrdered(UUID cookbookId) {
+        return list("cookbookId = ?1 ORDER BY pageOrder", cookbookId);
+    }
+
+    public static long deleteByCookbookId(UUID cookbookId) {
+        return delete("cookbookId", cookbookId);
+    }
+}
@@ -10,11 +10,17 @@ import org.hibernate.annotations.UuidGenerator;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Entity
 @Table(name = "recipe")
 public class Recipe extends PanacheEntityBase {
 
+    private static final int FILTER_REF_BATCH_SIZE = 1000;
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+
     @Id
     @GeneratedValue
     @UuidGenerator(style = UuidGenerator.Style.TIME)
@@ -37,6 +43,15 @@ public class Recipe extends PanacheEntityBase {
     )
     public Set<Ingredient> ingredients = new HashSet<>();
 
+    /**
+     * Words of the name stemmed in French and English, maintained by the database for
+     * full-text search. Declared so that generated schemas have it too; never read.
+     */
+    @Basic(fetch = FetchType.LAZY)
+    @Column(name = "search_vector", insertable = false, updatable = false,
+            columnDefinition = "tsvector generated always as (to_tsvector('recipe_french', name) || to_tsvector('recipe_english', name)) stored")
+    public String searchVector;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     public Instant createdAt;
@@ -78,70 +93,286 @@ public class Recipe extends PanacheEntityBase {
     }
 
     /**
-     * Search recipes with optional filters and cursor-based pagination.
+     * Ingredients a recipe must use, must use at least one of, and must not use. Empty sets do
+     * not restrict anything.
      */
-    public static SearchResult search(String nameQuery, UUID ingredientId, Boolean availableNow, UUID cookbookId, UUID cursorId, int limit) {
-        StringBuilder hql = new StringBuilder("SELECT DISTINCT r FROM Recipe r");
-        List<String> conditions = new ArrayList<>();
-        Parameters params = new Parameters();
+    public record IngredientFilter(Set<UUID> all, Set<UUID> any, Set<UUID> none) {
+
+        public static final IngredientFilter NONE = new IngredientFilter(Set.of(), Set.of(), Set.of());
 
-        boolean joinedIngredients = false;
-        if (ingredientId != null) {
-            hql.append(" JOIN r.ingredients i");
-            joinedIngredients = true;
-            conditions.add("i.id = :ingredientId");
-            params.and("ingredientId", ingredientId);
+        public static IngredientFilter of(UUID ingredientId) {
+            return ingredientId != null ? new IngredientFilter(Set.of(ingredientId), Set.of(), Set.of()) : NONE;
         }
+    }
 
-        if (availableNow != null && availableNow) {
-            if (!joinedIngredients) {
-                hql.append(" JOIN r.ingredients i");
-                joinedIngredients = true;
-            }
-            conditions.add(":currentMonth MEMBER OF i.availableMonths");
-            int currentMonth = java.time.LocalDate.now().getMonthValue();
-            params.and("currentMonth", currentMonth);
+    /**
+     * Search recipes with optional filters and cursor-based pagination. A name query is matched
+     * with full-text search: recipes are ranked by relevance, and the last word also matches as a
+     * prefix so that results show up while typing. A query made only of stopwords, such as "à la",
+     * has nothing to search for in full text, so the name is matched with LIKE instead, ordered by
+     * name. Otherwise, recipes are ordered by name.
+     * <p>
+     * With availableNow, the ingredients the recipe must use, or at least one of those it may
+     * use, must be available this month; without ingredients, any of the recipe's ingredients.
+     */
+    public static SearchResult search(String nameQuery, IngredientFilter ingredients, Boolean availableNow, UUID cookbookId, UUID cursorId, int limit) {
+        String textQuery = nameQuery != null ? toTextQuery(nameQuery) : null;
+        String tsQuery = "(to_tsquery('recipe_french', :textQuery) || to_tsquery('recipe_english', :textQuery))";
+        StringBuilder sql = new StringBuilder("SELECT r.id FROM recipe r WHERE TRUE");
+        Map<String, Object> params = new HashMap<>();
+
+        if (textQuery != null && isStopwordsOnly(tsQuery, textQuery)) {
+            sql.append(" AND lower(r.name) LIKE :namePattern");
+            params.put("namePattern", toNamePattern(nameQuery));
+            textQuery = null;
+        } else if (textQuery != null) {
+            sql.append(" AND r.search_vector @@ ").append(tsQuery);
+            params.put("textQuery", textQuery);
         }
 
-        if (nameQuery != null && !nameQuery.isBlank()) {
-            conditions.add("LOWER(r.name) LIKE :nameQuery");
-            params.and("nameQuery", "%" + nameQuery.toLowerCase().trim() + "%");
+        // Recipes using an ingredient, or one available this month if asked
+        boolean availableOnly = availableNow != null && availableNow;
+        String usesIngredient = "SELECT %s FROM recipe_ingredient ri"
+                + (availableOnly ? " JOIN ingredient_available_month m ON m.ingredient_id = ri.ingredient_id AND m.month = :currentMonth" : "")
+                + " WHERE ri.recipe_id = r.id";
+        if (availableOnly) {
+            params.put("currentMonth", java.time.LocalDate.now().getMonthValue());
+        }
+        if (!ingredients.all().isEmpty()) {
+            sql.append(" AND (").append(usesIngredient.formatted("COUNT(DISTINCT ri.ingredient_id)"))
+                    .append(" AND ri.ingredient_id IN (:allIngredients)) = :allIngredientCount");
+            params.put("allIngredients", List.copyOf(ingredients.all()));
+            params.put("allIngredientCount", (long) ingredients.all().size());
+        }
+        if (!ingredients.any().isEmpty()) {
+            sql.append(" AND EXISTS (").append(usesIngredient.formatted("1")).append(" AND ri.ingredient_id IN (:anyIngredients))");
+            params.put("anyIngredients", List.copyOf(ingredients.any()));
+        }
+        if (availableOnly && ingredients.all().isEmpty() && ingredients.any().isEmpty()) {
+            sql.append(" AND EXISTS (").append(usesIngredient.formatted("1")).append(")");
+        }
+        if (!ingredients.none().isEmpty()) {
+            sql.append(" AND NOT EXISTS (SELECT 1 FROM recipe_ingredient rn WHERE rn.recipe_id = r.id AND rn.ingredient_id IN (:noIngredients))");
+            params.put("noIngredients", List.copyOf(ingredients.none()));
         }
 
         if (cookbookId != null) {
-            conditions.add("r.cookbookId = :cookbookId");
-            params.and("cookbookId", cookbookId);
+            sql.append(" AND r.cookbook_id = :cookbookId");
+            params.put("cookbookId", cookbookId);
         }
 
+        // Most relevant first, then by name; the cursor is the last recipe of the previous page,
+        // whose sort key is computed again to continue after it
+        String sortKey = textQuery != null ? "-ts_rank(%1$s.search_vector, " + tsQuery + "), %1$s.name, %1$s.id" : "%1$s.name, %1$s.id";
         if (cursorId != null) {
-            conditions.add("r.id > :cursorId");
-            params.and("cursorId", cursorId);
-        }
-
-        if (!conditions.isEmpty()) {
-            hql.append(" WHERE ").append(String.join(" AND ", conditions));
+            sql.append(" AND (").append(sortKey.formatted("r")).append(") > (SELECT ")
+                    .append(sortKey.formatted("c")).append(" FROM recipe c WHERE c.id = :cursorId)");
+            params.put("cursorId", cursorId);
         }
 
-        hql.append(" ORDER BY r.name ASC, r.id ASC");
+        sql.append(" ORDER BY ").append(sortKey.formatted("r")).append(" LIMIT :limit");
+        params.put("limit", limit + 1);
 
-        List<Recipe> recipes = find(hql.toString(), params).page(0, limit + 1).list();
+        var query = getEntityManager().createNativeQuery(sql.toString(), UUID.class);
+        params.forEach(query::setParameter);
+        @SuppressWarnings("unchecked")
+        List<UUID> ids = query.getResultList();
 
-        boolean hasMore = recipes.size() > limit;
+        boolean hasMore = ids.size() > limit;
         if (hasMore) {
-            recipes = recipes.subList(0, limit);
+            ids = ids.subList(0, limit);
         }
+        String nextCursor = hasMore ? ids.getLast().toString() : null;
+        return new SearchResult(findByIdsOrdered(ids), nextCursor, hasMore);
+    }
 
-        String nextCursor = null;
-        if (hasMore && !recipes.isEmpty()) {
-            nextCursor = recipes.get(recipes.size() - 1).id.toString();
+    /**
+     * Loads recipes found by id elsewhere, such as in a search index.
+     *
+     * @return the recipes that still exist, in the order of the ids
+     */
+    public static List<Recipe> findByIdsOrdered(List<UUID> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
         }
+        Map<UUID, Recipe> byId = new HashMap<>();
+        List<Recipe> found = list("id IN ?1", ids);
+        found.forEach(recipe -> byId.put(recipe.id, recipe));
+        return ids.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
 
-        return new SearchResult(recipes, nextCursor, hasMore);
+    /**
+     * Turns what the user typed into a tsquery: words are ANDed, and the last one is a prefix.
+     * Anything but letters and digits is dropped, so the result is always a valid tsquery.
+     *
+     * @return the tsquery text, or null if there is no word to search for
+     */
+    static String toTextQuery(String nameQuery) {
+        List<String> words = words(nameQuery);
+        if (words.isEmpty()) {
+            return null;
+        }
+        return String.join(" & ", words) + ":*";
+    }
+
+    /**
+     * Turns what the user typed into a LIKE pattern matching names that contain its words in
+     * order, separated by single spaces. Words have no LIKE wildcard, so nothing needs escaping.
+     */
+    static String toNamePattern(String nameQuery) {
+        return "%" + String.join(" ", words(nameQuery)) + "%";
+    }
+
+    private static List<String> words(String nameQuery) {
+        List<String> words = new ArrayList<>();
+        Matcher matcher = WORD.matcher(nameQuery.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            words.add(matcher.group());
+        }
+        return words;
+    }
+
+    // Every word is dropped as a stopword by both text search configurations
+    private static boolean isStopwordsOnly(String tsQuery, String textQuery) {
+        Number nodes = (Number) getEntityManager().createNativeQuery("SELECT numnode(" + tsQuery + ")")
+                .setParameter("textQuery", textQuery)
+                .getSingleResult();
+        return nodes.intValue() == 0;
     }
 
     public record SearchResult(List<Recipe> recipes, String nextCursor, boolean hasMore) {
     }
 
+    /**
+     * Ranks the recipes using at least one of the given ingredients by the share of their
+     * ingredients that are on hand, then by how many are on hand, then by name. Paginated like
+     * {@link #search}: the cursor is the last recipe of the previous page.
+     */
+    public static PantryResult rankByPantry(Set<UUID> pantry, UUID cursorId, int limit) {
+        if (pantry.isEmpty()) {
+            return new PantryResult(List.of(), null, false);
+        }
+        String sortKey = "-(%1$s.on_hand::numeric / %1$s.total), -%1$s.on_hand, %1$s.name, %1$s.id";
+        StringBuilder sql = new StringBuilder("""
+                WITH scored AS (
+                    SELECT r.id, r.name,
+                           COUNT(*) FILTER (WHERE ri.ingredient_id IN (:pantry)) AS on_hand,
+                           COUNT(*) AS total
+                    FROM recipe r
+                    JOIN recipe_ingredient ri ON ri.recipe_id = r.id
+                    WHERE r.id IN (SELECT recipe_id FROM recipe_ingredient WHERE ingredient_id IN (:pantry))
+                    GROUP BY r.id, r.name
+                )
+                SELECT s.id, s.on_hand, s.total FROM scored s WHERE TRUE""");
+        Map<String, Object> params = new HashMap<>();
+        params.put("pantry", List.copyOf(pantry));
+
+        // A cursor that is not ranked anymore, e.g. because the pantry changed, ends the list
+        if (cursorId != null) {
+            sql.append(" AND (").append(sortKey.formatted("s")).append(") > (SELECT ")
+                    .append(sortKey.formatted("c")).append(" FROM scored c WHERE c.id = :cursorId)");
+            params.put("cursorId", cursorId);
+        }
+        sql.append(" ORDER BY ").append(sortKey.formatted("s")).append(" LIMIT :limit");
+        params.put("limit", limit + 1);
+
+        var query = getEntityManager().createNativeQuery(sql.toString());
+        params.forEach(query::setParameter);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = rows.subList(0, limit);
+        }
+        Map<UUID, Recipe> recipes = new HashMap<>();
+        findByIdsOrdered(rows.stream().map(row -> (UUID) row[0]).toList())
+                .forEach(recipe -> recipes.put(recipe.id, recipe));
+        List<PantryMatch> matches = rows.stream()
+                .filter(row -> recipes.containsKey((UUID) row[0]))
+                .map(row -> new PantryMatch(recipes.get((UUID) row[0]), ((Number) row[1]).intValue(), ((Number) row[2]).intValue()))
+                .toList();
+        String nextCursor = hasMore ? rows.getLast()[0].toString() : null;
+        return new PantryResult(matches, nextCursor, hasMore);
+    }
+
+    /**
+     * A recipe with how many of its ingredients are on hand.
+     */
+    public record PantryMatch(Recipe recipe, int onHand, int ingredientCount) {
+    }
+
+    public record PantryResult(List<PantryMatch> matches, String nextCursor, boolean hasMore) {
+    }
+
+    /**
+     * A recipe with what it can be filtered on, for in-memory indexes.
+     */
+    public record FilterRef(UUID id, String name, UUID cookbookId, Set<UUID> ingredientIds) {
+    }
+
+    /**
+     * The collation of the database, e.g. {@code en_US.UTF-8}, which recipe names are sorted with.
+     */
+    public static String findDatabaseCollation() {
+        return (String) getEntityManager()
+                .createNativeQuery("SELECT datcollate FROM pg_database WHERE datname = current_database()")
+                .getSingleResult();
+    }
+
+    /**
+     * Loads all recipes with the ids of their ingredients.
+     */
+    public static Collection<FilterRef> findAllFilterRefs() {
+        Map<UUID, FilterRef> refs = new LinkedHashMap<>();
+        queryFilterRefs("TRUE", Map.of(), refs);
+        return refs.values();
+    }
+
+    /**
+     * Loads recipes, given by id or by cookbook, with the ids of their ingredients. Recipes that
+     * do not exist anymore are left out.
+     */
+    public static Collection<FilterRef> findFilterRefs(Collection<UUID> ids, Collection<UUID> cookbookIds) {
+        Map<UUID, FilterRef> refs = new LinkedHashMap<>();
+        List<UUID> idList = List.copyOf(ids);
+        for (int from = 0; from < idList.size(); from += FILTER_REF_BATCH_SIZE) {
+            List<UUID> batch = idList.subList(from, Math.min(from + FILTER_REF_BATCH_SIZE, idList.size()));
+            queryFilterRefs("r.id IN (:ids)", Map.of("ids", batch), refs);
+        }
+        if (!cookbookIds.isEmpty()) {
+            queryFilterRefs("r.cookbook_id IN (:cookbookIds)", Map.of("cookbookIds", List.copyOf(cookbookIds)), refs);
+        }
+        return refs.values();
+    }
+
+    private static void queryFilterRefs(String condition, Map<String, Object> params, Map<UUID, FilterRef> refs) {
+        var query = getEntityManager().createNativeQuery("""
+                SELECT r.id, r.name, r.cookbook_id, ri.ingredient_id
+                FROM recipe r
+                LEFT JOIN recipe_ingredient ri ON ri.recipe_id = r.id
+                WHERE\s""" + condition)
+                .setHint("org.hibernate.fetchSize", 10_000);
+        params.forEach(query::setParameter);
+
+        Map<UUID, Set<UUID>> ingredientIds = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        Stream<Object[]> rows = query.getResultStream();
+        try (rows) {
+            rows.forEach(row -> {
+                UUID id = (UUID) row[0];
+                Set<UUID> ingredients = ingredientIds.computeIfAbsent(id, key -> {
+                    Set<UUID> set = new HashSet<>();
+                    refs.put(key, new FilterRef(key, (String) row[1], (UUID) row[2], set));
+                    return set;
+                });
+                if (row[3] != null) {
+                    ingredients.add((UUID) row[3]);
+                }
+            });
+        }
+    }
+
     /**
      * Delete all recipes for a cookbook and their ingredient associations.
      */
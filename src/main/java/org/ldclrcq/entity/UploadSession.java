@@ -0,0 +1,80 @@
+package org.ldclrcq.entity;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.annotations.UuidGenerator;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A resumable upload of one index page file. The offset is the number of bytes durably
+ * received; the page count is set once the file is complete and stored as index pages.
+ */
+@Entity
+@Table(name = "upload_session")
+public class UploadSession extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue
+    @UuidGenerator(style = UuidGenerator.Style.TIME)
+    public UUID id;
+
+    @Column(name = "cookbook_id", nullable = false)
+    public UUID cookbookId;
+
+    @Column(name = "file_name")
+    public String fileName;
+
+    @Column(name = "content_type", nullable = false)
+    public String contentType;
+
+    @Column(name = "upload_length", nullable = false)
+    public long uploadLength;
+
+    @Column(name = "upload_offset", nullable = false)
+    public long uploadOffset;
+
+    @Column(name = "page_count")
+    public Integer pageCount;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    public Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    public Instant updatedAt;
+
+    public UploadSession() {
+    }
+
+    public boolean isCompleted() {
+        return pageCount != null;
+    }
+
+    public static UploadSession create(UUID cookbookId, String fileName, String contentType, long uploadLength) {
+        UploadSession session = new UploadSession();
+        session.cookbookId = cookbookId;
+        session.fileName = fileName;
+        session.contentType = contentType;
+        session.uploadLength = uploadLength;
+        return session;
+    }
+
+    public static Optional<UploadSession> findByIdAndCookbookId(UUID id, UUID cookbookId) {
+        return find("id = ?1 AND cookbookId = ?2", id, cookbookId).firstResultOptional();
+    }
+
+    public static List<UUID> findIdsUpdatedBefore(Instant cutoff, int limit) {
+        return getEntityManager()
+                .createQuery("SELECT u.id FROM UploadSession u WHERE u.updatedAt < :cutoff ORDER BY u.updatedAt", UUID.class)
+                .setParameter("cutoff", cutoff)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+}
@@ -0,0 +1,36 @@
+package org.ldclrcq.resource;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.ldclrcq.service.BlobMigrationService;
+import org.ldclrcq.service.FileSystemBlobStore;
+import org.ldclrcq.service.PostgresBlobStore;
+
+import java.util.Map;
+import java.util.Set;
+
+@Path("/api/admin/blob-store")
+@Produces(MediaType.APPLICATION_JSON)
+public class BlobStoreResource {
+
+    private static final Set<String> SCHEMES = Set.of(PostgresBlobStore.SCHEME, FileSystemBlobStore.SCHEME);
+
+    @Inject
+    BlobMigrationService migrationService;
+
+    /**
+     * Moves every page image and cover into the given store ({@code fs} or {@code pg}).
+     */
+    @POST
+    @Path("/migrate")
+    public Response migrate(@QueryParam("to") String to) {
+        if (to == null || !SCHEMES.contains(to)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", "Target store must be one of " + SCHEMES))
+                    .build();
+        }
+        return Response.ok(migrationService.migrateTo(to)).build();
+    }
+}
@@ -1,18 +1,41 @@
 package org.ldclrcq.resource;
 
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
 import org.jboss.resteasy.reactive.RestForm;
 import org.jboss.resteasy.reactive.multipart.FileUpload;
 import org.ldclrcq.dto.*;
 import org.ldclrcq.entity.*;
+import org.ldclrcq.service.BlobStore;
+import org.ldclrcq.service.Blobs;
+import org.ldclrcq.service.BlobsReleased;
+import org.ldclrcq.service.CoverColorExtractor;
+import org.ldclrcq.service.CoverChanged;
+import org.ldclrcq.service.CoverThumbnailService;
+import org.ldclrcq.service.ImageCache;
+import org.ldclrcq.service.ImportConfirmed;
+import org.ldclrcq.service.IndexPagePreparer;
+import org.ldclrcq.service.NearDuplicateDetector;
 import org.ldclrcq.service.OcrService;
+import org.ldclrcq.service.PdfPageRenderer;
+import org.ldclrcq.service.RecipesChanged;
+import org.ldclrcq.service.ResumableUploadService;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.nio.file.Files;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 @Path("/api/cookbooks")
@@ -20,9 +43,49 @@ import java.util.*;
 @Consumes(MediaType.APPLICATION_JSON)
 public class CookbookResource {
 
+    private static final int COVER_IMMUTABLE_MAX_AGE = 365 * 24 * 60 * 60;
+    private static final String TUS_VERSION = "1.0.0";
+    private static final CacheControl NO_STORE = CacheControl.valueOf("no-store");
+
     @Inject
     OcrService ocrService;
 
+    @Inject
+    Blobs blobs;
+
+    @Inject
+    CoverThumbnailService thumbnailService;
+
+    @Inject
+    CoverColorExtractor colorExtractor;
+
+    @Inject
+    ImageCache imageCache;
+
+    @Inject
+    Event<ImportConfirmed> importConfirmed;
+
+    @Inject
+    Event<RecipesChanged> recipesChanged;
+
+    @Inject
+    Event<BlobsReleased> blobsReleased;
+
+    @Inject
+    Event<CoverChanged> coverChanged;
+
+    @Inject
+    PdfPageRenderer pdfRenderer;
+
+    @Inject
+    IndexPagePreparer preparer;
+
+    @Inject
+    NearDuplicateDetector nearDuplicates;
+
+    @Inject
+    ResumableUploadService uploadService;
+
     @POST
     @Transactional
     public Response createCookbook(CreateCookbookRequest request) {
@@ -50,13 +113,31 @@ public class CookbookResource {
                     .build();
         }
 
+        // Blobs of the cookbook, deleted once the rows are gone unless shared with another cookbook
+        Set<String> blobKeys = new HashSet<>();
+        for (CookbookIndexPage.StoredImageRef page : CookbookIndexPage.findStoredImageRefs(id)) {
+            blobKeys.add(page.imageKey());
+            if (page.previewKey() != null) {
+                blobKeys.add(page.previewKey());
+            }
+        }
+        if (cookbookOpt.get().coverKey != null) {
+            blobKeys.add(cookbookOpt.get().coverKey);
+        }
+        CoverThumbnail.findByCookbookId(id).forEach(thumbnail -> blobKeys.add(thumbnail.blobKey));
+
         // Delete related entities in order (respecting dependencies)
         OcrResultEntity.deleteByCookbookId(id);
+        OcrRawResponse.deleteByCookbookId(id);
         Recipe.deleteByCookbookId(id);
         CookbookIndexPage.deleteByCookbookId(id);
+        CoverThumbnail.deleteByCookbookId(id);
 
         // Delete the cookbook itself
         Cookbook.deleteById(id);
+        coverChanged.fire(new CoverChanged(id));
+        recipesChanged.fire(RecipesChanged.ofCookbook(id));
+        blobsReleased.fire(new BlobsReleased(blobKeys));
 
         return Response.noContent().build();
     }
@@ -64,10 +145,12 @@ public class CookbookResource {
     @POST
     @Path("/{id}/index-pages")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    @Transactional
+    @Idempotent
     public Response uploadIndexPages(
             @PathParam("id") UUID cookbookId,
-            @RestForm("files") List<FileUpload> files) {
+            @RestForm("files") List<FileUpload> files,
+            @RestForm("pages") String pdfPages,
+            @RestForm("dpi") Integer pdfDpi) {
 
         if (files == null || files.isEmpty()) {
             return Response.status(Response.Status.BAD_REQUEST)
@@ -82,37 +165,172 @@ public class CookbookResource {
                     .build();
         }
 
+        // Validate every file before storing any of them
+        for (FileUpload file : files) {
+            String contentType = file.contentType();
+            if (!isValidImageType(contentType) && !PdfPageRenderer.CONTENT_TYPE.equals(contentType)) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("Invalid file type: " + contentType + ". Only JPEG, PNG and PDF are allowed.")
+                        .build();
+            }
+        }
+
+        // Images are checked, hashed and previewed in parallel, one virtual thread per file;
+        // PDFs are rendered to one JPEG page per selected PDF page. Pages keep the order of the files.
+        List<IndexPagePreparer.PreparedPage> images = new ArrayList<>();
+        List<IndexPagePreparer.PreparedPage> rendered = new ArrayList<>();
         try {
-            int pageOrder = 0;
+            List<FileUpload> imageFiles = files.stream()
+                    .filter(file -> !PdfPageRenderer.CONTENT_TYPE.equals(file.contentType()))
+                    .toList();
+            images.addAll(preparer.prepareAll(
+                    imageFiles.stream().map(FileUpload::fileName).toList(),
+                    imageFiles.stream().map(FileUpload::uploadedFile).toList(),
+                    imageFiles.stream().map(FileUpload::contentType).toList()));
+
+            List<IndexPagePreparer.PreparedPage> pages = new ArrayList<>();
+            Iterator<IndexPagePreparer.PreparedPage> nextImage = images.iterator();
             for (FileUpload file : files) {
-                String contentType = file.contentType();
-                if (!isValidImageType(contentType)) {
-                    return Response.status(Response.Status.BAD_REQUEST)
-                            .entity("Invalid image type: " + contentType + ". Only JPEG and PNG are allowed.")
-                            .build();
+                if (!PdfPageRenderer.CONTENT_TYPE.equals(file.contentType())) {
+                    pages.add(nextImage.next());
+                    continue;
+                }
+                IndexPagePreparer.checkFormat(file.fileName(), file.uploadedFile(), PdfPageRenderer.CONTENT_TYPE);
+                for (PdfPageRenderer.RenderedPage page : pdfRenderer.render(file.uploadedFile(), pdfPages, pdfDpi)) {
+                    rendered.add(new IndexPagePreparer.PreparedPage(file.fileName() + " (page " + page.pageNumber() + ")",
+                            page.image(), "image/jpeg", page.preview(), page.perceptualHash(), page.text()));
+                    pages.add(rendered.getLast());
                 }
-
-                byte[] imageData = Files.readAllBytes(file.uploadedFile());
-                CookbookIndexPage page = CookbookIndexPage.create(cookbookId, pageOrder++, imageData, contentType);
-                page.persist();
             }
 
-            return Response.ok(new UploadIndexPagesResponse(cookbookId, pageOrder)).build();
+            return Response.ok(appendIndexPages(cookbookId, pages)).build();
 
-        } catch (IOException e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity("Failed to read uploaded files: " + e.getMessage())
+        } catch (NotFoundException e) {
+            discard(images, rendered);
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("Cookbook not found: " + cookbookId)
                     .build();
         } catch (IllegalArgumentException e) {
+            discard(images, rendered);
             return Response.status(Response.Status.BAD_REQUEST)
                     .entity(e.getMessage())
                     .build();
+        } catch (Exception e) {
+            discard(images, rendered);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Failed to store uploaded files: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    private void discard(List<IndexPagePreparer.PreparedPage> images, List<IndexPagePreparer.PreparedPage> rendered) {
+        preparer.discard(images);
+        preparer.discard(rendered);
+    }
+
+    /**
+     * Adds prepared pages after the last page of a cookbook, in one transaction. Pages whose
+     * content the cookbook already has, from an earlier upload or earlier in this one, are not
+     * added again but reported with the page they duplicate. A failed upload adds no page at all,
+     * so a retry after a 5xx, which frees the idempotency key, uploads the same pages again.
+     */
+    private UploadIndexPagesResponse appendIndexPages(UUID cookbookId, List<IndexPagePreparer.PreparedPage> pages) {
+        IndexPagePreparer.Appended appended = QuarkusTransaction.requiringNew().call(() ->
+                IndexPagePreparer.append(cookbookId, pages).orElseThrow(NotFoundException::new));
+        preparer.appended(appended);
+        return new UploadIndexPagesResponse(cookbookId, appended.added().size(), appended.duplicates());
+    }
+
+    /**
+     * Creates a resumable upload of one index page file (tus protocol: {@code Upload-Length} and
+     * {@code Upload-Metadata} with a base64 {@code filetype}). Its bytes are then sent with PATCH.
+     */
+    @POST
+    @Path("/{id}/uploads")
+    @Consumes(MediaType.WILDCARD)
+    public Response createUpload(@PathParam("id") UUID cookbookId,
+                                 @HeaderParam("Upload-Length") Long length,
+                                 @HeaderParam("Upload-Metadata") String metadata) {
+        if (length == null) {
+            return tusResponse(Response.Status.BAD_REQUEST).entity("Upload-Length is required").build();
+        }
+        try {
+            Optional<ResumableUploadService.UploadStatus> upload = uploadService.create(cookbookId, length, metadata);
+            if (upload.isEmpty()) {
+                return tusResponse(Response.Status.NOT_FOUND).entity("Cookbook not found: " + cookbookId).build();
+            }
+            return tusResponse(Response.Status.CREATED)
+                    .location(URI.create("/api/cookbooks/" + cookbookId + "/uploads/" + upload.get().id()))
+                    .entity(upload.get())
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return tusResponse(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        } catch (IOException e) {
+            return tusResponse(Response.Status.INTERNAL_SERVER_ERROR).entity("Failed to create upload: " + e.getMessage()).build();
+        }
+    }
+
+    @HEAD
+    @Path("/{id}/uploads/{uploadId}")
+    public Response getUploadOffset(@PathParam("id") UUID cookbookId, @PathParam("uploadId") UUID uploadId) {
+        return uploadService.status(cookbookId, uploadId)
+                .map(upload -> uploadStatusResponse(Response.Status.OK, upload).cacheControl(NO_STORE).build())
+                .orElseGet(() -> tusResponse(Response.Status.NOT_FOUND).build());
+    }
+
+    /**
+     * Appends a chunk of a resumable upload at {@code Upload-Offset}. The last chunk stores the
+     * file as index pages, reported in the {@code Index-Page-Count} header.
+     */
+    @PATCH
+    @Path("/{id}/uploads/{uploadId}")
+    @Consumes("application/offset+octet-stream")
+    public Response appendUploadChunk(@PathParam("id") UUID cookbookId, @PathParam("uploadId") UUID uploadId,
+                                      @HeaderParam("Upload-Offset") Long offset, InputStream chunk) {
+        if (offset == null) {
+            return tusResponse(Response.Status.BAD_REQUEST).entity("Upload-Offset is required").build();
+        }
+        try {
+            return uploadService.append(cookbookId, uploadId, offset, chunk)
+                    .map(upload -> uploadStatusResponse(Response.Status.NO_CONTENT, upload).build())
+                    .orElseGet(() -> tusResponse(Response.Status.NOT_FOUND).build());
+        } catch (ResumableUploadService.OffsetConflictException e) {
+            return tusResponse(Response.Status.CONFLICT).entity(e.getMessage()).build();
+        } catch (IllegalArgumentException e) {
+            return tusResponse(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        } catch (IOException e) {
+            return tusResponse(Response.Status.INTERNAL_SERVER_ERROR).entity("Failed to store chunk: " + e.getMessage()).build();
+        }
+    }
+
+    @DELETE
+    @Path("/{id}/uploads/{uploadId}")
+    public Response cancelUpload(@PathParam("id") UUID cookbookId, @PathParam("uploadId") UUID uploadId) {
+        try {
+            return tusResponse(uploadService.cancel(cookbookId, uploadId) ? Response.Status.NO_CONTENT : Response.Status.NOT_FOUND).build();
+        } catch (IOException e) {
+            return tusResponse(Response.Status.INTERNAL_SERVER_ERROR).entity("Failed to cancel upload: " + e.getMessage()).build();
         }
     }
 
+    private static Response.ResponseBuilder tusResponse(Response.Status status) {
+        return Response.status(status).header("Tus-Resumable", TUS_VERSION);
+    }
+
+    private static Response.ResponseBuilder uploadStatusResponse(Response.Status status, ResumableUploadService.UploadStatus upload) {
+        Response.ResponseBuilder builder = tusResponse(status)
+                .header("Upload-Offset", upload.offset())
+                .header("Upload-Length", upload.length());
+        if (upload.completed()) {
+            builder.header("Index-Page-Count", upload.pageCount());
+        }
+        return builder;
+    }
+
     @POST
     @Path("/{id}/ocr/start")
     @Transactional
+    @Idempotent
     public Response startOcrProcessing(@PathParam("id") UUID cookbookId) {
         Optional<Cookbook> cookbookOpt = Cookbook.findByIdOptional(cookbookId);
         if (cookbookOpt.isEmpty()) {
@@ -138,9 +356,12 @@ public class CookbookResource {
                     .build();
         }
 
-        // Set status to PROCESSING
-        cookbook.ocrStatus = Cookbook.OcrStatus.PROCESSING;
-        cookbook.ocrErrorMessage = null;
+        // Atomically set status to PROCESSING: a concurrent start that won the race gets the job
+        if (Cookbook.claimOcrProcessing(cookbookId) == 0) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity("OCR processing is already in progress for this cookbook")
+                    .build();
+        }
 
         // Start async processing (will run after transaction commits)
         ocrService.startAsyncProcessing(cookbookId);
@@ -184,10 +405,50 @@ public class CookbookResource {
         )).build();
     }
 
+    @POST
+    @Path("/{id}/ocr/reparse")
+    public Response reparseOcrResults(@PathParam("id") UUID cookbookId) {
+        Optional<Cookbook> cookbookOpt = Cookbook.findByIdOptional(cookbookId);
+        if (cookbookOpt.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("Cookbook not found: " + cookbookId)
+                    .build();
+        }
+
+        // A queued cookbook would not be picked up by its OCR job anymore once claimed
+        Cookbook.OcrStatus previousStatus = cookbookOpt.get().ocrStatus;
+        String previousError = cookbookOpt.get().ocrErrorMessage;
+        if (previousStatus == Cookbook.OcrStatus.QUEUED
+                || QuarkusTransaction.requiringNew().call(() -> Cookbook.claimOcrProcessing(cookbookId)) == 0) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity("OCR processing is already in progress for this cookbook")
+                    .build();
+        }
+
+        // Claimed like a run, so that no run or other re-parse replaces the results meanwhile
+        int resultCount;
+        try {
+            resultCount = ocrService.reparse(cookbookId);
+        } finally {
+            QuarkusTransaction.requiringNew().run(() -> Cookbook.updateOcrStatus(cookbookId, previousStatus, previousError));
+        }
+        if (resultCount < 0) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("No archived OCR responses found for cookbook")
+                    .build();
+        }
+
+        return Response.ok(Map.of(
+                "cookbookId", cookbookId,
+                "resultCount", resultCount
+        )).build();
+    }
+
     private OcrProgressResponse.Status mapOcrStatus(Cookbook.OcrStatus status) {
         return switch (status) {
             case NONE -> OcrProgressResponse.Status.PENDING;
-            case PROCESSING -> OcrProgressResponse.Status.IN_PROGRESS;
+            // Queued cookbooks are processed without any further action from the client
+            case QUEUED, PROCESSING -> OcrProgressResponse.Status.IN_PROGRESS;
             case COMPLETED -> OcrProgressResponse.Status.COMPLETED;
             case COMPLETED_WITH_ERRORS -> OcrProgressResponse.Status.COMPLETED_WITH_ERRORS;
             case FAILED -> OcrProgressResponse.Status.FAILED;
@@ -254,6 +515,9 @@ public class CookbookResource {
         c.ocrStatus = Cookbook.OcrStatus.NONE;
         c.ocrErrorMessage = null;
 
+        // Index page images are not needed anymore: apply the retention policy once committed
+        importConfirmed.fire(new ImportConfirmed(cookbookId));
+
         return Response.ok(new ConfirmImportResponse(recipesByKey.size())).build();
     }
 
@@ -276,6 +540,8 @@ public class CookbookResource {
                         c.createdAt,
                         c.countRecipes(),
                         c.hasCover,
+                        c.coverSha256,
+                        c.coverColor,
                         c.ocrStatus.name(),
                         c.ocrErrorMessage
                 ))
@@ -303,6 +569,8 @@ public class CookbookResource {
                 c.createdAt,
                 c.countRecipes(),
                 c.hasCover,
+                c.coverSha256,
+                c.coverColor,
                 c.ocrStatus.name(),
                 c.ocrErrorMessage
         );
@@ -310,11 +578,33 @@ public class CookbookResource {
         return Response.ok(response).build();
     }
 
+    /**
+     * Streams the cover from a local file with zero-copy transfer and Range support. Only the
+     * metadata lookup touches the database; no transaction is held while the body is written.
+     * The cover hash is its strong ETag, so revalidation answers 304 without reading the blob,
+     * and a URL versioned with the current hash ({@code ?v=<hash>}) can be cached forever.
+     * {@code ?w=} selects the smallest thumbnail at least that wide, falling back to the original.
+     * Small, frequently requested images are answered from {@link ImageCache} without any
+     * database access.
+     */
     @GET
     @Path("/{id}/cover")
     @Produces({"image/jpeg", "image/png"})
-    @Transactional
-    public Response getCover(@PathParam("id") UUID id) {
+    public Response getCover(@PathParam("id") UUID id, @QueryParam("v") String version, @QueryParam("w") Integer width,
+                             @HeaderParam("Range") String range, @Context Request request) {
+        OptionalInt variantWidth = thumbnailService.variantWidth(width);
+        String cacheKey = ImageCache.key(id, variantWidth.orElse(0));
+
+        if (range == null) {
+            Optional<ImageCache.CachedImage> cached = imageCache.get(cacheKey);
+            // A versioned URL naming another cover than the cached one must go to the database
+            if (cached.isPresent() && (version == null || version.equals(cached.get().coverHash()))) {
+                return cachedCover(cached.get(), version, request);
+            }
+        }
+
+        // Read before the cover, so that a cover replaced meanwhile is not cached
+        long cacheGeneration = imageCache.generation();
         Optional<Cookbook> cookbook = Cookbook.findByIdOptional(id);
         if (cookbook.isEmpty()) {
             return Response.status(Response.Status.NOT_FOUND)
@@ -322,18 +612,185 @@ public class CookbookResource {
                     .build();
         }
         Cookbook c = cookbook.get();
-        if (!c.hasCover) {
+        if (!c.hasCover || c.coverKey == null) {
             return Response.status(Response.Status.NOT_FOUND).build();
         }
-        return Response.ok(c.coverData)
-                .type(c.coverContentType)
-                .build();
+
+        EntityTag etag = null;
+        if (c.coverSha256 != null) {
+            // Each variant is a distinct representation of the cover
+            etag = new EntityTag(variantWidth.isPresent() ? c.coverSha256 + "-w" + variantWidth.getAsInt() : c.coverSha256);
+        }
+        // HTTP dates have second precision
+        Instant uploadedAt = c.coverUploadedAt != null ? c.coverUploadedAt.truncatedTo(ChronoUnit.SECONDS) : null;
+        Date lastModified = uploadedAt != null ? Date.from(uploadedAt) : null;
+        CacheControl cacheControl = coverCacheControl(version, c.coverSha256);
+
+        Response.ResponseBuilder notModified = evaluatePreconditions(request, lastModified, etag);
+        if (notModified != null) {
+            return notModified.cacheControl(cacheControl).build();
+        }
+
+        String blobKey = c.coverKey;
+        String contentType = c.coverContentType;
+        if (variantWidth.isPresent() && c.coverSha256 != null) {
+            Optional<CoverThumbnail> thumbnail = thumbnailService.thumbnail(
+                    c.id, c.coverKey, c.coverSha256, c.coverContentType, variantWidth.getAsInt());
+            if (thumbnail.isPresent()) {
+                blobKey = thumbnail.get().blobKey;
+                contentType = thumbnail.get().contentType;
+            }
+        }
+
+        try {
+            java.nio.file.Path file = blobs.localPath(blobKey);
+            if (etag != null && imageCache.accepts(Files.size(file))) {
+                imageCache.put(cacheKey, c.coverSha256, etag.getValue(), uploadedAt, contentType, Files.readAllBytes(file),
+                        cacheGeneration);
+            }
+
+            Response.ResponseBuilder response = FileResponses.serve(file, contentType, range)
+                    .cacheControl(cacheControl);
+            if (etag != null) {
+                response.tag(etag);
+            }
+            if (lastModified != null) {
+                response.lastModified(lastModified);
+            }
+            return response.build();
+        } catch (IOException e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Failed to read cover: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    private Response cachedCover(ImageCache.CachedImage image, String version, Request request) {
+        EntityTag etag = new EntityTag(image.etag());
+        Date lastModified = image.lastModified() != null ? Date.from(image.lastModified()) : null;
+        CacheControl cacheControl = coverCacheControl(version, image.coverHash());
+
+        Response.ResponseBuilder notModified = evaluatePreconditions(request, lastModified, etag);
+        if (notModified != null) {
+            return notModified.cacheControl(cacheControl).build();
+        }
+
+        Response.ResponseBuilder response = Response.ok(image.entity())
+                .type(image.contentType())
+                .header("Accept-Ranges", "bytes")
+                .cacheControl(cacheControl)
+                .tag(etag);
+        if (lastModified != null) {
+            response.lastModified(lastModified);
+        }
+        return response.build();
+    }
+
+    private Response.ResponseBuilder evaluatePreconditions(Request request, Date lastModified, EntityTag etag) {
+        if (etag != null && lastModified != null) {
+            return request.evaluatePreconditions(lastModified, etag);
+        } else if (etag != null) {
+            return request.evaluatePreconditions(etag);
+        } else if (lastModified != null) {
+            return request.evaluatePreconditions(lastModified);
+        }
+        return null;
+    }
+
+    // Versioned URLs never change content; plain and stale ones must be revalidated
+    private CacheControl coverCacheControl(String version, String coverHash) {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoTransform(false);
+        if (version != null && version.equals(coverHash)) {
+            cacheControl.setMaxAge(COVER_IMMUTABLE_MAX_AGE);
+            cacheControl.getCacheExtension().put("immutable", null);
+        } else {
+            cacheControl.setNoCache(true);
+        }
+        return cacheControl;
+    }
+
+    @GET
+    @Path("/{id}/index-pages/{pageId}/image")
+    @Produces({"image/jpeg", "image/png"})
+    public Response getIndexPageImage(@PathParam("id") UUID id, @PathParam("pageId") UUID pageId,
+                                      @HeaderParam("Range") String range) {
+        Optional<CookbookIndexPage> page = CookbookIndexPage.findByIdAndCookbookId(pageId, id);
+        if (page.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("Index page not found")
+                    .build();
+        }
+        try {
+            return FileResponses.serve(blobs.localPath(page.get().imageKey), page.get().contentType, range).build();
+        } catch (IOException e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Failed to read index page: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Pages that look like an earlier page of the cookbook, which OCR skips, and pages that look
+     * like pages of other cookbooks. Pages are hashed and flagged on the way, so the review UI can
+     * show near-duplicates before OCR is started.
+     */
+    @GET
+    @Path("/{id}/index-pages/near-duplicates")
+    public Response getNearDuplicatePages(@PathParam("id") UUID id) {
+        if (Cookbook.findByIdOptional(id).isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("Cookbook not found: " + id)
+                    .build();
+        }
+        return Response.ok(nearDuplicates.matches(id)).build();
+    }
+
+    /**
+     * Marks a flagged page as not a duplicate, so that OCR processes it and it is not flagged again.
+     */
+    @DELETE
+    @Path("/{id}/index-pages/{pageId}/duplicate-of")
+    @Transactional
+    public Response dismissNearDuplicate(@PathParam("id") UUID id, @PathParam("pageId") UUID pageId) {
+        if (CookbookIndexPage.dismissDuplicate(pageId, id) == 0) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("Index page not found")
+                    .build();
+        }
+        return Response.noContent().build();
+    }
+
+    /**
+     * Small preview of an index page for the review UI. Pages that are no wider than a preview
+     * are served as they are.
+     */
+    @GET
+    @Path("/{id}/index-pages/{pageId}/preview")
+    @Produces({"image/jpeg", "image/png"})
+    public Response getIndexPagePreview(@PathParam("id") UUID id, @PathParam("pageId") UUID pageId,
+                                        @HeaderParam("Range") String range) {
+        Optional<CookbookIndexPage> page = CookbookIndexPage.findByIdAndCookbookId(pageId, id);
+        if (page.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("Index page not found")
+                    .build();
+        }
+        try {
+            if (page.get().previewKey != null) {
+                return FileResponses.serve(blobs.localPath(page.get().previewKey), "image/jpeg", range).build();
+            }
+            return FileResponses.serve(blobs.localPath(page.get().imageKey), page.get().contentType, range).build();
+        } catch (IOException e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity("Failed to read index page preview: " + e.getMessage())
+                    .build();
+        }
     }
 
     @POST
     @Path("/{id}/cover")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    @Transactional
     public Response uploadCover(
             @PathParam("id") UUID id,
             @RestForm("file") FileUpload file
@@ -351,28 +808,57 @@ public class CookbookResource {
                     .build();
         }
 
-        byte[] imageData;
-        try {
-            imageData = java.nio.file.Files.readAllBytes(file.uploadedFile());
+        if (Cookbook.findByIdOptional(id).isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity("Cookbook not found: " + id)
+                    .build();
+        }
+
+        // Stream the file from its temp file into the blob store instead of reading it into the heap
+        BlobStore.StoredBlob cover;
+        try (InputStream in = Files.newInputStream(file.uploadedFile())) {
+            cover = blobs.write(in);
         } catch (IOException e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                     .entity("Failed to read uploaded file: " + e.getMessage())
                     .build();
         }
 
-        // Use update query to avoid LOB issues with PostgreSQL auto-commit
-        int updated = Cookbook.update("coverData = ?1, coverContentType = ?2, hasCover = true where id = ?3",
-                imageData, contentType, id);
+        String coverColor = colorExtractor.dominantColor(file.uploadedFile()).orElse(null);
 
-        if (updated == 0) {
+        // The row is locked so that the previous cover read here is the one being replaced; its
+        // blob is deleted once the new cover is committed
+        boolean updated = QuarkusTransaction.requiringNew().call(() -> {
+            Optional<Cookbook> locked = Cookbook.findByIdForUpdate(id);
+            if (locked.isEmpty()) {
+                return false;
+            }
+            String previousKey = locked.get().coverKey;
+            Cookbook.update(
+                    "coverKey = ?1, coverSize = ?2, coverSha256 = ?3, coverContentType = ?4, coverUploadedAt = ?5, coverColor = ?6, hasCover = true where id = ?7",
+                    cover.key(), cover.size(), cover.sha256(), contentType, Instant.now(), coverColor, id);
+            if (previousKey != null && !previousKey.equals(cover.key())) {
+                blobsReleased.fire(new BlobsReleased(Set.of(previousKey)));
+            }
+            coverChanged.fire(new CoverChanged(id));
+            return true;
+        });
+
+        if (!updated) {
+            blobsReleased.fire(new BlobsReleased(Set.of(cover.key())));
             return Response.status(Response.Status.NOT_FOUND)
                     .entity("Cookbook not found: " + id)
                     .build();
         }
 
+        // Thumbnails of the previous cover are not needed anymore
+        thumbnailService.deleteForCookbook(id);
+
         Map<String, Object> resp = new HashMap<>();
         resp.put("id", id);
         resp.put("hasCover", true);
+        resp.put("coverHash", cover.sha256());
+        resp.put("coverColor", coverColor);
         return Response.ok(resp).build();
     }
 
@@ -0,0 +1,56 @@
+package org.ldclrcq.resource;
+
+import jakarta.ws.rs.core.Response;
+import org.jboss.resteasy.reactive.PathPart;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds responses that stream a local file with zero-copy file transfer, honouring a single
+ * {@code Range: bytes=...} request. Multiple ranges are not supported and get the whole file.
+ */
+final class FileResponses {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private FileResponses() {
+    }
+
+    static Response.ResponseBuilder serve(Path file, String contentType, String rangeHeader) throws IOException {
+        long length = Files.size(file);
+
+        Matcher range = rangeHeader != null ? RANGE.matcher(rangeHeader.trim()) : null;
+        if (range == null || !range.matches() || (range.group(1).isEmpty() && range.group(2).isEmpty())) {
+            return Response.ok(new PathPart(file, 0, length))
+                    .type(contentType)
+                    .header("Accept-Ranges", "bytes");
+        }
+
+        long start;
+        long end;
+        if (range.group(1).isEmpty()) {
+            // Suffix range: the last N bytes
+            long suffix = Long.parseLong(range.group(2));
+            start = Math.max(0, length - suffix);
+            end = length - 1;
+        } else {
+            start = Long.parseLong(range.group(1));
+            end = range.group(2).isEmpty() ? length - 1 : Math.min(Long.parseLong(range.group(2)), length - 1);
+        }
+
+        if (start >= length || start > end) {
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + length);
+        }
+
+        return Response.status(Response.Status.PARTIAL_CONTENT)
+                .entity(new PathPart(file, start, end - start + 1))
+                .type(contentType)
+                .header("Accept-Ranges", "bytes")
+                .header("Content-Range", "bytes " + start + "-" + end + "/" + length);
+    }
+}
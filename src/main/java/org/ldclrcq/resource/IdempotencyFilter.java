@@ -0,0 +1,177 @@
+package org.ldclrcq.resource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.entity.IdempotencyRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Implements {@link Idempotent} endpoints. The first request with a given key reserves it in
+ * the {@code idempotency_key} table (the unique constraint arbitrates concurrent requests),
+ * and its response is stored once the endpoint returns. Replays get the stored response,
+ * while a replay racing the original request gets 409 Conflict. Server errors release the key
+ * so that the request can be retried, and a reservation whose request never got a response,
+ * e.g. because the process died, can be taken over after {@code idempotency.in-progress-timeout}.
+ * <p>
+ * A key is bound to the request that reserved it: reusing it for a different request gets 422.
+ * Request bodies are streamed to the endpoints, so the fingerprint covers what is known before
+ * reading them: method, path, query, media type, and the {@code Content-Digest} of the body when
+ * the client sends one.
+ */
+@Provider
+@Idempotent
+@Priority(Priorities.USER)
+public class IdempotencyFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final String RESERVATION_PROPERTY = IdempotencyFilter.class.getName() + ".reservation";
+    private static final String CONTENT_DIGEST_HEADER = "Content-Digest";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int UNPROCESSABLE_ENTITY = 422;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "idempotency.ttl", defaultValue = "24h")
+    Duration ttl;
+
+    @ConfigProperty(name = "idempotency.in-progress-timeout", defaultValue = "30m")
+    Duration inProgressTimeout;
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        String key = request.getHeaderString(HEADER);
+        if (key == null || key.isBlank()) {
+            return;
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            request.abortWith(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters")
+                    .build());
+            return;
+        }
+
+        String scope = request.getMethod() + " " + request.getUriInfo().getPath();
+        String requestHash = fingerprint(request);
+        Optional<UUID> reservation = QuarkusTransaction.requiringNew().call(() ->
+                IdempotencyRecord.reserve(scope, key, requestHash, ttl, inProgressTimeout));
+        if (reservation.isPresent()) {
+            request.setProperty(RESERVATION_PROPERTY, reservation.get());
+            return;
+        }
+
+        Optional<IdempotencyRecord> existing = QuarkusTransaction.requiringNew()
+                .call(() -> IdempotencyRecord.findByScopeAndKey(scope, key));
+        if (existing.isPresent() && existing.get().requestHash != null && !existing.get().requestHash.equals(requestHash)) {
+            request.abortWith(Response.status(UNPROCESSABLE_ENTITY)
+                    .entity("This " + HEADER + " was already used for a different request")
+                    .build());
+            return;
+        }
+        if (existing.isEmpty() || !existing.get().isCompleted()) {
+            request.abortWith(Response.status(Response.Status.CONFLICT)
+                    .entity("A request with this " + HEADER + " is already in progress")
+                    .build());
+            return;
+        }
+
+        IdempotencyRecord record = existing.get();
+        Log.debugf("Replaying response for %s with %s %s", scope, HEADER, key);
+        Response.ResponseBuilder replay = Response.status(record.statusCode)
+                .header(REPLAYED_HEADER, "true");
+        if (record.responseBody != null) {
+            replay.entity(record.responseBody).type(record.contentType);
+        }
+        request.abortWith(replay.build());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        UUID reservation = (UUID) request.getProperty(RESERVATION_PROPERTY);
+        if (reservation == null) {
+            return;
+        }
+
+        if (response.getStatus() >= 500) {
+            QuarkusTransaction.requiringNew().run(() -> IdempotencyRecord.release(reservation));
+            return;
+        }
+
+        String body;
+        try {
+            body = serialize(response.getEntity());
+        } catch (JsonProcessingException e) {
+            Log.warnf("Could not store response for idempotent replay, releasing key: %s", e.getOriginalMessage());
+            QuarkusTransaction.requiringNew().run(() -> IdempotencyRecord.release(reservation));
+            return;
+        }
+
+        MediaType mediaType = response.getMediaType();
+        String contentType = body == null ? null
+                : mediaType != null ? mediaType.toString()
+                : response.getEntity() instanceof String ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON;
+        QuarkusTransaction.requiringNew().run(() ->
+                IdempotencyRecord.complete(reservation, response.getStatus(), contentType, body));
+    }
+
+    /**
+     * Hex SHA-256 of what identifies a request before its body is read.
+     */
+    private static String fingerprint(ContainerRequestContext request) {
+        StringBuilder canonical = new StringBuilder()
+                .append(request.getMethod()).append('\n')
+                .append(request.getUriInfo().getPath()).append('\n');
+        new TreeMap<>(request.getUriInfo().getQueryParameters()).forEach((name, values) ->
+                canonical.append(name).append('=').append(String.join(",", values)).append('&'));
+        canonical.append('\n');
+        // Without parameters: multipart boundaries differ between retries of the same request
+        MediaType mediaType = request.getMediaType();
+        if (mediaType != null) {
+            canonical.append(mediaType.getType()).append('/').append(mediaType.getSubtype());
+        }
+        canonical.append('\n');
+        String contentDigest = request.getHeaderString(CONTENT_DIGEST_HEADER);
+        if (contentDigest != null) {
+            canonical.append(contentDigest.strip());
+        }
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private String serialize(Object entity) throws JsonProcessingException {
+        if (entity == null) {
+            return null;
+        }
+        if (entity instanceof String text) {
+            return text;
+        }
+        return objectMapper.writeValueAsString(entity);
+    }
+}
@@ -0,0 +1,20 @@
+package org.ldclrcq.resource;
+
+import jakarta.ws.rs.NameBinding;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an endpoint as honoring the {@code Idempotency-Key} request header: a retried request
+ * with the same key gets the original response instead of being executed again.
+ *
+ * @see IdempotencyFilter
+ */
+@NameBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Idempotent {
+}
@@ -1,13 +1,18 @@
 package org.ldclrcq.resource;
 
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.ldclrcq.dto.*;
 import org.ldclrcq.entity.Cookbook;
 import org.ldclrcq.entity.Ingredient;
 import org.ldclrcq.entity.Recipe;
+import org.ldclrcq.service.RecipeIndex;
+import org.ldclrcq.service.RecipesChanged;
 
 import java.util.*;
 
@@ -19,6 +24,18 @@ public class IngredientResource {
     private static final int DEFAULT_LIMIT = 20;
     private static final int MAX_LIMIT = 100;
     private static final int RECIPE_PREVIEW_LIMIT = 5;
+    private static final int DEFAULT_SUGGESTION_LIMIT = 3;
+    private static final int MAX_SUGGESTION_LIMIT = 10;
+    private static final int MAX_SUGGESTION_NAMES = 500;
+
+    @ConfigProperty(name = "ingredients.suggestions.min-similarity", defaultValue = "0.3")
+    double minSimilarity;
+
+    @Inject
+    RecipeIndex recipeIndex;
+
+    @Inject
+    Event<RecipesChanged> recipesChanged;
 
     @GET
     public Response listIngredients(
@@ -152,6 +169,7 @@ public class IngredientResource {
         }
 
         ingredient.persist();
+        recipesChanged.fire(RecipesChanged.ofIngredients(Set.of(ingredient.id)));
 
         return Response.ok(toDetailResponse(ingredient)).build();
     }
@@ -178,10 +196,56 @@ public class IngredientResource {
         }
 
         ingredient.delete();
+        recipesChanged.fire(RecipesChanged.ofIngredients(Set.of(id)));
 
         return Response.noContent().build();
     }
 
+    /**
+     * Suggests existing ingredients for the ingredients of an OCR review, so that misspellings
+     * such as "tomatoe" can be linked to "tomato" before the import is confirmed, instead of
+     * becoming new ingredients. All names are matched in one query.
+     */
+    @POST
+    @Path("/suggestions")
+    @Transactional
+    public Response suggestIngredients(IngredientSuggestionsRequest request) {
+        if (request == null || request.names() == null || request.names().isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", "At least one name is required"))
+                    .build();
+        }
+
+        // Names are matched as they would be stored, once each
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : request.names()) {
+            if (name != null && !name.isBlank()) {
+                names.add(Ingredient.normalize(name.replaceAll("\\R", " ")));
+            }
+        }
+        if (names.size() > MAX_SUGGESTION_NAMES) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", "At most " + MAX_SUGGESTION_NAMES + " names can be matched at once"))
+                    .build();
+        }
+
+        int effectiveLimit = request.limit() != null
+                ? Math.max(1, Math.min(request.limit(), MAX_SUGGESTION_LIMIT))
+                : DEFAULT_SUGGESTION_LIMIT;
+
+        Map<String, List<IngredientSuggestionsResponse.Match>> matches = new LinkedHashMap<>();
+        names.forEach(name -> matches.put(name, new ArrayList<>()));
+        for (Ingredient.SimilarIngredient similar : Ingredient.findSimilar(List.copyOf(names), effectiveLimit, minSimilarity)) {
+            matches.get(similar.query()).add(new IngredientSuggestionsResponse.Match(
+                    similar.ingredientId(), similar.name(), similar.score()));
+        }
+
+        List<IngredientSuggestionsResponse.NameSuggestions> suggestions = matches.entrySet().stream()
+                .map(entry -> new IngredientSuggestionsResponse.NameSuggestions(entry.getKey(), entry.getValue()))
+                .toList();
+        return Response.ok(new IngredientSuggestionsResponse(suggestions)).build();
+    }
+
     @POST
     @Path("/merge")
     @Transactional
@@ -259,6 +323,9 @@ public class IngredientResource {
         }
 
         target.persist();
+        Set<UUID> merged = new HashSet<>(request.sourceIds());
+        merged.add(target.id);
+        recipesChanged.fire(RecipesChanged.ofIngredients(merged));
 
         return Response.ok(toDetailResponse(target)).build();
     }
@@ -282,7 +349,7 @@ public class IngredientResource {
         int effectiveLimit = limit != null ? Math.min(limit, MAX_LIMIT) : DEFAULT_LIMIT;
         UUID cursorId = cursor != null ? UUID.fromString(cursor) : null;
 
-        Recipe.SearchResult result = Recipe.search(nameQuery, ingredient.get().id, null, cookbookId, cursorId, effectiveLimit);
+        Recipe.SearchResult result = recipeIndex.search(nameQuery, Recipe.IngredientFilter.of(ingredient.get().id), null, cookbookId, cursorId, effectiveLimit);
 
         List<RecipeResponse> recipeResponses = result.recipes().stream()
                 .map(this::toRecipeResponse)
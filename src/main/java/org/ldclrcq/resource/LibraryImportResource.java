@@ -0,0 +1,76 @@
+package org.ldclrcq.resource;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriBuilder;
+import org.ldclrcq.dto.ImportBatchProgressResponse;
+import org.ldclrcq.dto.LibraryImportResponse;
+import org.ldclrcq.service.LibraryImportService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+@Path("/api/library-imports")
+@Produces(MediaType.APPLICATION_JSON)
+public class LibraryImportResource {
+
+    @Inject
+    LibraryImportService importService;
+
+    /**
+     * Imports a library archive with one folder per cookbook, streamed as the request body,
+     * and queues every imported cookbook for OCR.
+     */
+    @POST
+    @Consumes({"application/zip", "application/x-tar", "application/gzip", "application/x-gzip"})
+    @Idempotent
+    public Response importLibrary(@HeaderParam("Content-Type") String contentType, InputStream body) {
+        LibraryImportService.Format format = switch (MediaType.valueOf(contentType).getSubtype()) {
+            case "zip" -> LibraryImportService.Format.ZIP;
+            case "x-tar" -> LibraryImportService.Format.TAR;
+            default -> LibraryImportService.Format.TAR_GZIP;
+        };
+
+        LibraryImportService.ImportOutcome outcome;
+        try {
+            outcome = importService.importArchive(body, format);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", e.getMessage()))
+                    .build();
+        } catch (LibraryImportService.UnreadableArchiveException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", "Unreadable archive: " + e.getMessage()))
+                    .build();
+        } catch (IOException e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(Map.of("error", "Failed to import archive: " + e.getMessage()))
+                    .build();
+        }
+
+        LibraryImportResponse response = new LibraryImportResponse(outcome.batchId(), outcome.cookbooks(), outcome.skipped());
+        if (outcome.batchId() == null) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(response).build();
+        }
+        return Response.accepted(response)
+                .location(UriBuilder.fromResource(LibraryImportResource.class).path("{id}").build(outcome.batchId()))
+                .build();
+    }
+
+    @GET
+    @Path("/{id}")
+    public Response getProgress(@PathParam("id") UUID batchId) {
+        Optional<ImportBatchProgressResponse> progress = importService.progress(batchId);
+        if (progress.isEmpty()) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(Map.of("error", "Import batch not found"))
+                    .build();
+        }
+        return Response.ok(progress.get()).build();
+    }
+}
@@ -1,18 +1,28 @@
 package org.ldclrcq.resource;
 
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import org.ldclrcq.dto.AddIngredientRequest;
+import org.ldclrcq.dto.PantryRequest;
+import org.ldclrcq.dto.PantryResponse;
 import org.ldclrcq.dto.RecipeListResponse;
 import org.ldclrcq.dto.RecipeResponse;
 import org.ldclrcq.entity.Cookbook;
 import org.ldclrcq.entity.Ingredient;
 import org.ldclrcq.entity.Recipe;
+import org.ldclrcq.service.RecipeIndex;
+import org.ldclrcq.service.RecipesChanged;
 
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 @Path("/api/recipes")
@@ -22,11 +32,25 @@ public class RecipeResource {
 
     private static final int DEFAULT_LIMIT = 20;
     private static final int MAX_LIMIT = 100;
+    private static final int MAX_PANTRY_INGREDIENTS = 500;
 
+    @Inject
+    RecipeIndex recipeIndex;
+
+    @Inject
+    Event<RecipesChanged> recipesChanged;
+
+    /**
+     * Lists recipes. Ingredients are given by name or disambiguation: recipes must use every
+     * {@code ingredient}, at least one {@code anyIngredient}, and no {@code excludeIngredient}, e.g.
+     * {@code ?ingredient=leek&ingredient=potato&excludeIngredient=cream}.
+     */
     @GET
     public Response listRecipes(
             @QueryParam("q") String nameQuery,
-            @QueryParam("ingredient") String ingredient,
+            @QueryParam("ingredient") List<String> ingredients,
+            @QueryParam("anyIngredient") List<String> anyIngredients,
+            @QueryParam("excludeIngredient") List<String> excludedIngredients,
             @QueryParam("availableNow") Boolean availableNow,
             @QueryParam("cookbookId") UUID cookbookId,
             @QueryParam("cursor") String cursor,
@@ -35,19 +59,24 @@ public class RecipeResource {
         int effectiveLimit = limit != null ? Math.min(limit, MAX_LIMIT) : DEFAULT_LIMIT;
         UUID cursorId = cursor != null ? UUID.fromString(cursor) : null;
 
-        // Look up ingredient ID by name if provided
-        UUID ingredientId = null;
-        if (ingredient != null && !ingredient.isBlank()) {
-            Optional<Ingredient> ingredientEntity = Ingredient.findByName(ingredient);
-            if (ingredientEntity.isPresent()) {
-                ingredientId = ingredientEntity.get().id;
-            } else {
-                // No matching ingredient found, return empty results
-                return Response.ok(new RecipeListResponse(List.of(), null, false)).build();
-            }
+        // Look up all ingredient names at once
+        Set<String> all = normalize(ingredients);
+        Set<String> any = normalize(anyIngredients);
+        Set<String> none = normalize(excludedIngredients);
+        Set<String> names = new HashSet<>(all);
+        names.addAll(any);
+        names.addAll(none);
+        Map<String, UUID> ids = Ingredient.findIdsByNames(names);
+
+        // A recipe can't use an unknown ingredient, nor only unknown ones
+        boolean unknownRequired = !ids.keySet().containsAll(all);
+        boolean unknownAlternatives = !any.isEmpty() && any.stream().noneMatch(ids::containsKey);
+        if (unknownRequired || unknownAlternatives) {
+            return Response.ok(new RecipeListResponse(List.of(), null, false)).build();
         }
+        Recipe.IngredientFilter filter = new Recipe.IngredientFilter(resolve(all, ids), resolve(any, ids), resolve(none, ids));
 
-        Recipe.SearchResult result = Recipe.search(nameQuery, ingredientId, availableNow, cookbookId, cursorId, effectiveLimit);
+        Recipe.SearchResult result = recipeIndex.search(nameQuery, filter, availableNow, cookbookId, cursorId, effectiveLimit);
 
         List<RecipeResponse> recipeResponses = result.recipes().stream()
                 .map(this::toRecipeResponse)
@@ -56,6 +85,47 @@ public class RecipeResource {
         return Response.ok(new RecipeListResponse(recipeResponses, result.nextCursor(), result.hasMore())).build();
     }
 
+    /**
+     * Ranks the recipes that use the ingredients on hand, given by name or disambiguation, by the
+     * share of their ingredients that are on hand, and lists the ones that are missing. Unknown
+     * ingredients are ignored.
+     */
+    @POST
+    @Path("/pantry")
+    public Response rankByPantry(PantryRequest request) {
+        if (request == null || request.ingredients() == null || request.ingredients().isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", "At least one ingredient is required"))
+                    .build();
+        }
+        Set<String> names = normalize(request.ingredients());
+        if (names.size() > MAX_PANTRY_INGREDIENTS) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(Map.of("error", "At most " + MAX_PANTRY_INGREDIENTS + " ingredients can be on hand"))
+                    .build();
+        }
+
+        int effectiveLimit = request.limit() != null ? Math.max(1, Math.min(request.limit(), MAX_LIMIT)) : DEFAULT_LIMIT;
+        UUID cursorId = request.cursor() != null ? UUID.fromString(request.cursor()) : null;
+        Set<UUID> pantry = resolve(names, Ingredient.findIdsByNames(names));
+
+        Recipe.PantryResult result = recipeIndex.rankByPantry(pantry, cursorId, effectiveLimit);
+
+        List<PantryResponse.PantryRecipe> recipes = result.matches().stream()
+                .map(match -> new PantryResponse.PantryRecipe(
+                        toRecipeResponse(match.recipe()),
+                        match.onHand(),
+                        match.ingredientCount(),
+                        match.recipe().ingredients.stream()
+                                .filter(ingredient -> !pantry.contains(ingredient.id))
+                                .map(ingredient -> ingredient.name)
+                                .sorted()
+                                .toList()))
+                .toList();
+
+        return Response.ok(new PantryResponse(recipes, result.nextCursor(), result.hasMore())).build();
+    }
+
     @GET
     @Path("/{id}")
     public Response getRecipe(@PathParam("id") UUID id) {
@@ -100,6 +170,7 @@ public class RecipeResource {
 
         recipe.addIngredient(ingredient);
         recipe.persist();
+        recipesChanged.fire(RecipesChanged.ofRecipe(recipe.id));
 
         return Response.ok(toRecipeResponse(recipe)).build();
     }
@@ -139,10 +210,34 @@ public class RecipeResource {
         }
 
         recipe.persist();
+        recipesChanged.fire(RecipesChanged.ofRecipe(recipe.id));
 
         return Response.ok(toRecipeResponse(recipe)).build();
     }
 
+    private static Set<String> normalize(List<String> names) {
+        Set<String> normalized = new LinkedHashSet<>();
+        if (names != null) {
+            for (String name : names) {
+                if (name != null && !name.isBlank()) {
+                    normalized.add(Ingredient.normalize(name));
+                }
+            }
+        }
+        return normalized;
+    }
+
+    private static Set<UUID> resolve(Set<String> names, Map<String, UUID> ids) {
+        Set<UUID> resolved = new HashSet<>();
+        for (String name : names) {
+            UUID id = ids.get(name);
+            if (id != null) {
+                resolved.add(id);
+            }
+        }
+        return resolved;
+    }
+
     private RecipeResponse toRecipeResponse(Recipe recipe) {
         Optional<Cookbook> cookbook = Cookbook.findByIdOptional(recipe.cookbookId);
 
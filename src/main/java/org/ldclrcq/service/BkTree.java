@@ -0,0 +1,98 @@
+package org.ldclrcq.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Burkhard-Keller tree of 64-bit perceptual hashes under the Hamming distance. Each child of a
+ * node holds the hashes at one given distance from it, so by the triangle inequality a search
+ * within {@code d} of a hash only descends into children whose distance is within {@code d} of
+ * the node's own distance, instead of comparing against every hash.
+ * <p>
+ * Values can only be added; callers filter out values that no longer exist. Thread safe.
+ */
+final class BkTree<T> {
+
+    record Match<T>(T value, long hash, int distance) {
+    }
+
+    private static final class Node<T> {
+        final long hash;
+        final List<T> values = new ArrayList<>(1);
+        Map<Integer, Node<T>> children;
+
+        Node(long hash) {
+            this.hash = hash;
+        }
+    }
+
+    private Node<T> root;
+    private int size;
+
+    synchronized void add(long hash, T value) {
+        size++;
+        if (root == null) {
+            root = new Node<>(hash);
+            root.values.add(value);
+            return;
+        }
+        Node<T> node = root;
+        while (true) {
+            int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance == 0) {
+                node.values.add(value);
+                return;
+            }
+            if (node.children == null) {
+                node.children = new HashMap<>();
+            }
+            Node<T> child = node.children.get(distance);
+            if (child == null) {
+                child = new Node<>(hash);
+                child.values.add(value);
+                node.children.put(distance, child);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Values whose hash is at most {@code maxDistance} bits away from the given one.
+     */
+    synchronized List<Match<T>> search(long hash, int maxDistance) {
+        List<Match<T>> matches = new ArrayList<>();
+        if (root == null) {
+            return matches;
+        }
+        Deque<Node<T>> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node<T> node = pending.pop();
+            int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance <= maxDistance) {
+                for (T value : node.values) {
+                    matches.add(new Match<>(value, node.hash, distance));
+                }
+            }
+            if (node.children == null) {
+                continue;
+            }
+            for (int d = Math.max(1, distance - maxDistance); d <= distance + maxDistance; d++) {
+                Node<T> child = node.children.get(d);
+                if (child != null) {
+                    pending.push(child);
+                }
+            }
+        }
+        return matches;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,102 @@
+package org.ldclrcq.service;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.narayana.jta.QuarkusTransactionException;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+
+/**
+ * Serializes the decisions to keep or delete a blob. A writer that is about to reference a blob
+ * it did not just create, such as a content-addressed file that was already stored or the image
+ * of another page with the same content, claims it while holding a PostgreSQL advisory lock on its
+ * key. Deleters take the same lock, so they either finish before the writer checks that the
+ * content is there, or see the claim and keep the blob until the grace period has passed, by which
+ * time the writer's row is committed or abandoned.
+ */
+@ApplicationScoped
+public class BlobClaims {
+
+    @Inject
+    EntityManager entityManager;
+
+    @ConfigProperty(name = "blobstore.claim.grace-period", defaultValue = "1h")
+    Duration gracePeriod;
+
+    public Duration gracePeriod() {
+        return gracePeriod;
+    }
+
+    /**
+     * Runs work in its own transaction, holding the lock on a key until it commits.
+     */
+    public <T> T locked(String key, Callable<T> work) throws IOException {
+        try {
+            return QuarkusTransaction.requiringNew().call(() -> {
+                lock(key);
+                return work.call();
+            });
+        } catch (QuarkusTransactionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the lock on a key in the current transaction, released when it ends.
+     */
+    public void lock(String key) {
+        entityManager.createNativeQuery("SELECT pg_advisory_xact_lock(hashtext(:key))")
+                .setParameter("key", key)
+                .getSingleResult();
+    }
+
+    /**
+     * Records that a row is about to reference a blob. Must be called with the lock held.
+     */
+    public void claim(String key) {
+        entityManager.createNativeQuery("""
+                        INSERT INTO blob_claim (blob_key, claimed_at) VALUES (:key, NOW())
+                        ON CONFLICT (blob_key) DO UPDATE SET claimed_at = NOW()
+                        """)
+                .setParameter("key", key)
+                .executeUpdate();
+    }
+
+    /**
+     * Whether a blob was claimed within the grace period. Must be called with the lock held.
+     */
+    public boolean isClaimed(String key, Duration grace) {
+        return ((Number) entityManager.createNativeQuery(
+                        "SELECT COUNT(*) FROM blob_claim WHERE blob_key = :key AND claimed_at > :claimedAfter")
+                .setParameter("key", key)
+                .setParameter("claimedAfter", Instant.now().minus(grace))
+                .getSingleResult()).longValue() > 0;
+    }
+
+    public void forget(String key) {
+        entityManager.createNativeQuery("DELETE FROM blob_claim WHERE blob_key = :key")
+                .setParameter("key", key)
+                .executeUpdate();
+    }
+
+    /**
+     * Deletes the claims older than a grace period, which do not protect anything anymore.
+     *
+     * @return the number of claims deleted
+     */
+    public int purge(Duration grace) {
+        return QuarkusTransaction.requiringNew().call(() -> entityManager
+                .createNativeQuery("DELETE FROM blob_claim WHERE claimed_at <= :claimedBefore")
+                .setParameter("claimedBefore", Instant.now().minus(grace))
+                .executeUpdate());
+    }
+}
@@ -0,0 +1,121 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.dto.BlobMigrationResponse;
+import org.ldclrcq.entity.Cookbook;
+import org.ldclrcq.entity.CookbookIndexPage;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Moves page images and covers into one blob store, e.g. existing large objects to the filesystem.
+ * Each blob is copied, checked against its recorded hash, switched over in a short transaction and
+ * only then removed from its old store, so an interrupted migration can simply be run again.
+ */
+@ApplicationScoped
+public class BlobMigrationService {
+
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    @Inject
+    Blobs blobs;
+
+    @ConfigProperty(name = "blobstore.migration.batch-size", defaultValue = "50")
+    int batchSize;
+
+    public BlobMigrationResponse migrateTo(String scheme) {
+        BlobStore target = blobs.storeForScheme(scheme);
+        Totals totals = new Totals();
+
+        UUID after = FIRST_ID;
+        List<CookbookIndexPage.ImageRef> pages;
+        do {
+            UUID from = after;
+            pages = QuarkusTransaction.requiringNew().call(() ->
+                    CookbookIndexPage.findImageRefsOutsideStore(scheme, from, batchSize));
+            for (CookbookIndexPage.ImageRef page : pages) {
+                long bytes = migrate(page.imageKey(), page.imageSha256(), target,
+                        newKey -> CookbookIndexPage.moveImage(page.id(), page.imageKey(), newKey));
+                totals.add(bytes, false);
+                after = page.id();
+            }
+        } while (pages.size() == batchSize);
+
+        after = FIRST_ID;
+        List<Cookbook.CoverRef> covers;
+        do {
+            UUID from = after;
+            covers = QuarkusTransaction.requiringNew().call(() ->
+                    Cookbook.findCoverRefsOutsideStore(scheme, from, batchSize));
+            for (Cookbook.CoverRef cover : covers) {
+                long bytes = migrate(cover.coverKey(), cover.coverSha256(), target,
+                        newKey -> Cookbook.moveCover(cover.id(), cover.coverKey(), newKey));
+                totals.add(bytes, true);
+                after = cover.id();
+            }
+        } while (covers.size() == batchSize);
+
+        Log.infof("Migrated %d pages and %d covers (%d bytes) to the %s blob store, %d failures",
+                totals.pages, totals.covers, totals.bytes, scheme, totals.failures);
+        return new BlobMigrationResponse(scheme, totals.pages, totals.covers, totals.bytes, totals.failures);
+    }
+
+    @FunctionalInterface
+    private interface KeyUpdate {
+        int apply(String newKey);
+    }
+
+    /**
+     * Copies one blob to the target store and switches its owner over.
+     *
+     * @return the number of bytes moved, or -1 if the blob could not be migrated
+     */
+    private long migrate(String key, String sha256, BlobStore target, KeyUpdate update) {
+        try {
+            BlobStore.StoredBlob copy = blobs.read(key, (in, size) -> target.write(in));
+            if (sha256 != null && !sha256.equals(copy.sha256())) {
+                Log.warnf("Hash mismatch while migrating blob %s: expected %s, copied %s", key, sha256, copy.sha256());
+                blobs.deleteIfUnreferenced(copy.key());
+                return -1;
+            }
+
+            int updated = QuarkusTransaction.requiringNew().call(() -> update.apply(copy.key()));
+            if (updated == 0) {
+                // Replaced while we were copying: the copy is not needed anymore
+                blobs.deleteIfUnreferenced(copy.key());
+                return 0;
+            }
+
+            blobs.deleteIfUnreferenced(key);
+            return copy.size();
+        } catch (Exception e) {
+            Log.warnf(e, "Failed to migrate blob %s", key);
+            return -1;
+        }
+    }
+
+    private static final class Totals {
+        int pages;
+        int covers;
+        long bytes;
+        int failures;
+
+        void add(long movedBytes, boolean cover) {
+            if (movedBytes < 0) {
+                failures++;
+            } else if (movedBytes > 0) {
+                bytes += movedBytes;
+                if (cover) {
+                    covers++;
+                } else {
+                    pages++;
+                }
+            }
+        }
+    }
+}
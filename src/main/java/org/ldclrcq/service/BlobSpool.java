@@ -0,0 +1,139 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local copies of blobs that are not stored on the local file system, made by
+ * {@link Blobs#localPath(String)}. Copies are named by the SHA-256 of their content, so blobs with
+ * the same content share one file, and the least recently used copies are deleted once the spool
+ * holds more than its maximum size. The spool is a cache: what it holds is only known to this
+ * instance, and it is emptied at startup.
+ */
+final class BlobSpool {
+
+    private static final class Entry {
+        final long size;
+        final Set<String> keys = new HashSet<>();
+
+        Entry(long size) {
+            this.size = size;
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final Map<String, String> sha256ByKey = new HashMap<>();
+    // By SHA-256, least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    BlobSpool(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    Path dir() {
+        return dir;
+    }
+
+    /**
+     * @return the copy of a blob, or null if it has not been spooled
+     */
+    synchronized Path find(String key) {
+        String sha256 = sha256ByKey.get(key);
+        if (sha256 == null || entries.get(sha256) == null) {
+            return null;
+        }
+        return dir.resolve(sha256);
+    }
+
+    /**
+     * Adds the copy of a blob written to a temp file of the spool directory, unless the spool
+     * already has its content, then evicts the least recently used copies over the maximum size.
+     *
+     * @return the copy of the blob
+     */
+    synchronized Path add(String key, Path temp, String sha256, long size) throws IOException {
+        Path spooled = dir.resolve(sha256);
+        Entry entry = entries.get(sha256);
+        if (entry == null) {
+            Files.move(temp, spooled, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            entry = new Entry(size);
+            entries.put(sha256, entry);
+            totalBytes += size;
+        }
+        entry.keys.add(key);
+        sha256ByKey.put(key, sha256);
+        evict();
+        return spooled;
+    }
+
+    /**
+     * Forgets the copy of a blob, and deletes it unless other blobs with the same content use it.
+     */
+    synchronized void discard(String key) {
+        String sha256 = sha256ByKey.remove(key);
+        if (sha256 == null) {
+            return;
+        }
+        Entry entry = entries.get(sha256);
+        if (entry != null) {
+            entry.keys.remove(key);
+            if (entry.keys.isEmpty()) {
+                entries.remove(sha256);
+                delete(sha256, entry);
+            }
+        }
+    }
+
+    /**
+     * Deletes every file of the spool directory, such as copies left by a previous run.
+     */
+    synchronized void clear() {
+        sha256ByKey.clear();
+        entries.clear();
+        totalBytes = 0;
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            Log.warnf(e, "Failed to empty the blob spool directory %s", dir);
+        }
+    }
+
+    // The most recently used copy, just added or read, is always kept
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1) {
+            Map.Entry<String, Entry> evicted = eldest.next();
+            eldest.remove();
+            evicted.getValue().keys.forEach(sha256ByKey::remove);
+            delete(evicted.getKey(), evicted.getValue());
+        }
+    }
+
+    private void delete(String sha256, Entry entry) {
+        totalBytes -= entry.size;
+        try {
+            Files.deleteIfExists(dir.resolve(sha256));
+        } catch (IOException e) {
+            Log.warnf(e, "Failed to delete spooled copy %s", sha256);
+        }
+    }
+}
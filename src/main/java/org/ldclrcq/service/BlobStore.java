@@ -0,0 +1,43 @@
+package org.ldclrcq.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Storage for image content (index pages and covers). Each backend hands out keys prefixed with
+ * its scheme, e.g. {@code pg:16384} or {@code fs:<sha256>}, so that a key always says where its
+ * content lives, even while blobs are being moved from one backend to another.
+ */
+public interface BlobStore {
+
+    /**
+     * Key, size in bytes and hex SHA-256 of stored content.
+     */
+    record StoredBlob(String key, long size, String sha256) {
+    }
+
+    /**
+     * Receives the content of a blob and its size in bytes.
+     */
+    @FunctionalInterface
+    interface Reader<T> {
+        T read(InputStream in, long size) throws IOException;
+    }
+
+    /**
+     * Scheme prefixing the keys of this backend, without the colon.
+     */
+    String scheme();
+
+    StoredBlob write(InputStream in) throws IOException;
+
+    <T> T read(String key, Reader<T> reader) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    default boolean owns(String key) {
+        return key != null && key.startsWith(scheme() + ":");
+    }
+}
@@ -0,0 +1,193 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.entity.Cookbook;
+import org.ldclrcq.entity.CookbookIndexPage;
+import org.ldclrcq.entity.CoverThumbnail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Entry point to image storage. New blobs go to the backend selected by {@code blobstore.backend};
+ * existing blobs are read and deleted through the backend named by their key, so both backends
+ * can be in use at the same time while content is being migrated.
+ */
+@ApplicationScoped
+public class Blobs {
+
+    private final List<BlobStore> stores;
+    private final BlobStore writeStore;
+    private final FileSystemBlobStore fileSystem;
+    private final BlobSpool spool;
+
+    @Inject
+    BlobClaims claims;
+
+    @Inject
+    public Blobs(PostgresBlobStore postgres, FileSystemBlobStore fileSystem,
+                 @ConfigProperty(name = "blobstore.backend", defaultValue = "postgres") String backend,
+                 @ConfigProperty(name = "blobstore.spool.dir", defaultValue = "data/blob-spool") String spoolDir,
+                 @ConfigProperty(name = "blobstore.spool.max-bytes", defaultValue = "1073741824") long spoolMaxBytes) {
+        this.stores = List.of(postgres, fileSystem);
+        this.fileSystem = fileSystem;
+        this.spool = new BlobSpool(Path.of(spoolDir), spoolMaxBytes);
+        this.writeStore = switch (backend) {
+            case "postgres" -> postgres;
+            case "filesystem" -> fileSystem;
+            default -> throw new IllegalArgumentException("Unknown blobstore.backend: " + backend);
+        };
+        Log.infof("Storing new images in the %s blob store", backend);
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        spool.clear();
+    }
+
+    public BlobStore.StoredBlob write(InputStream in) throws IOException {
+        return writeStore.write(in);
+    }
+
+    public <T> T read(String key, BlobStore.Reader<T> reader) throws IOException {
+        return storeFor(key).read(key, reader);
+    }
+
+    public byte[] readAllBytes(String key) throws IOException {
+        return read(key, (in, size) -> in.readAllBytes());
+    }
+
+    public void delete(String key) throws IOException {
+        storeFor(key).delete(key);
+        discardSpooled(key);
+    }
+
+    /**
+     * Local file holding the content of a blob, so that it can be sent with zero-copy file
+     * transfer. Filesystem blobs are used as they are; other blobs are copied to the spool, which
+     * is bounded by {@code blobstore.spool.max-bytes}, so the returned file may be deleted later.
+     */
+    public Path localPath(String key) throws IOException {
+        if (fileSystem.owns(key)) {
+            return fileSystem.path(key);
+        }
+        Path spooled = spool.find(key);
+        if (spooled != null) {
+            return spooled;
+        }
+        Files.createDirectories(spool.dir());
+        Path temp = Files.createTempFile(spool.dir(), "spool-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size = read(key, (in, length) -> Files.copy(new DigestInputStream(in, digest), temp,
+                    StandardCopyOption.REPLACE_EXISTING));
+            return spool.add(key, temp, HexFormat.of().formatHex(digest.digest()), size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Removes the local copy of a blob made by {@link #localPath(String)}, if any.
+     */
+    public void discardSpooled(String key) {
+        spool.discard(key);
+    }
+
+    /**
+     * Deletes a blob unless a page, page preview, cover or thumbnail still references it. Content-addressed
+     * blobs can be shared by several of them. Blobs claimed by a writer within the grace period are kept
+     * for the sweepers, since the row referencing them may not be committed yet.
+     */
+    public void deleteIfUnreferenced(String key) throws IOException {
+        deleteIfUnreferenced(key, claims.gracePeriod());
+    }
+
+    /**
+     * @return whether the blob was deleted
+     */
+    boolean deleteIfUnreferenced(String key, Duration claimGracePeriod) throws IOException {
+        boolean deleted = claims.locked(key, () -> {
+            long references = CookbookIndexPage.countByImageKey(key)
+                    + CookbookIndexPage.countByPreviewKey(key)
+                    + Cookbook.countByCoverKey(key)
+                    + CoverThumbnail.countByBlobKey(key);
+            if (references > 0 || claims.isClaimed(key, claimGracePeriod)) {
+                return false;
+            }
+            storeFor(key).delete(key);
+            claims.forget(key);
+            return true;
+        });
+        if (deleted) {
+            discardSpooled(key);
+        }
+        return deleted;
+    }
+
+    /**
+     * Claims an existing blob for a row about to reference it, such as a page with the same content
+     * as another page, so that it is not deleted before the row is committed.
+     *
+     * @return false if the blob does not exist anymore, in which case its content must be written again
+     */
+    public boolean reuse(String key) throws IOException {
+        return claims.locked(key, () -> {
+            if (!storeFor(key).exists(key)) {
+                return false;
+            }
+            claims.claim(key);
+            return true;
+        });
+    }
+
+    void onBlobsReleased(@Observes(during = TransactionPhase.AFTER_SUCCESS) BlobsReleased event) {
+        for (String key : event.keys()) {
+            try {
+                deleteIfUnreferenced(key);
+            } catch (IOException | RuntimeException e) {
+                Log.warnf(e, "Failed to delete released blob %s", key);
+            }
+        }
+    }
+
+    public BlobStore writeStore() {
+        return writeStore;
+    }
+
+    public BlobStore storeFor(String key) {
+        return stores.stream()
+                .filter(store -> store.owns(key))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No blob store for key: " + key));
+    }
+
+    public BlobStore storeForScheme(String scheme) {
+        return stores.stream()
+                .filter(store -> store.scheme().equals(scheme))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown blob store: " + scheme));
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.ldclrcq.service;
+
+import java.util.Set;
+
+/**
+ * CDI event fired when rows referencing blobs are deleted, so that the blobs can be deleted once
+ * the change is committed, unless something else still references them.
+ */
+public record BlobsReleased(Set<String> keys) {
+}
@@ -0,0 +1,10 @@
+package org.ldclrcq.service;
+
+import java.util.UUID;
+
+/**
+ * CDI event fired when the cover of a cookbook is replaced or the cookbook is deleted, so that
+ * cached images of the previous cover are dropped once the change is committed.
+ */
+public record CoverChanged(UUID cookbookId) {
+}
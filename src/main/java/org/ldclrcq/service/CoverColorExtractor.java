@@ -0,0 +1,88 @@
+package org.ldclrcq.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Computes the dominant color of a cover, used as a placeholder until the image is loaded.
+ * The image is decoded with source subsampling to about {@value #SAMPLE_SIZE} pixels wide, so
+ * even multi-megabyte covers cost little, and colors are bucketed at 4 bits per channel.
+ */
+@ApplicationScoped
+public class CoverColorExtractor {
+
+    private static final int SAMPLE_SIZE = 64;
+
+    /**
+     * Returns the dominant color as {@code #rrggbb}, or empty if the image cannot be decoded.
+     */
+    public Optional<String> dominantColor(Path image) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(image.toFile())) {
+            if (in == null) {
+                return Optional.empty();
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int step = Math.max(1, Math.max(reader.getWidth(0), reader.getHeight(0)) / SAMPLE_SIZE);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return Optional.of(dominantColor(reader.read(0, param)));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    static String dominantColor(BufferedImage image) {
+        int[] counts = new int[4096];
+        long[] red = new long[4096];
+        long[] green = new long[4096];
+        long[] blue = new long[4096];
+
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int argb = image.getRGB(x, y);
+                if ((argb >>> 24) < 128) {
+                    continue; // mostly transparent
+                }
+                int r = (argb >> 16) & 0xFF;
+                int g = (argb >> 8) & 0xFF;
+                int b = argb & 0xFF;
+                int bucket = ((r >> 4) << 8) | ((g >> 4) << 4) | (b >> 4);
+                counts[bucket]++;
+                red[bucket] += r;
+                green[bucket] += g;
+                blue[bucket] += b;
+            }
+        }
+
+        int best = 0;
+        for (int bucket = 1; bucket < counts.length; bucket++) {
+            if (counts[bucket] > counts[best]) {
+                best = bucket;
+            }
+        }
+        if (counts[best] == 0) {
+            return "#ffffff";
+        }
+        // Average of the pixels in the winning bucket, rather than the bucket's corner
+        return String.format("#%02x%02x%02x",
+                red[best] / counts[best], green[best] / counts[best], blue[best] / counts[best]);
+    }
+}
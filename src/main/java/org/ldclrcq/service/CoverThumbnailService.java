@@ -0,0 +1,161 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.entity.CoverThumbnail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Fixed-width cover variants, generated on first request and stored in the blob store. Covers are
+ * decoded subsampled to about twice the largest variant width, and decoding is still memory
+ * hungry, so at most {@code cover.thumbnail.concurrency} run at once.
+ */
+@ApplicationScoped
+public class CoverThumbnailService {
+
+    @Inject
+    Blobs blobs;
+
+    @ConfigProperty(name = "cover.thumbnail.widths", defaultValue = "160,320,640")
+    List<Integer> widths;
+
+    @ConfigProperty(name = "cover.thumbnail.concurrency", defaultValue = "2")
+    int concurrency;
+
+    @ConfigProperty(name = "cover.thumbnail.jpeg-quality", defaultValue = "0.8")
+    float jpegQuality;
+
+    private static final int MAX_UNAVAILABLE = 10_000;
+
+    private Semaphore permits;
+    private final ConcurrentHashMap<String, Object> generationLocks = new ConcurrentHashMap<>();
+    // Variants that cannot be made: undecodable covers, or covers not wider than the variant. The
+    // oldest are forgotten past the limit, and are only checked again on their next request
+    private final Set<String> unavailable = Collections.synchronizedSet(Collections.newSetFromMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_UNAVAILABLE;
+                }
+            }));
+
+    @PostConstruct
+    void init() {
+        permits = new Semaphore(concurrency);
+        widths = widths.stream().sorted().toList();
+    }
+
+    /**
+     * Width of the variant to serve for a requested width: the smallest configured width at least
+     * as large, or empty when only the original is large enough.
+     */
+    public OptionalInt variantWidth(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return OptionalInt.empty();
+        }
+        return widths.stream()
+                .filter(width -> width >= requested)
+                .mapToInt(Integer::intValue)
+                .findFirst();
+    }
+
+    /**
+     * Returns the variant of a cover, generating it if needed. Empty when the original should be
+     * served instead, e.g. because it cannot be decoded or is already narrow enough.
+     */
+    public Optional<CoverThumbnail> thumbnail(UUID cookbookId, String coverKey, String coverSha256,
+                                              String contentType, int width) {
+        String variant = cookbookId + ":" + width + ":" + coverSha256;
+        if (unavailable.contains(variant)) {
+            return Optional.empty();
+        }
+
+        Optional<CoverThumbnail> existing = CoverThumbnail.findVariant(cookbookId, width, coverSha256);
+        if (existing.isPresent()) {
+            return existing;
+        }
+
+        Object lock = generationLocks.computeIfAbsent(variant, k -> new Object());
+        try {
+            synchronized (lock) {
+                existing = QuarkusTransaction.requiringNew().call(() ->
+                        CoverThumbnail.findVariant(cookbookId, width, coverSha256));
+                if (existing.isPresent()) {
+                    return existing;
+                }
+                Optional<CoverThumbnail> generated = generate(cookbookId, coverKey, coverSha256, contentType, width);
+                if (generated.isEmpty()) {
+                    unavailable.add(variant);
+                }
+                return generated;
+            }
+        } catch (Exception e) {
+            Log.warnf(e, "Failed to generate %dpx thumbnail for cookbook %s", width, cookbookId);
+            return Optional.empty();
+        } finally {
+            generationLocks.remove(variant, lock);
+        }
+    }
+
+    /**
+     * Removes all variants of a cookbook's cover, e.g. when the cover is replaced.
+     */
+    public void deleteForCookbook(UUID cookbookId) {
+        List<String> keys = QuarkusTransaction.requiringNew().call(() -> {
+            List<String> blobKeys = CoverThumbnail.findByCookbookId(cookbookId).stream()
+                    .map(thumbnail -> thumbnail.blobKey)
+                    .toList();
+            CoverThumbnail.deleteByCookbookId(cookbookId);
+            return blobKeys;
+        });
+        for (String key : keys) {
+            try {
+                blobs.deleteIfUnreferenced(key);
+            } catch (IOException e) {
+                Log.warnf(e, "Failed to delete thumbnail blob %s", key);
+            }
+        }
+        unavailable.removeIf(variant -> variant.startsWith(cookbookId + ":"));
+    }
+
+    private Optional<CoverThumbnail> generate(UUID cookbookId, String coverKey, String coverSha256,
+                                              String contentType, int width) throws Exception {
+        permits.acquire();
+        byte[] encoded;
+        String variantType;
+        try {
+            BufferedImage source = blobs.read(coverKey, (in, size) -> Images.decodeSubsampled(in, widths.getLast() * 2));
+            if (source == null || source.getWidth() <= width) {
+                return Optional.empty();
+            }
+            boolean png = "image/png".equals(contentType);
+            BufferedImage scaled = Images.scaleToWidth(source, width, png);
+            variantType = png ? "image/png" : "image/jpeg";
+            encoded = png ? Images.encodePng(scaled) : Images.encodeJpeg(scaled, jpegQuality);
+        } finally {
+            permits.release();
+        }
+
+        BlobStore.StoredBlob blob = blobs.write(new ByteArrayInputStream(encoded));
+        CoverThumbnail thumbnail = CoverThumbnail.create(cookbookId, width, coverSha256, blob, variantType);
+        QuarkusTransaction.requiringNew().run(thumbnail::persist);
+        return Optional.of(thumbnail);
+    }
+}
@@ -0,0 +1,144 @@
+package org.ldclrcq.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed blob store on the local filesystem. A blob is stored once under its SHA-256,
+ * sharded into two levels of directories ({@code ab/cd/abcd...}) to keep directories small.
+ * Identical content shares one file, so a blob must only be deleted once nothing references it,
+ * and a writer finding its content already stored claims it through {@link BlobClaims} so that
+ * it is not deleted before the writer's row is committed.
+ */
+@ApplicationScoped
+public class FileSystemBlobStore implements BlobStore {
+
+    public static final String SCHEME = "fs";
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+
+    @Inject
+    BlobClaims claims;
+
+    @Inject
+    public FileSystemBlobStore(@ConfigProperty(name = "blobstore.filesystem.root", defaultValue = "data/blobs") String root) {
+        this.root = Path.of(root);
+    }
+
+    @Override
+    public String scheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public StoredBlob write(InputStream in) throws IOException {
+        Path incoming = Files.createDirectories(root.resolve("incoming"));
+        Path temp = Files.createTempFile(incoming, "blob-", ".part");
+        try {
+            DigestInputStream digestIn = new DigestInputStream(in, Blobs.sha256());
+            long size = Files.copy(digestIn, temp, StandardCopyOption.REPLACE_EXISTING);
+            String sha256 = HexFormat.of().formatHex(digestIn.getMessageDigest().digest());
+
+            String key = SCHEME + ":" + sha256;
+            Path target = pathOf(sha256);
+            claims.locked(key, () -> {
+                claims.claim(key);
+                if (!Files.exists(target)) {
+                    Files.createDirectories(target.getParent());
+                    try {
+                        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (FileAlreadyExistsException e) {
+                        // Same content stored concurrently: keep the existing file
+                    }
+                }
+                return null;
+            });
+            return new StoredBlob(key, size, sha256);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public <T> T read(String key, Reader<T> reader) throws IOException {
+        Path path = path(key);
+        try (InputStream in = Files.newInputStream(path)) {
+            return reader.read(in, Files.size(path));
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(path(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(path(key));
+    }
+
+    /**
+     * Keys of the blobs last written before a given time. Partial writes left over from before
+     * then, e.g. by a crash, are deleted along the way.
+     */
+    public List<String> findWrittenBefore(Instant before) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        Path incoming = root.resolve("incoming");
+        List<String> keys = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isAfter(before)) {
+                        continue;
+                    }
+                } catch (NoSuchFileException e) {
+                    // Moved or deleted since the directory was listed
+                    continue;
+                }
+                if (file.startsWith(incoming)) {
+                    Files.deleteIfExists(file);
+                } else if (HASH.matcher(file.getFileName().toString()).matches()) {
+                    keys.add(SCHEME + ":" + file.getFileName());
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Location of the file holding a blob.
+     */
+    public Path path(String key) {
+        if (!owns(key)) {
+            throw new IllegalArgumentException("Not a filesystem blob key: " + key);
+        }
+        return pathOf(key.substring(SCHEME.length() + 1));
+    }
+
+    private Path pathOf(String sha256) {
+        if (!HASH.matcher(sha256).matches()) {
+            throw new IllegalArgumentException("Invalid blob hash: " + sha256);
+        }
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+}
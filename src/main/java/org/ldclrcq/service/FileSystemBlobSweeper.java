@@ -0,0 +1,83 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deletes files of the filesystem blob store that nothing references anymore: blobs kept by
+ * {@link Blobs#deleteIfUnreferenced} because they were claimed at the time, and blobs whose
+ * writer never committed its row, e.g. after a crash. Only files older than the claim grace
+ * period are considered, and each is checked again under its lock before being deleted. Claims
+ * that have expired are purged on the way.
+ */
+@ApplicationScoped
+public class FileSystemBlobSweeper {
+
+    // Files referenced by a blob key of the filesystem store
+    private static final String REFERENCED = """
+            SELECT image_key FROM cookbook_index_page WHERE image_key LIKE 'fs:%'
+            UNION SELECT preview_key FROM cookbook_index_page WHERE preview_key LIKE 'fs:%'
+            UNION SELECT cover_key FROM cookbook WHERE cover_key LIKE 'fs:%'
+            UNION SELECT blob_key FROM cover_thumbnail WHERE blob_key LIKE 'fs:%'
+            """;
+
+    @Inject
+    EntityManager entityManager;
+
+    @Inject
+    FileSystemBlobStore fileSystem;
+
+    @Inject
+    Blobs blobs;
+
+    @Inject
+    BlobClaims claims;
+
+    @Scheduled(every = "${blobstore.fs-sweeper.every:1h}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledSweep() {
+        try {
+            sweep(claims.gracePeriod());
+        } catch (IOException e) {
+            Log.warnf(e, "Failed to sweep the filesystem blob store");
+        }
+    }
+
+    /**
+     * Runs one sweep.
+     *
+     * @return the number of files deleted
+     */
+    public int sweep(Duration grace) throws IOException {
+        claims.purge(grace);
+
+        List<String> candidates = fileSystem.findWrittenBefore(Instant.now().minus(grace));
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> referenced = new HashSet<>(QuarkusTransaction.requiringNew().call(() ->
+                (List<String>) entityManager.createNativeQuery(REFERENCED).getResultList()));
+
+        int deleted = 0;
+        for (String key : candidates) {
+            if (!referenced.contains(key) && blobs.deleteIfUnreferenced(key, grace)) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            Log.infof("Filesystem blob sweep: %d unreferenced files deleted", deleted);
+        }
+        return deleted;
+    }
+}
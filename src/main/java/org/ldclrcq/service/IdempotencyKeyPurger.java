@@ -0,0 +1,31 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.entity.IdempotencyRecord;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Deletes idempotency keys once they have expired. Expired keys are also discarded when reused,
+ * but most keys never are.
+ */
+@ApplicationScoped
+public class IdempotencyKeyPurger {
+
+    @ConfigProperty(name = "idempotency.ttl", defaultValue = "24h")
+    Duration ttl;
+
+    @Scheduled(every = "${idempotency.purge-every:1h}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purge() {
+        long deleted = QuarkusTransaction.requiringNew().call(() ->
+                IdempotencyRecord.deleteCreatedBefore(Instant.now().minus(ttl)));
+        if (deleted > 0) {
+            Log.infof("Purged %d expired idempotency keys", deleted);
+        }
+    }
+}
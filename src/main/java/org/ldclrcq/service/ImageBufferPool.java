@@ -0,0 +1,186 @@
+package org.ldclrcq.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Pool of reusable image buffers, so that OCR does not allocate multi-megabyte arrays for
+ * every page. Page images are held in direct (off-heap) buffers, and base64 encoding uses
+ * pooled heap scratch arrays, leaving the final base64 String as the only large allocation.
+ * Buffers are pooled by power-of-two size class, up to a maximum of retained bytes.
+ */
+@ApplicationScoped
+public class ImageBufferPool {
+
+    private static final int MIN_SIZE_CLASS = 1 << 16;
+    private static final int CHUNK_SIZE = 3 * (1 << 14);
+
+    /**
+     * A pooled buffer, returned to the pool when closed.
+     */
+    public final class Lease<T> implements AutoCloseable {
+        private final Pool<T> pool;
+        private T buffer;
+
+        private Lease(Pool<T> pool, T buffer) {
+            this.pool = pool;
+            this.buffer = buffer;
+        }
+
+        public T buffer() {
+            if (buffer == null) {
+                throw new IllegalStateException("Buffer already released");
+            }
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+            if (buffer != null) {
+                pool.release(buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    private final long maxRetainedBytes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final Pool<ByteBuffer> directBuffers = new Pool<>(ByteBuffer::allocateDirect, ByteBuffer::capacity);
+    private final Pool<byte[]> heapBuffers = new Pool<>(byte[]::new, array -> array.length);
+
+    @Inject
+    public ImageBufferPool(@ConfigProperty(name = "ocr.image-buffer.pool-max-bytes", defaultValue = "67108864") long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Reads a stream of known length into a pooled direct buffer, flipped and ready to read.
+     *
+     * @throws EOFException if the stream ends before {@code length} bytes
+     */
+    public Lease<ByteBuffer> readDirect(InputStream in, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Image too large: " + length + " bytes");
+        }
+        Lease<ByteBuffer> lease = directBuffers.acquire((int) length);
+        try (Lease<byte[]> chunk = heapBuffers.acquire(CHUNK_SIZE)) {
+            ByteBuffer target = lease.buffer();
+            target.clear().limit((int) length);
+            byte[] bytes = chunk.buffer();
+            int read;
+            while (target.hasRemaining() && (read = in.read(bytes, 0, Math.min(bytes.length, target.remaining()))) != -1) {
+                target.put(bytes, 0, read);
+            }
+            if (target.hasRemaining()) {
+                throw new EOFException("Image ended after " + target.position() + " of " + length + " bytes");
+            }
+            target.flip();
+            return lease;
+        } catch (IOException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Base64-encodes the remaining bytes of a buffer without consuming it. Intermediate data
+     * only goes through pooled scratch arrays.
+     */
+    public String toBase64(ByteBuffer source) {
+        ByteBuffer src = source.duplicate();
+        int encodedLength = 4 * ((src.remaining() + 2) / 3);
+        try (Lease<byte[]> chunk = heapBuffers.acquire(CHUNK_SIZE);
+             Lease<byte[]> encoded = heapBuffers.acquire(encodedLength)) {
+            ScratchOutputStream out = new ScratchOutputStream(encoded.buffer());
+            try (OutputStream base64 = Base64.getEncoder().wrap(out)) {
+                byte[] bytes = chunk.buffer();
+                while (src.hasRemaining()) {
+                    int n = Math.min(CHUNK_SIZE, src.remaining());
+                    src.get(bytes, 0, n);
+                    base64.write(bytes, 0, n);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Base64 encoding failed", e);
+            }
+            return new String(encoded.buffer(), 0, out.count, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    long retainedBytes() {
+        return retainedBytes.get();
+    }
+
+    private static int sizeClass(int size) {
+        int capacity = Math.max(size, MIN_SIZE_CLASS);
+        int highest = Integer.highestOneBit(capacity);
+        return highest == capacity ? capacity : highest << 1;
+    }
+
+    private final class Pool<T> {
+        private final Map<Integer, Queue<T>> free = new ConcurrentHashMap<>();
+        private final IntFunction<T> allocator;
+        private final ToIntFunction<T> capacity;
+
+        Pool(IntFunction<T> allocator, ToIntFunction<T> capacity) {
+            this.allocator = allocator;
+            this.capacity = capacity;
+        }
+
+        Lease<T> acquire(int size) {
+            int sizeClass = sizeClass(size);
+            T buffer = free.computeIfAbsent(sizeClass, k -> new ConcurrentLinkedQueue<>()).poll();
+            if (buffer != null) {
+                retainedBytes.addAndGet(-sizeClass);
+            } else {
+                buffer = allocator.apply(sizeClass);
+            }
+            return new Lease<>(this, buffer);
+        }
+
+        void release(T buffer) {
+            int size = capacity.applyAsInt(buffer);
+            if (retainedBytes.addAndGet(size) > maxRetainedBytes) {
+                // Pool is full: let the buffer be garbage collected
+                retainedBytes.addAndGet(-size);
+                return;
+            }
+            free.computeIfAbsent(size, k -> new ConcurrentLinkedQueue<>()).offer(buffer);
+        }
+    }
+
+    private static final class ScratchOutputStream extends OutputStream {
+        private final byte[] target;
+        private int count;
+
+        ScratchOutputStream(byte[] target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) {
+            target[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            System.arraycopy(b, off, target, count, len);
+            count += len;
+        }
+    }
+}
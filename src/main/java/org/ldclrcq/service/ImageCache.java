@@ -0,0 +1,199 @@
+package org.ldclrcq.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * In-memory LRU cache of hot cover and thumbnail images, bounded by total bytes rather than by
+ * entry count so that a few large originals cannot crowd out many small thumbnails. Entries hold
+ * everything needed to answer a request, including conditional ones, without a database round
+ * trip. With {@code image-cache.off-heap} the bytes are kept in direct buffers instead of the heap.
+ * <p>
+ * Covers are invalidated once a {@link CoverChanged} is committed. A request that read the
+ * previous cover before the commit must not cache it afterwards, so {@link #put} only caches
+ * images read since the {@link #generation()} it is given, which every invalidation advances.
+ */
+@ApplicationScoped
+public class ImageCache {
+
+    /**
+     * A cached image with its HTTP metadata. {@code coverHash} is the hash of the original
+     * cover, used to check versioned URLs.
+     */
+    public record CachedImage(String coverHash, String etag, Instant lastModified, String contentType,
+                              byte[] heap, ByteBuffer offHeap, Instant expiresAt) {
+
+        public long size() {
+            return heap != null ? heap.length : offHeap.capacity();
+        }
+
+        /**
+         * Response entity for the image. Off-heap content is wrapped, not copied.
+         */
+        public Object entity() {
+            return heap != null ? heap : Buffer.buffer(Unpooled.wrappedBuffer(offHeap.duplicate()));
+        }
+    }
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final boolean offHeap;
+    private final Duration ttl;
+
+    private final LinkedHashMap<String, CachedImage> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long residentBytes;
+    private long generation;
+    private long hits;
+    private long misses;
+
+    @Inject
+    public ImageCache(@ConfigProperty(name = "image-cache.max-bytes", defaultValue = "67108864") long maxBytes,
+                      @ConfigProperty(name = "image-cache.max-entry-bytes", defaultValue = "2097152") long maxEntryBytes,
+                      @ConfigProperty(name = "image-cache.off-heap", defaultValue = "false") boolean offHeap,
+                      @ConfigProperty(name = "image-cache.ttl", defaultValue = "10m") Duration ttl,
+                      MeterRegistry registry) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.offHeap = offHeap;
+        this.ttl = ttl;
+
+        Gauge.builder("image.cache.resident.bytes", this, ImageCache::residentBytes)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("image.cache.hit.ratio", this, ImageCache::hitRatio)
+                .register(registry);
+        FunctionCounter.builder("image.cache.requests", this, cache -> cache.hits())
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("image.cache.requests", this, cache -> cache.misses())
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    public static String key(UUID cookbookId, int width) {
+        return cookbookId + ":" + width;
+    }
+
+    public synchronized Optional<CachedImage> get(String key) {
+        CachedImage image = entries.get(key);
+        if (image != null && image.expiresAt().isBefore(Instant.now())) {
+            remove(key);
+            image = null;
+        }
+        if (image == null) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        return Optional.of(image);
+    }
+
+    /**
+     * Whether an image of this size is small enough to be cached.
+     */
+    public boolean accepts(long size) {
+        return size <= maxEntryBytes && size <= maxBytes;
+    }
+
+    /**
+     * Current generation of the cache, to be read before looking up what is put in it.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches an image, unless the cache was invalidated since {@code generation}, in which case
+     * the image may be the cover that was replaced.
+     */
+    public void put(String key, String coverHash, String etag, Instant lastModified, String contentType, byte[] data,
+                    long generation) {
+        if (!accepts(data.length)) {
+            return;
+        }
+        byte[] heap = null;
+        ByteBuffer direct = null;
+        if (offHeap) {
+            direct = ByteBuffer.allocateDirect(data.length).put(data).flip();
+        } else {
+            heap = data;
+        }
+        CachedImage image = new CachedImage(coverHash, etag, lastModified, contentType, heap, direct, Instant.now().plus(ttl));
+
+        synchronized (this) {
+            if (generation != this.generation) {
+                return;
+            }
+            remove(key);
+            entries.put(key, image);
+            residentBytes += image.size();
+            // Evict least recently used entries until the cache fits again
+            Iterator<Map.Entry<String, CachedImage>> eldest = entries.entrySet().iterator();
+            while (residentBytes > maxBytes && eldest.hasNext()) {
+                residentBytes -= eldest.next().getValue().size();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops every cached variant of a cookbook's cover.
+     */
+    public synchronized void invalidate(UUID cookbookId) {
+        generation++;
+        String prefix = cookbookId + ":";
+        Iterator<Map.Entry<String, CachedImage>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, CachedImage> entry = it.next();
+            if (entry.getKey().startsWith(prefix)) {
+                residentBytes -= entry.getValue().size();
+                it.remove();
+            }
+        }
+    }
+
+    void onCoverChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) CoverChanged event) {
+        invalidate(event.cookbookId());
+    }
+
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    private void remove(String key) {
+        CachedImage removed = entries.remove(key);
+        if (removed != null) {
+            residentBytes -= removed.size();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.ldclrcq.service;
+
+import java.util.UUID;
+
+/**
+ * CDI event fired when the recipes of a cookbook import have been confirmed.
+ */
+public record ImportConfirmed(UUID cookbookId) {
+}
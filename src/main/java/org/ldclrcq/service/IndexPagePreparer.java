@@ -0,0 +1,331 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.virtual.threads.VirtualThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.dto.UploadIndexPagesResponse;
+import org.ldclrcq.entity.Cookbook;
+import org.ldclrcq.entity.CookbookIndexPage;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Checks and stores uploaded index page images before they become pages. Each file is handled on
+ * its own virtual thread: its real format is read from its first bytes, and its SHA-256 is
+ * computed while the image is decoded into a small preview for the review UI and a perceptual
+ * hash for {@link NearDuplicateDetector}, so an upload takes about as long as its largest file.
+ * Content that is already stored, in any cookbook, is linked to the existing blob instead of
+ * being written again. Uploaded, resumed and imported pages are then all added with
+ * {@link #append}, so a page the cookbook already has is never added twice.
+ * <p>
+ * Decoding is memory hungry, so at most {@code index-pages.preview.concurrency} images are
+ * decoded at once; they are subsampled while being read, so a large scan is never held in
+ * memory at full resolution.
+ */
+@ApplicationScoped
+public class IndexPagePreparer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] JPEG_MAGIC = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG_MAGIC = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] PDF_MAGIC = {'%', 'P', 'D', 'F', '-'};
+
+    /**
+     * An uploaded image ready to be added as a page. The image may be shared with existing pages;
+     * the preview is null when the image is too small to need one.
+     */
+    public record PreparedPage(String fileName, BlobStore.StoredBlob image, String contentType,
+                               BlobStore.StoredBlob preview, Long perceptualHash, String textLayer) {
+    }
+
+    /**
+     * Pages appended to a cookbook, and those it already had: each reported with the page it
+     * duplicates, and skipped.
+     */
+    public record Appended(List<CookbookIndexPage> added, List<UploadIndexPagesResponse.DuplicatePage> duplicates,
+                           List<PreparedPage> skipped) {
+    }
+
+    @Inject
+    Blobs blobs;
+
+    @Inject
+    NearDuplicateDetector nearDuplicates;
+
+    @Inject
+    @VirtualThreads
+    ExecutorService virtualThreadExecutor;
+
+    @ConfigProperty(name = "index-pages.preview.width", defaultValue = "320")
+    int previewWidth;
+
+    @ConfigProperty(name = "index-pages.preview.jpeg-quality", defaultValue = "0.7")
+    float previewQuality;
+
+    @ConfigProperty(name = "index-pages.preview.concurrency", defaultValue = "0")
+    int concurrency;
+
+    private Semaphore decodePermits;
+
+    @PostConstruct
+    void init() {
+        decodePermits = new Semaphore(concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the format of a file from its first bytes.
+     *
+     * @return image/jpeg, image/png or application/pdf, or null if it is none of them
+     */
+    public static String sniff(Path file) throws IOException {
+        byte[] header = new byte[PNG_MAGIC.length];
+        int read;
+        try (InputStream in = Files.newInputStream(file)) {
+            read = in.readNBytes(header, 0, header.length);
+        }
+        if (startsWith(header, read, JPEG_MAGIC)) {
+            return "image/jpeg";
+        }
+        if (startsWith(header, read, PNG_MAGIC)) {
+            return "image/png";
+        }
+        if (startsWith(header, read, PDF_MAGIC)) {
+            return PdfPageRenderer.CONTENT_TYPE;
+        }
+        return null;
+    }
+
+    /**
+     * Checks that a file is the image it claims to be.
+     *
+     * @throws IllegalArgumentException if its content is not of the declared type
+     */
+    public static void checkFormat(String fileName, Path file, String declaredType) throws IOException {
+        String actual = sniff(file);
+        if (!declaredType.equals(actual)) {
+            throw new IllegalArgumentException(fileName + " is declared as " + declaredType + " but its content is "
+                    + (actual != null ? actual : "not a JPEG, PNG or PDF"));
+        }
+    }
+
+    /**
+     * Prepares uploaded images in parallel.
+     *
+     * @param fileNames    names reported back for each file, e.g. for duplicates
+     * @param contentTypes declared types, checked against the content
+     * @return the prepared pages, in the order of the files
+     * @throws IllegalArgumentException if a file is not a decodable image of its declared type;
+     *                                  nothing is kept then
+     */
+    public List<PreparedPage> prepareAll(List<String> fileNames, List<Path> files, List<String> contentTypes) throws IOException {
+        List<Future<PreparedPage>> futures = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            int index = i;
+            futures.add(virtualThreadExecutor.submit(() ->
+                    prepare(fileNames.get(index), files.get(index), contentTypes.get(index))));
+        }
+
+        // Wait for every file, even after a failure, so nothing is stored after the cleanup
+        List<PreparedPage> prepared = new ArrayList<>(files.size());
+        Throwable failure = null;
+        for (Future<PreparedPage> future : futures) {
+            try {
+                prepared.add(future.get());
+            } catch (ExecutionException e) {
+                failure = failure != null ? failure : e.getCause();
+            } catch (CancellationException e) {
+                failure = failure != null ? failure : e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                failure = failure != null ? failure : e;
+            }
+        }
+        if (failure != null) {
+            discard(prepared);
+            if (failure instanceof IllegalArgumentException invalid) {
+                throw invalid;
+            }
+            throw new IOException("Failed to prepare index pages: " + failure.getMessage(), failure);
+        }
+        return prepared;
+    }
+
+    /**
+     * Makes the preview of a page that is already decoded, such as a rendered PDF page.
+     *
+     * @return the stored preview, or null if the page is not wider than a preview
+     */
+    public BlobStore.StoredBlob preview(BufferedImage image) throws IOException {
+        if (image.getWidth() <= previewWidth) {
+            return null;
+        }
+        BufferedImage scaled = Images.scaleToWidth(image, previewWidth, false);
+        return blobs.write(new ByteArrayInputStream(Images.encodeJpeg(Images.toRgb(scaled), previewQuality)));
+    }
+
+    /**
+     * Adds prepared pages after the last page of a cookbook, whether uploaded, resumed or
+     * imported. The cookbook row is locked, and pages whose content the cookbook already has, from
+     * an earlier upload or earlier in these pages, are not added again but reported with the page
+     * they duplicate. Must run in a transaction; once it has committed, call {@link #appended}.
+     *
+     * @return the pages added and skipped, or empty if the cookbook does not exist
+     */
+    public static Optional<Appended> append(UUID cookbookId, List<PreparedPage> pages) {
+        if (Cookbook.findByIdForUpdate(cookbookId).isEmpty()) {
+            return Optional.empty();
+        }
+        List<CookbookIndexPage> added = new ArrayList<>();
+        List<UploadIndexPagesResponse.DuplicatePage> duplicates = new ArrayList<>();
+        List<PreparedPage> skipped = new ArrayList<>();
+        for (PreparedPage page : pages) {
+            Optional<UUID> existing = CookbookIndexPage.findIdByCookbookIdAndImageSha256(cookbookId, page.image().sha256());
+            if (existing.isPresent()) {
+                duplicates.add(new UploadIndexPagesResponse.DuplicatePage(page.fileName(), existing.get()));
+                skipped.add(page);
+                continue;
+            }
+            added.add(CookbookIndexPage.append(cookbookId, page.image(), page.contentType(), page.preview(),
+                    page.perceptualHash(), page.textLayer()).orElseThrow());
+        }
+        return Optional.of(new Appended(added, duplicates, skipped));
+    }
+
+    /**
+     * Completes {@link #append} after its transaction has committed: the blobs of skipped pages
+     * are deleted unless other pages use them, and added pages are indexed for near-duplicates.
+     */
+    public void appended(Appended appended) {
+        discard(appended.skipped());
+        for (CookbookIndexPage page : appended.added()) {
+            if (page.perceptualHash != null) {
+                nearDuplicates.index(page.id, page.cookbookId, page.perceptualHash);
+            }
+        }
+    }
+
+    /**
+     * Deletes the blobs of pages that were not added, unless other pages use them.
+     */
+    public void discard(List<PreparedPage> pages) {
+        for (PreparedPage page : pages) {
+            discard(page.image());
+            discard(page.preview());
+        }
+    }
+
+    private PreparedPage prepare(String fileName, Path file, String contentType) throws Exception {
+        checkFormat(fileName, file, contentType);
+
+        Future<String> hash = virtualThreadExecutor.submit(() -> sha256(file));
+        Decoded decoded;
+        try {
+            decoded = decode(fileName, file);
+        } catch (Exception e) {
+            hash.cancel(true);
+            throw e;
+        }
+        BlobStore.StoredBlob preview = decoded.preview();
+
+        try {
+            String sha256 = hash.get();
+            Optional<String> existing = QuarkusTransaction.requiringNew().call(() ->
+                    CookbookIndexPage.findImageKeyBySha256(sha256));
+            BlobStore.StoredBlob image;
+            if (existing.isPresent() && blobs.reuse(existing.get())) {
+                image = new BlobStore.StoredBlob(existing.get(), Files.size(file), sha256);
+            } else {
+                try (InputStream in = Files.newInputStream(file)) {
+                    image = blobs.write(in);
+                }
+            }
+            return new PreparedPage(fileName, image, contentType, preview, decoded.perceptualHash(), null);
+        } catch (Exception e) {
+            discard(preview);
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes an image, subsampled to about twice the preview width, and stores its preview.
+     *
+     * @throws IllegalArgumentException if the image cannot be decoded
+     */
+    private Decoded decode(String fileName, Path file) throws IOException, InterruptedException {
+        decodePermits.acquire();
+        try {
+            BufferedImage image;
+            try {
+                image = Images.decodeSubsampled(file.toFile(), previewWidth * 2);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(fileName + " is not a readable image: " + e.getMessage(), e);
+            }
+            if (image == null) {
+                throw new IllegalArgumentException(fileName + " is not a readable image");
+            }
+            return new Decoded(preview(image), PerceptualHash.dHash(image));
+        } finally {
+            decodePermits.release();
+        }
+    }
+
+    private record Decoded(BlobStore.StoredBlob preview, long perceptualHash) {
+    }
+
+    private void discard(BlobStore.StoredBlob blob) {
+        if (blob == null) {
+            return;
+        }
+        try {
+            blobs.deleteIfUnreferenced(blob.key());
+        } catch (IOException e) {
+            Log.warnf(e, "Failed to delete blob %s of a discarded index page", blob.key());
+        }
+    }
+
+    private static String sha256(Path file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static boolean startsWith(byte[] header, int length, byte[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (header[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,188 @@
+package org.ldclrcq.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import io.quarkus.virtual.threads.VirtualThreads;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.entity.Cookbook;
+import org.ldclrcq.entity.CookbookIndexPage;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Applies the retention policy to index page images once an import is confirmed, since they are
+ * not read again after that: keep them, recompress them to archive quality, or delete them after
+ * a delay. Runs in the background after the confirmation commits, one page at a time.
+ */
+@ApplicationScoped
+public class IndexPageRetentionService {
+
+    public enum Policy {
+        KEEP,
+        ARCHIVE,
+        DELETE
+    }
+
+    private static final int PURGE_BATCH_SIZE = 20;
+
+    @Inject
+    Blobs blobs;
+
+    @Inject
+    @VirtualThreads
+    ExecutorService virtualThreadExecutor;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "index-pages.retention.policy", defaultValue = "keep")
+    Policy policy;
+
+    @ConfigProperty(name = "index-pages.retention.delete-after", defaultValue = "30d")
+    Duration deleteAfter;
+
+    @ConfigProperty(name = "index-pages.retention.archive.max-width", defaultValue = "1600")
+    int archiveMaxWidth;
+
+    @ConfigProperty(name = "index-pages.retention.archive.quality", defaultValue = "0.6")
+    float archiveQuality;
+
+    void onImportConfirmed(@Observes(during = TransactionPhase.AFTER_SUCCESS) ImportConfirmed event) {
+        if (policy == Policy.KEEP) {
+            return;
+        }
+        virtualThreadExecutor.submit(() -> {
+            try {
+                apply(event.cookbookId());
+            } catch (Exception e) {
+                Log.errorf(e, "Failed to apply index page retention to cookbook %s", event.cookbookId());
+            }
+        });
+    }
+
+    /**
+     * Applies the configured policy to a cookbook's index pages.
+     *
+     * @return the number of bytes reclaimed right away
+     */
+    public long apply(UUID cookbookId) {
+        return switch (policy) {
+            case KEEP -> 0;
+            case ARCHIVE -> archive(cookbookId);
+            case DELETE -> {
+                Instant purgeAfter = Instant.now().plus(deleteAfter);
+                QuarkusTransaction.requiringNew().run(() -> Cookbook.scheduleIndexPagePurge(cookbookId, purgeAfter));
+                yield deleteAfter.isZero() ? purge(cookbookId) : 0;
+            }
+        };
+    }
+
+    @Scheduled(every = "${index-pages.retention.purge-every:1h}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purgeDue() {
+        List<UUID> due;
+        do {
+            due = QuarkusTransaction.requiringNew().call(() ->
+                    Cookbook.findIdsDueForIndexPagePurge(Instant.now(), PURGE_BATCH_SIZE));
+            due.forEach(this::purge);
+        } while (due.size() == PURGE_BATCH_SIZE);
+    }
+
+    /**
+     * Recompresses every page not archived yet, keeping the archive copy only when it is smaller.
+     */
+    long archive(UUID cookbookId) {
+        List<CookbookIndexPage.StoredImageRef> pages = QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findUnarchivedImageRefs(cookbookId));
+
+        long reclaimed = 0;
+        for (CookbookIndexPage.StoredImageRef page : pages) {
+            try {
+                reclaimed += archivePage(page);
+            } catch (IOException | RuntimeException e) {
+                Log.warnf(e, "Failed to archive index page %s", page.id());
+            }
+        }
+        report(Policy.ARCHIVE, cookbookId, pages.size(), reclaimed);
+        return reclaimed;
+    }
+
+    private long archivePage(CookbookIndexPage.StoredImageRef page) throws IOException {
+        // Subsampled while read, so a large scan is never held in memory at full resolution
+        BufferedImage image = blobs.read(page.imageKey(), (in, size) -> Images.decodeSubsampled(in, archiveMaxWidth));
+        if (image == null) {
+            // Not decodable: nothing to recompress
+            QuarkusTransaction.requiringNew().run(() -> CookbookIndexPage.markArchived(page.id()));
+            return 0;
+        }
+
+        if (image.getWidth() > archiveMaxWidth) {
+            image = Images.scaleToWidth(image, archiveMaxWidth, false);
+        }
+        byte[] archived = Images.encodeJpeg(Images.toRgb(image), archiveQuality);
+        if (archived.length >= page.imageSize()) {
+            QuarkusTransaction.requiringNew().run(() -> CookbookIndexPage.markArchived(page.id()));
+            return 0;
+        }
+
+        BlobStore.StoredBlob blob = blobs.write(new ByteArrayInputStream(archived));
+        int updated = QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.replaceWithArchive(page.id(), page.imageKey(), blob, "image/jpeg"));
+        if (updated == 0) {
+            blobs.deleteIfUnreferenced(blob.key());
+            return 0;
+        }
+        blobs.deleteIfUnreferenced(page.imageKey());
+        return page.imageSize() - blob.size();
+    }
+
+    /**
+     * Deletes the index pages of a cookbook and their images.
+     */
+    long purge(UUID cookbookId) {
+        List<CookbookIndexPage.StoredImageRef> pages = QuarkusTransaction.requiringNew().call(() -> {
+            List<CookbookIndexPage.StoredImageRef> refs = CookbookIndexPage.findStoredImageRefs(cookbookId);
+            CookbookIndexPage.deleteByCookbookId(cookbookId);
+            Cookbook.clearIndexPagePurge(cookbookId);
+            return refs;
+        });
+
+        long reclaimed = 0;
+        for (CookbookIndexPage.StoredImageRef page : pages) {
+            try {
+                blobs.deleteIfUnreferenced(page.imageKey());
+                if (page.previewKey() != null) {
+                    blobs.deleteIfUnreferenced(page.previewKey());
+                }
+                reclaimed += page.imageSize();
+            } catch (IOException e) {
+                Log.warnf(e, "Failed to delete image of index page %s", page.id());
+            }
+        }
+        report(Policy.DELETE, cookbookId, pages.size(), reclaimed);
+        return reclaimed;
+    }
+
+    private void report(Policy applied, UUID cookbookId, int pages, long reclaimed) {
+        Counter.builder("index_pages.retention.reclaimed.bytes")
+                .tag("policy", applied.name().toLowerCase())
+                .baseUnit("bytes")
+                .register(registry)
+                .increment(reclaimed);
+        Log.infof("Index page retention (%s) for cookbook %s: %d pages, %d bytes reclaimed",
+                applied.name().toLowerCase(), cookbookId, pages, reclaimed);
+    }
+}
@@ -0,0 +1,225 @@
+package org.ldclrcq.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.dto.OcrResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministic parser for the text layer of a digital index page, used instead of the model
+ * when the page has one. Understands the usual "ingredient, then recipes with page numbers"
+ * layout: an ingredient heading on its own line, followed by entries such as
+ * {@code Apple pie ........ 45} or {@code Apple pie, 45, 112}, whose names may wrap onto a
+ * continuation line. Entries can also carry their ingredient inline, as in
+ * {@code Apples → Apple pie, 45}.
+ * <p>
+ * The parse is rejected when too few lines could be accounted for, so that pages with an
+ * unusual layout or a garbled text layer still go to the model.
+ */
+@ApplicationScoped
+public class IndexTextParser {
+
+    /**
+     * Model name recorded on archived responses produced by this parser.
+     */
+    public static final String MODEL = "text-layer";
+
+    /**
+     * Version of the parsing rules. Bump it whenever they change, like the prompt version.
+     */
+    public static final String VERSION = "text-1";
+
+    private static final int MAX_PAGE_NUMBER = 2000;
+
+    // Label, separator (dot leaders, comma or spaces) and one or more page numbers or ranges
+    private static final Pattern ENTRY = Pattern.compile(
+            "^(?<label>.*?\\p{L}.*?)(?<sep>(?:\\s*[.…·_]){2,}\\s*|\\s*,\\s*|\\s+)"
+                    + "(?<pages>\\d{1,4}(?:\\s*[-–]\\s*\\d{1,4})?(?:\\s*[,;]\\s*\\d{1,4}(?:\\s*[-–]\\s*\\d{1,4})?)*)\\.?$");
+    private static final Pattern PAGE = Pattern.compile("(\\d{1,4})(?:\\s*[-–]\\s*\\d{1,4})?");
+    private static final Pattern INLINE_INGREDIENT = Pattern.compile("^(?<ingredient>[^→:—]+?)\\s*(?:→|->|:|—)\\s*(?<recipe>.+)$");
+    private static final Pattern TRAILING_LEADER = Pattern.compile("[\\s.…·_]+$");
+    private static final Pattern NOISE = Pattern.compile(
+            "^(?:\\d{1,4}|\\p{L}|index|(?:\\(?(?:continued|suite)\\)?)|[-–—*•]+|[\\s.…·_:]+)$", Pattern.CASE_INSENSITIVE);
+    private static final Set<String> JOINERS = Set.of(
+            "and", "with", "or", "in", "of", "on", "the", "&", "et", "de", "du", "des", "au", "aux", "à", "en", "la", "le");
+
+    public record ParsedPage(OcrResult result, double coverage) {
+    }
+
+    private final double minCoverage;
+    private final int minEntries;
+
+    @Inject
+    public IndexTextParser(@ConfigProperty(name = "ocr.text-layer.min-coverage", defaultValue = "0.8") double minCoverage,
+                           @ConfigProperty(name = "ocr.text-layer.min-entries", defaultValue = "3") int minEntries) {
+        this.minCoverage = minCoverage;
+        this.minEntries = minEntries;
+    }
+
+    /**
+     * Parses the text layer of one index page.
+     *
+     * @return the extracted recipes, or empty if the text does not look like an index this
+     * parser understands well enough, in which case the page should go to the model
+     */
+    public Optional<ParsedPage> parse(String text) {
+        if (text == null || text.isBlank() || !looksLikeText(text)) {
+            return Optional.empty();
+        }
+
+        List<OcrResult.ExtractedRecipe> recipes = new ArrayList<>();
+        List<String> pending = new ArrayList<>();
+        String ingredient = null;
+        int lines = 0;
+        int unresolved = 0;
+
+        for (String rawLine : text.split("\\R")) {
+            String line = rawLine.strip().replaceAll("\\s+", " ");
+            if (line.isEmpty() || NOISE.matcher(line).matches()) {
+                continue;
+            }
+            lines++;
+
+            Matcher entry = ENTRY.matcher(line);
+            if (!entry.matches()) {
+                pending.add(line);
+                continue;
+            }
+
+            String label = TRAILING_LEADER.matcher(entry.group("label")).replaceAll("");
+            double confidence = 0.95;
+            if (entry.group("sep").isBlank()) {
+                // Only whitespace before the number: it may be part of the name
+                confidence -= 0.15;
+            }
+
+            // The last pageless line is either the start of this entry or a new ingredient heading
+            if (!pending.isEmpty()) {
+                String previous = pending.removeLast();
+                if ((ingredient != null || !pending.isEmpty()) && continues(previous, label)) {
+                    label = previous + " " + label;
+                    confidence -= 0.05;
+                    lines--;
+                    if (!pending.isEmpty()) {
+                        ingredient = heading(pending.removeLast());
+                    }
+                } else {
+                    ingredient = heading(previous);
+                }
+                // Consecutive headings without entries are not something this parser understands
+                unresolved += pending.size();
+                pending.clear();
+            }
+
+            String recipeIngredient = ingredient;
+            Matcher inline = INLINE_INGREDIENT.matcher(label);
+            if (inline.matches()) {
+                String inlineIngredient = heading(inline.group("ingredient"));
+                if (inlineIngredient != null) {
+                    recipeIngredient = inlineIngredient;
+                }
+                label = inline.group("recipe").strip();
+            }
+            if (recipeIngredient == null) {
+                // A flat list of recipes: the ingredient has to be guessed from the name
+                recipeIngredient = label;
+                confidence -= 0.3;
+            }
+
+            List<Integer> pages = pages(entry.group("pages"));
+            if (pages.isEmpty()) {
+                unresolved++;
+                continue;
+            }
+            for (int page : pages) {
+                recipes.add(new OcrResult.ExtractedRecipe(label, page, recipeIngredient, confidence));
+            }
+        }
+        unresolved += pending.size();
+
+        if (lines == 0 || recipes.size() < minEntries) {
+            return Optional.empty();
+        }
+        double coverage = (double) (lines - unresolved) / lines;
+        if (coverage < minCoverage) {
+            return Optional.empty();
+        }
+
+        // Lines left unexplained lower the confidence of everything parsed from the page
+        List<OcrResult.ExtractedRecipe> scored = recipes.stream()
+                .map(r -> new OcrResult.ExtractedRecipe(r.recipeName(), r.pageNumber(), r.ingredient(),
+                        Math.round(r.confidence() * coverage * 100) / 100.0))
+                .toList();
+        return Optional.of(new ParsedPage(new OcrResult(scored), coverage));
+    }
+
+    /**
+     * Whether a pageless line is the first part of the entry that follows it rather than a heading.
+     */
+    private static boolean continues(String previous, String label) {
+        if (previous.equals(previous.toUpperCase(Locale.ROOT))) {
+            return false;
+        }
+        if (previous.endsWith(",") || previous.endsWith("-")) {
+            return true;
+        }
+        String lastWord = previous.substring(previous.lastIndexOf(' ') + 1).toLowerCase(Locale.ROOT);
+        int space = label.indexOf(' ');
+        String firstWord = (space < 0 ? label : label.substring(0, space)).toLowerCase(Locale.ROOT);
+        // Headings start with a capital, so a lowercase line is the start of a wrapped entry
+        return JOINERS.contains(lastWord) || JOINERS.contains(firstWord)
+                || Character.isLowerCase(previous.codePointAt(0));
+    }
+
+    /**
+     * The ingredient named by a heading line, or null if nothing is left once leaders and the
+     * trailing colon are removed.
+     */
+    private static String heading(String line) {
+        String heading = TRAILING_LEADER.matcher(line).replaceAll("");
+        if (heading.endsWith(":")) {
+            heading = heading.substring(0, heading.length() - 1).strip();
+        }
+        if (heading.isEmpty()) {
+            return null;
+        }
+        // Headings are often set in capitals: keep the name, not the typography
+        if (heading.equals(heading.toUpperCase(Locale.ROOT))) {
+            heading = heading.charAt(0) + heading.substring(1).toLowerCase(Locale.ROOT);
+        }
+        return heading;
+    }
+
+    private static List<Integer> pages(String spec) {
+        List<Integer> pages = new ArrayList<>();
+        Matcher matcher = PAGE.matcher(spec);
+        while (matcher.find()) {
+            int page = Integer.parseInt(matcher.group(1));
+            if (page < 1 || page > MAX_PAGE_NUMBER) {
+                return List.of();
+            }
+            if (!pages.contains(page)) {
+                pages.add(page);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Rejects text layers produced by fonts without a usable encoding, which extract as
+     * replacement characters or symbol soup.
+     */
+    private static boolean looksLikeText(String text) {
+        long visible = text.codePoints().filter(c -> !Character.isWhitespace(c)).count();
+        long letters = text.codePoints().filter(Character::isLetter).count();
+        return text.indexOf('�') < 0 && visible > 0 && letters >= visible / 2;
+    }
+}
@@ -0,0 +1,169 @@
+package org.ldclrcq.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unlinks PostgreSQL large objects that no page, cover or thumbnail references anymore, e.g.
+ * after a cookbook is deleted or a cover replaced. Orphans are first recorded as candidates and
+ * only unlinked on a later run once they have stayed unreferenced for the grace period, so a
+ * blob written just before the row pointing at it commits is never lost; large objects reused by
+ * a new page are kept while their {@link BlobClaims claim} lasts. Work is done in bounded batches,
+ * each in its own transaction.
+ */
+@ApplicationScoped
+public class LargeObjectSweeper {
+
+    // Large objects referenced by a blob key of the PostgreSQL store
+    private static final String REFERENCED = """
+            SELECT CAST(substring(image_key FROM 4) AS oid) AS oid FROM cookbook_index_page WHERE image_key LIKE 'pg:%'
+            UNION SELECT CAST(substring(preview_key FROM 4) AS oid) FROM cookbook_index_page WHERE preview_key LIKE 'pg:%'
+            UNION SELECT CAST(substring(cover_key FROM 4) AS oid) FROM cookbook WHERE cover_key LIKE 'pg:%'
+            UNION SELECT CAST(substring(blob_key FROM 4) AS oid) FROM cover_thumbnail WHERE blob_key LIKE 'pg:%'
+            """;
+
+    // lo_open mode INV_READ; the descriptor is closed with the transaction
+    private static final int INV_READ = 0x40000;
+
+    @Inject
+    EntityManager entityManager;
+
+    @Inject
+    Blobs blobs;
+
+    @Inject
+    BlobClaims claims;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "blobstore.lo-sweeper.grace-period", defaultValue = "1h")
+    Duration gracePeriod;
+
+    @ConfigProperty(name = "blobstore.lo-sweeper.batch-size", defaultValue = "500")
+    int batchSize;
+
+    @ConfigProperty(name = "blobstore.lo-sweeper.max-batches", defaultValue = "20")
+    int maxBatches;
+
+    private final AtomicLong reclaimableBytes = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("blobstore.large_objects.reclaimable.bytes", reclaimableBytes, AtomicLong::get)
+                .description("Size of unreferenced large objects waiting to be unlinked")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Scheduled(every = "${blobstore.lo-sweeper.every:1h}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledSweep() {
+        sweep(gracePeriod);
+    }
+
+    /**
+     * Runs one sweep.
+     *
+     * @return the number of large objects unlinked
+     */
+    public int sweep(Duration grace) {
+        int found = QuarkusTransaction.requiringNew().call(this::recordCandidates);
+        QuarkusTransaction.requiringNew().run(this::forgetReferencedCandidates);
+
+        Instant seenBefore = Instant.now().minus(grace);
+        int unlinked = 0;
+        for (int batch = 0; batch < maxBatches; batch++) {
+            int count = QuarkusTransaction.requiringNew().call(() -> unlinkBatch(seenBefore));
+            unlinked += count;
+            if (count < batchSize) {
+                break;
+            }
+        }
+
+        long reclaimable = QuarkusTransaction.requiringNew().call(() -> ((Number) entityManager
+                .createNativeQuery("SELECT COALESCE(SUM(size), 0) FROM lo_orphan_candidate")
+                .getSingleResult()).longValue());
+        reclaimableBytes.set(reclaimable);
+
+        if (found > 0 || unlinked > 0) {
+            Log.infof("Large object sweep: %d new orphans, %d unlinked, %d bytes awaiting the grace period",
+                    found, unlinked, reclaimable);
+        }
+        return unlinked;
+    }
+
+    private int recordCandidates() {
+        return entityManager.createNativeQuery("""
+                        INSERT INTO lo_orphan_candidate (oid, size, first_seen_at)
+                        SELECT m.oid, lo_lseek64(lo_open(m.oid, :mode), 0, 2), NOW()
+                        FROM pg_largeobject_metadata m
+                        WHERE m.lomowner = (SELECT oid FROM pg_roles WHERE rolname = current_user)
+                          AND NOT EXISTS (SELECT 1 FROM lo_orphan_candidate c WHERE c.oid = m.oid)
+                          AND m.oid NOT IN (%s)
+                        LIMIT :limit
+                        """.formatted(REFERENCED))
+                .setParameter("mode", INV_READ)
+                .setParameter("limit", batchSize * maxBatches)
+                .executeUpdate();
+    }
+
+    // Candidates that got referenced again, or were unlinked by someone else
+    private void forgetReferencedCandidates() {
+        entityManager.createNativeQuery("""
+                        DELETE FROM lo_orphan_candidate c
+                        WHERE c.oid IN (%s)
+                           OR NOT EXISTS (SELECT 1 FROM pg_largeobject_metadata m WHERE m.oid = c.oid)
+                        """.formatted(REFERENCED))
+                .executeUpdate();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int unlinkBatch(Instant seenBefore) {
+        List<Number> oids = entityManager.createNativeQuery("""
+                        SELECT c.oid FROM lo_orphan_candidate c
+                        WHERE c.first_seen_at <= :seenBefore
+                          AND c.oid NOT IN (%s)
+                          AND NOT EXISTS (SELECT 1 FROM blob_claim b
+                                          WHERE b.blob_key = 'pg:' || c.oid AND b.claimed_at > :claimedAfter)
+                        ORDER BY c.oid
+                        LIMIT :limit
+                        FOR UPDATE SKIP LOCKED
+                        """.formatted(REFERENCED))
+                .setParameter("seenBefore", seenBefore)
+                .setParameter("claimedAfter", Instant.now().minus(claims.gracePeriod()))
+                .setParameter("limit", batchSize)
+                .getResultList();
+
+        int unlinked = 0;
+        for (Number oid : oids) {
+            // A page may have just reused it, in which case it is kept until the next sweeps
+            String key = PostgresBlobStore.SCHEME + ":" + oid.longValue();
+            claims.lock(key);
+            if (claims.isClaimed(key, claims.gracePeriod())) {
+                continue;
+            }
+            entityManager.createNativeQuery("SELECT lo_unlink(:oid)")
+                    .setParameter("oid", oid.longValue())
+                    .getSingleResult();
+            entityManager.createNativeQuery("DELETE FROM lo_orphan_candidate WHERE oid = :oid")
+                    .setParameter("oid", oid.longValue())
+                    .executeUpdate();
+            blobs.discardSpooled(key);
+            unlinked++;
+        }
+        return unlinked;
+    }
+}
@@ -0,0 +1,502 @@
+package org.ldclrcq.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.virtual.threads.VirtualThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.dto.ImportBatchProgressResponse;
+import org.ldclrcq.entity.Cookbook;
+import org.ldclrcq.entity.ImportBatch;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Onboards a whole library from one archive: a ZIP or (optionally gzipped) tar with one folder
+ * per cookbook. Each folder holds a {@code manifest.json} with the title and author, an optional
+ * {@code cover.jpg} or {@code cover.png}, and the index pages as JPEG, PNG or PDF files, imported
+ * in file name order unless the manifest lists them:
+ * <pre>
+ * {"title": "...", "author": "...", "cover": "front.jpg", "pages": ["index/1.jpg", "index/2.jpg"], "pdfPages": "3-5"}
+ * </pre>
+ * The archive is read as a stream into temp files, so only file names are held in memory.
+ * Cookbooks are created once the whole archive has been read, since a manifest may come after
+ * the files it describes: their page images are then checked and stored by {@link IndexPagePreparer}
+ * like uploaded ones, and the cookbooks are queued for OCR, which runs for at most
+ * {@code library-import.ocr-concurrency} cookbooks at a time.
+ */
+@ApplicationScoped
+public class LibraryImportService {
+
+    public static final String MANIFEST = "manifest.json";
+
+    private static final int MAX_MANIFEST_BYTES = 64 * 1024;
+
+    public enum Format {
+        ZIP, TAR, TAR_GZIP
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Manifest(String title, String author, String cover, List<String> pages, String pdfPages) {
+    }
+
+    public record ImportedCookbook(UUID id, String folder, String title, int pageCount, boolean hasCover) {
+    }
+
+    public record SkippedFolder(String folder, String error) {
+    }
+
+    /**
+     * Outcome of an import. The batch id is null when no cookbook could be imported.
+     */
+    public record ImportOutcome(UUID batchId, List<ImportedCookbook> cookbooks, List<SkippedFolder> skipped) {
+    }
+
+    /**
+     * Thrown when the archive itself cannot be read, as opposed to a failure to store what it holds.
+     */
+    public static class UnreadableArchiveException extends IOException {
+        public UnreadableArchiveException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ArchiveRead<T> {
+        T read() throws IOException;
+    }
+
+    @Inject
+    Blobs blobs;
+
+    @Inject
+    PdfPageRenderer pdfRenderer;
+
+    @Inject
+    IndexPagePreparer preparer;
+
+    @Inject
+    CoverColorExtractor colorExtractor;
+
+    @Inject
+    OcrService ocrService;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    @VirtualThreads
+    ExecutorService virtualThreadExecutor;
+
+    @ConfigProperty(name = "library-import.max-cookbooks", defaultValue = "100")
+    int maxCookbooks;
+
+    @ConfigProperty(name = "library-import.ocr-concurrency", defaultValue = "2")
+    int ocrConcurrency;
+
+    private Semaphore ocrPermits;
+
+    @PostConstruct
+    void init() {
+        ocrPermits = new Semaphore(ocrConcurrency);
+    }
+
+    /**
+     * Resumes OCR for cookbooks still queued when the application stopped.
+     */
+    void onStart(@Observes StartupEvent event) {
+        List<UUID> queued = QuarkusTransaction.requiringNew()
+                .call(() -> Cookbook.findIdsByOcrStatus(Cookbook.OcrStatus.QUEUED));
+        if (!queued.isEmpty()) {
+            Log.infof("Resuming OCR for %d queued cookbooks", queued.size());
+            queued.forEach(this::enqueueOcr);
+        }
+    }
+
+    /**
+     * Imports every cookbook folder of an archive and queues them for OCR.
+     *
+     * @throws IllegalArgumentException   if the archive holds too many cookbooks
+     * @throws UnreadableArchiveException if the archive cannot be read; nothing is imported then
+     * @throws IOException                if the files of the archive cannot be stored; nothing is imported then
+     */
+    public ImportOutcome importArchive(InputStream body, Format format) throws IOException {
+        Map<String, Folder> folders = new LinkedHashMap<>();
+        try {
+            readArchive(body, format, folders);
+        } catch (IOException | RuntimeException e) {
+            folders.values().forEach(folder -> {
+                discard(folder);
+                folder.deleteTempFiles();
+            });
+            throw e;
+        }
+
+        UUID batchId = null;
+        List<ImportedCookbook> imported = new ArrayList<>();
+        List<SkippedFolder> skipped = new ArrayList<>();
+        for (Folder folder : folders.values()) {
+            try {
+                if (batchId == null) {
+                    batchId = QuarkusTransaction.requiringNew().call(() -> {
+                        ImportBatch batch = new ImportBatch();
+                        batch.persist();
+                        return batch.id;
+                    });
+                }
+                imported.add(createCookbook(batchId, folder));
+            } catch (RuntimeException | IOException e) {
+                Log.warnf("Skipping folder %s of library import: %s", folder.name, e.getMessage());
+                skipped.add(new SkippedFolder(folder.name, e.getMessage()));
+                discard(folder);
+            } finally {
+                folder.deleteTempFiles();
+            }
+        }
+
+        imported.forEach(cookbook -> enqueueOcr(cookbook.id()));
+        Log.infof("Imported %d cookbooks in batch %s, skipped %d folders", imported.size(), batchId, skipped.size());
+        return new ImportOutcome(batchId, imported, skipped);
+    }
+
+    /**
+     * Aggregate OCR progress of the cookbooks of a batch that still exist.
+     */
+    public Optional<ImportBatchProgressResponse> progress(UUID batchId) {
+        return QuarkusTransaction.requiringNew().call(() -> ImportBatch.findByIdOptional(batchId).map(batch -> {
+            List<Cookbook.BatchMemberRef> members = Cookbook.findBatchMemberRefs(batchId);
+            int queued = 0;
+            int processing = 0;
+            int completed = 0;
+            int failed = 0;
+            for (Cookbook.BatchMemberRef member : members) {
+                switch (member.ocrStatus()) {
+                    case NONE, QUEUED -> queued++;
+                    case PROCESSING -> processing++;
+                    case COMPLETED, COMPLETED_WITH_ERRORS -> completed++;
+                    case FAILED -> failed++;
+                }
+            }
+            return new ImportBatchProgressResponse(batch.id, batch.createdAt, members.size(),
+                    queued, processing, completed, failed, queued + processing == 0, members);
+        }));
+    }
+
+    private void readArchive(InputStream body, Format format, Map<String, Folder> folders) throws IOException {
+        try (ArchiveInputStream<? extends ArchiveEntry> archive = fromArchive(() -> open(body, format))) {
+            ArchiveEntry entry;
+            while ((entry = fromArchive(archive::getNextEntry)) != null) {
+                if (entry.isDirectory() || !archive.canReadEntryData(entry)) {
+                    continue;
+                }
+                String name = entry.getName().replace('\\', '/');
+                if (name.startsWith("./")) {
+                    name = name.substring(2);
+                }
+                int slash = name.indexOf('/');
+                if (slash <= 0 || isHidden(name)) {
+                    // Files at the root of the archive and OS metadata are not part of any cookbook
+                    continue;
+                }
+
+                String folderName = name.substring(0, slash);
+                String file = name.substring(slash + 1);
+                Folder folder = folders.get(folderName);
+                if (folder == null) {
+                    if (folders.size() == maxCookbooks) {
+                        throw new IllegalArgumentException("An archive can hold at most " + maxCookbooks + " cookbooks");
+                    }
+                    folder = new Folder(folderName);
+                    folders.put(folderName, folder);
+                }
+
+                if (file.equals(MANIFEST)) {
+                    folder.readManifest(fromArchive(() -> archive.readNBytes(MAX_MANIFEST_BYTES + 1)));
+                    continue;
+                }
+                String contentType = contentType(file);
+                if (contentType == null) {
+                    continue;
+                }
+                Path temp = Files.createTempFile("library-import-", file.substring(file.lastIndexOf('.')));
+                ArchivedFile replaced = folder.files.put(file, new ArchivedFile(contentType, temp));
+                if (replaced != null) {
+                    // The last entry with a path wins
+                    Files.deleteIfExists(replaced.file());
+                }
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = fromArchive(() -> archive.read(buffer))) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+            }
+        }
+    }
+
+    private static <T> T fromArchive(ArchiveRead<T> read) throws UnreadableArchiveException {
+        try {
+            return read.read();
+        } catch (UnreadableArchiveException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UnreadableArchiveException(e);
+        }
+    }
+
+    private static ArchiveInputStream<? extends ArchiveEntry> open(InputStream body, Format format) throws IOException {
+        InputStream in = new BufferedInputStream(body);
+        return switch (format) {
+            case ZIP -> new ZipArchiveInputStream(in);
+            case TAR -> new TarArchiveInputStream(in);
+            case TAR_GZIP -> new TarArchiveInputStream(new GzipCompressorInputStream(in));
+        };
+    }
+
+    private ImportedCookbook createCookbook(UUID batchId, Folder folder) throws IOException {
+        Manifest manifest = folder.manifest;
+        if (folder.manifestError != null) {
+            throw new IllegalArgumentException(folder.manifestError);
+        }
+        if (manifest == null) {
+            throw new IllegalArgumentException("Missing " + MANIFEST);
+        }
+        if (manifest.title() == null || manifest.title().isBlank() || manifest.author() == null || manifest.author().isBlank()) {
+            throw new IllegalArgumentException(MANIFEST + " must have a title and an author");
+        }
+
+        String coverName = manifest.cover() != null ? manifest.cover() : folder.defaultCoverName();
+        ArchivedFile cover = null;
+        if (coverName != null) {
+            cover = folder.files.get(coverName);
+            if (cover == null || PdfPageRenderer.CONTENT_TYPE.equals(cover.contentType())) {
+                throw new IllegalArgumentException("Cover " + coverName + " is not a JPEG or PNG file of the folder");
+            }
+            IndexPagePreparer.checkFormat(coverName, cover.file(), cover.contentType());
+        }
+
+        Map<String, ArchivedFile> pageFiles = new LinkedHashMap<>();
+        if (manifest.pages() != null) {
+            for (String pageName : manifest.pages()) {
+                ArchivedFile page = folder.files.get(pageName);
+                if (page == null) {
+                    throw new IllegalArgumentException("Page " + pageName + " is not a JPEG, PNG or PDF file of the folder");
+                }
+                pageFiles.put(pageName, page);
+            }
+        } else {
+            folder.files.forEach((name, file) -> {
+                if (!name.equals(coverName)) {
+                    pageFiles.put(name, file);
+                }
+            });
+        }
+
+        // Prepare images and render PDFs before opening the transaction; their blobs are owned by the folder from now on
+        List<String> imageNames = pageFiles.entrySet().stream()
+                .filter(page -> !PdfPageRenderer.CONTENT_TYPE.equals(page.getValue().contentType()))
+                .map(Map.Entry::getKey)
+                .toList();
+        List<IndexPagePreparer.PreparedPage> images = preparer.prepareAll(imageNames,
+                imageNames.stream().map(name -> pageFiles.get(name).file()).toList(),
+                imageNames.stream().map(name -> pageFiles.get(name).contentType()).toList());
+        folder.prepared.addAll(images);
+
+        List<IndexPagePreparer.PreparedPage> pages = new ArrayList<>();
+        Iterator<IndexPagePreparer.PreparedPage> nextImage = images.iterator();
+        for (Map.Entry<String, ArchivedFile> file : pageFiles.entrySet()) {
+            if (!PdfPageRenderer.CONTENT_TYPE.equals(file.getValue().contentType())) {
+                pages.add(nextImage.next());
+                continue;
+            }
+            for (PdfPageRenderer.RenderedPage rendered : pdfRenderer.render(file.getValue().file(), manifest.pdfPages(), null)) {
+                folder.prepared.add(new IndexPagePreparer.PreparedPage(file.getKey() + " (page " + rendered.pageNumber() + ")",
+                        rendered.image(), "image/jpeg", rendered.preview(), rendered.perceptualHash(), rendered.text()));
+                pages.add(folder.prepared.getLast());
+            }
+        }
+        if (pages.isEmpty()) {
+            throw new IllegalArgumentException("No index pages");
+        }
+
+        if (cover != null) {
+            try (InputStream in = Files.newInputStream(cover.file())) {
+                folder.cover = blobs.write(in);
+            }
+        }
+        String coverColor = cover != null ? colorExtractor.dominantColor(cover.file()).orElse(null) : null;
+        ArchivedFile coverFile = cover;
+        BlobStore.StoredBlob storedCover = folder.cover;
+        Created created = QuarkusTransaction.requiringNew().call(() -> {
+            Cookbook cookbook = Cookbook.create(manifest.title().strip(), manifest.author().strip());
+            cookbook.importBatchId = batchId;
+            cookbook.ocrStatus = Cookbook.OcrStatus.QUEUED;
+            if (coverFile != null) {
+                cookbook.coverKey = storedCover.key();
+                cookbook.coverSize = storedCover.size();
+                cookbook.coverSha256 = storedCover.sha256();
+                cookbook.coverContentType = coverFile.contentType();
+                cookbook.coverUploadedAt = Instant.now();
+                cookbook.coverColor = coverColor;
+                cookbook.hasCover = true;
+            }
+            // Flushed so that the pages can lock its row
+            cookbook.persistAndFlush();
+
+            // Like uploaded pages, an image found twice in the folder is added once
+            IndexPagePreparer.Appended appended = IndexPagePreparer.append(cookbook.id, pages).orElseThrow();
+            ImportBatch.incrementCookbookCount(batchId);
+            return new Created(cookbook.id, appended);
+        });
+        folder.imported = true;
+        preparer.appended(created.pages());
+        return new ImportedCookbook(created.cookbookId(), folder.name, manifest.title().strip(),
+                created.pages().added().size(), cover != null);
+    }
+
+    private void enqueueOcr(UUID cookbookId) {
+        virtualThreadExecutor.submit(() -> {
+            try {
+                ocrPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                // A queued cookbook may have been started by hand or deleted while waiting
+                int claimed = QuarkusTransaction.requiringNew().call(() -> Cookbook.claimQueuedOcrProcessing(cookbookId));
+                if (claimed == 1) {
+                    ocrService.process(cookbookId);
+                }
+            } catch (Exception e) {
+                Log.errorf(e, "Failed to start queued OCR for cookbook %s", cookbookId);
+            } finally {
+                ocrPermits.release();
+            }
+        });
+    }
+
+    private void discard(Folder folder) {
+        if (folder.imported) {
+            return;
+        }
+        preparer.discard(folder.prepared);
+        if (folder.cover != null) {
+            try {
+                blobs.deleteIfUnreferenced(folder.cover.key());
+            } catch (IOException e) {
+                Log.warnf(e, "Failed to delete blob %s of skipped folder %s", folder.cover.key(), folder.name);
+            }
+        }
+        folder.deleteTempFiles();
+    }
+
+    private static boolean isHidden(String name) {
+        for (String segment : name.split("/")) {
+            if (segment.startsWith(".") || segment.equals("__MACOSX")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String contentType(String file) {
+        String lower = file.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) {
+            return "image/jpeg";
+        }
+        if (lower.endsWith(".png")) {
+            return "image/png";
+        }
+        if (lower.endsWith(".pdf")) {
+            return PdfPageRenderer.CONTENT_TYPE;
+        }
+        return null;
+    }
+
+    private record Created(UUID cookbookId, IndexPagePreparer.Appended pages) {
+    }
+
+    // A file of a cookbook folder, in a temp file until the cookbook is created
+    private record ArchivedFile(String contentType, Path file) {
+    }
+
+    private final class Folder {
+        final String name;
+        // Sorted by path, which is the page order when the manifest does not list the pages
+        final Map<String, ArchivedFile> files = new TreeMap<>();
+        // Stored for the cookbook, and deleted if it cannot be created
+        final List<IndexPagePreparer.PreparedPage> prepared = new ArrayList<>();
+        BlobStore.StoredBlob cover;
+        Manifest manifest;
+        String manifestError;
+        boolean imported;
+
+        Folder(String name) {
+            this.name = name;
+        }
+
+        void readManifest(byte[] json) {
+            if (json.length > MAX_MANIFEST_BYTES) {
+                manifestError = MANIFEST + " is larger than " + MAX_MANIFEST_BYTES + " bytes";
+                return;
+            }
+            try {
+                manifest = objectMapper.readValue(json, Manifest.class);
+            } catch (JsonProcessingException e) {
+                manifestError = "Invalid " + MANIFEST + ": " + e.getOriginalMessage();
+            } catch (IOException e) {
+                manifestError = "Unreadable " + MANIFEST + ": " + e.getMessage();
+            }
+        }
+
+        String defaultCoverName() {
+            for (String candidate : List.of("cover.jpg", "cover.jpeg", "cover.png")) {
+                if (files.containsKey(candidate)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        void deleteTempFiles() {
+            for (ArchivedFile file : files.values()) {
+                try {
+                    Files.deleteIfExists(file.file());
+                } catch (IOException e) {
+                    Log.warnf(e, "Failed to delete temp file %s", file.file());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.entity.CookbookIndexPage;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds index pages that show the same page as another one, e.g. a page photographed twice at
+ * a slightly different angle, by comparing perceptual hashes. Within a cookbook, a page is
+ * flagged as a duplicate of the first earlier page at most {@code index-pages.near-duplicate.max-distance}
+ * bits away, and OCR skips it. Across the library, the hashes of all pages are kept in a
+ * {@link BkTree}, loaded at startup, so similar pages of other cookbooks are found without
+ * comparing against every page.
+ * <p>
+ * Pages are usually hashed when uploaded; pages without a hash, such as pages imported before
+ * hashing existed, are hashed the first time their cookbook is checked.
+ */
+@ApplicationScoped
+public class NearDuplicateDetector {
+
+    // Enough resolution for the hash to average pixels rather than sample them
+    private static final int HASH_SOURCE_WIDTH = 256;
+
+    /**
+     * A page of another cookbook that looks like a page of this one.
+     */
+    public record SimilarPage(UUID cookbookId, UUID pageId, int pageOrder, int distance) {
+    }
+
+    /**
+     * A page with its near-duplicate in the same cookbook, if flagged, and similar pages of
+     * other cookbooks.
+     */
+    public record PageMatches(UUID pageId, int pageOrder, UUID duplicateOfPageId, List<SimilarPage> similarPages) {
+    }
+
+    private record IndexedPage(UUID pageId, UUID cookbookId) {
+    }
+
+    @Inject
+    Blobs blobs;
+
+    @ConfigProperty(name = "index-pages.near-duplicate.max-distance", defaultValue = "10")
+    int maxDistance;
+
+    private final BkTree<IndexedPage> tree = new BkTree<>();
+    private final Set<UUID> indexed = ConcurrentHashMap.newKeySet();
+
+    void onStart(@Observes StartupEvent event) {
+        List<CookbookIndexPage.HashedPage> pages = QuarkusTransaction.requiringNew()
+                .call(CookbookIndexPage::findHashedPages);
+        pages.forEach(page -> index(page.id(), page.cookbookId(), page.perceptualHash()));
+        Log.infof("Indexed the perceptual hashes of %d index pages", pages.size());
+    }
+
+    /**
+     * Adds a page to the library-wide index. Adding a page again has no effect.
+     */
+    public void index(UUID pageId, UUID cookbookId, long perceptualHash) {
+        if (indexed.add(pageId)) {
+            tree.add(perceptualHash, new IndexedPage(pageId, cookbookId));
+        }
+    }
+
+    /**
+     * Hashes the pages of a cookbook that have no hash yet, then flags each page that looks like
+     * an earlier page of the cookbook, unless the user dismissed it. Flags that no longer hold,
+     * e.g. because the earlier page was deleted, are cleared.
+     *
+     * @return the ids of the pages flagged as near-duplicates
+     */
+    public Set<UUID> flag(UUID cookbookId) {
+        List<CookbookIndexPage.HashRef> pages = QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findHashRefsByCookbookIdOrdered(cookbookId));
+
+        Map<UUID, Long> hashes = new HashMap<>();
+        for (CookbookIndexPage.HashRef page : pages) {
+            Long hash = page.perceptualHash() != null ? page.perceptualHash() : hash(page);
+            if (hash != null) {
+                hashes.put(page.id(), hash);
+                index(page.id(), cookbookId, hash);
+            }
+        }
+
+        // Pages that are not duplicates themselves, in page order, so duplicates point at the first copy
+        Map<UUID, Long> originals = new LinkedHashMap<>();
+        Map<UUID, UUID> changed = new HashMap<>();
+        Set<UUID> flagged = new LinkedHashSet<>();
+        for (CookbookIndexPage.HashRef page : pages) {
+            Long hash = hashes.get(page.id());
+            UUID duplicateOf = null;
+            if (hash != null && !page.duplicateDismissed()) {
+                duplicateOf = originals.entrySet().stream()
+                        .filter(original -> PerceptualHash.distance(original.getValue(), hash) <= maxDistance)
+                        .map(Map.Entry::getKey)
+                        .findFirst()
+                        .orElse(null);
+            }
+            if (duplicateOf != null) {
+                flagged.add(page.id());
+            } else if (hash != null) {
+                originals.put(page.id(), hash);
+            }
+            if (!Objects.equals(duplicateOf, page.duplicateOfPageId())) {
+                changed.put(page.id(), duplicateOf);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            QuarkusTransaction.requiringNew().run(() ->
+                    changed.forEach(CookbookIndexPage::updateDuplicateOf));
+        }
+        if (!flagged.isEmpty()) {
+            Log.infof("Flagged %d of %d index pages of cookbook %s as near-duplicates", flagged.size(), pages.size(), cookbookId);
+        }
+        return flagged;
+    }
+
+    /**
+     * Flags the near-duplicates of a cookbook and finds similar pages in other cookbooks.
+     *
+     * @return the pages that have a near-duplicate or similar pages, in page order
+     */
+    public List<PageMatches> matches(UUID cookbookId) {
+        flag(cookbookId);
+        List<CookbookIndexPage.HashRef> pages = QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findHashRefsByCookbookIdOrdered(cookbookId));
+
+        Map<UUID, List<BkTree.Match<IndexedPage>>> candidates = new HashMap<>();
+        Set<UUID> candidateIds = new LinkedHashSet<>();
+        for (CookbookIndexPage.HashRef page : pages) {
+            if (page.perceptualHash() == null) {
+                continue;
+            }
+            List<BkTree.Match<IndexedPage>> found = tree.search(page.perceptualHash(), maxDistance).stream()
+                    .filter(match -> !match.value().cookbookId().equals(cookbookId))
+                    .toList();
+            candidates.put(page.id(), found);
+            found.forEach(match -> candidateIds.add(match.value().pageId()));
+        }
+
+        // The index is never pruned: only keep pages that still exist
+        Map<UUID, CookbookIndexPage.PageLocation> locations = new HashMap<>();
+        if (!candidateIds.isEmpty()) {
+            QuarkusTransaction.requiringNew().call(() -> CookbookIndexPage.findLocationsByIds(List.copyOf(candidateIds)))
+                    .forEach(location -> locations.put(location.id(), location));
+        }
+
+        List<PageMatches> matches = new ArrayList<>();
+        for (CookbookIndexPage.HashRef page : pages) {
+            List<SimilarPage> similar = candidates.getOrDefault(page.id(), List.of()).stream()
+                    .filter(match -> locations.containsKey(match.value().pageId()))
+                    .map(match -> {
+                        CookbookIndexPage.PageLocation location = locations.get(match.value().pageId());
+                        return new SimilarPage(location.cookbookId(), location.id(), location.pageOrder(), match.distance());
+                    })
+                    .sorted((a, b) -> Integer.compare(a.distance(), b.distance()))
+                    .toList();
+            if (page.duplicateOfPageId() != null || !similar.isEmpty()) {
+                matches.add(new PageMatches(page.id(), page.pageOrder(), page.duplicateOfPageId(), similar));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Computes and stores the hash of a page that has none.
+     *
+     * @return the hash, or null if the image cannot be decoded
+     */
+    private Long hash(CookbookIndexPage.HashRef page) {
+        try {
+            BufferedImage image = blobs.read(page.imageKey(), (in, size) -> Images.decodeSubsampled(in, HASH_SOURCE_WIDTH));
+            if (image == null) {
+                return null;
+            }
+            long hash = PerceptualHash.dHash(image);
+            QuarkusTransaction.requiringNew().run(() -> CookbookIndexPage.updatePerceptualHash(page.id(), hash));
+            return hash;
+        } catch (IOException | RuntimeException e) {
+            Log.warnf(e, "Failed to compute the perceptual hash of index page %s", page.id());
+            return null;
+        }
+    }
+}
@@ -8,6 +8,12 @@ import org.ldclrcq.dto.OcrResult;
 @RegisterAiService
 public interface OcrAiService {
 
+    /**
+     * Version of the extraction prompt below. Bump it whenever the prompt changes so that
+     * archived raw responses can be told apart.
+     */
+    String PROMPT_VERSION = "1";
+
     @UserMessage("You are an OCR and information extraction assistant. " +
             "You will be given a single cookbook index page as an embedded base64 image data URL. " +
             "Extract a list of recipes with their ingredient keyword and page number. " +
@@ -0,0 +1,148 @@
+package org.ldclrcq.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.arc.Arc;
+import io.quarkus.arc.ManagedContext;
+import io.quarkus.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * One stage of the OCR pipeline: a fixed number of workers take page work items from a
+ * bounded input queue, apply the stage action and hand them to the next stage's queue.
+ * Items that already failed upstream are passed through untouched, so every page reaches
+ * the persist stage exactly once, unless the pipeline is {@linkplain #cancel() cancelled}.
+ */
+final class OcrPipelineStage<W extends OcrPipelineStage.Work> {
+
+    /**
+     * A unit of work flowing through the pipeline.
+     */
+    interface Work {
+        Exception error();
+
+        void fail(Exception error);
+    }
+
+    interface Action<W> {
+        void apply(W work) throws Exception;
+    }
+
+    private static final long POLL_MILLIS = 50;
+
+    private final String name;
+    private final BlockingQueue<W> input;
+    private final BlockingQueue<W> output;
+    private final Action<W> action;
+    private final Timer timer;
+    private final Counter processed;
+    private final AtomicInteger runningWorkers = new AtomicInteger();
+    private final List<Future<?>> futures = new CopyOnWriteArrayList<>();
+    private volatile boolean done;
+    private volatile boolean cancelled;
+
+    OcrPipelineStage(String name, BlockingQueue<W> input, BlockingQueue<W> output, Action<W> action,
+                     Timer timer, Counter processed) {
+        this.name = name;
+        this.input = input;
+        this.output = output;
+        this.action = action;
+        this.timer = timer;
+        this.processed = processed;
+    }
+
+    /**
+     * Starts {@code workers} workers on the given executor. The stage completes once
+     * {@code upstreamDone} reports true and the input queue has been drained.
+     */
+    void start(ExecutorService executor, int workers, BooleanSupplier upstreamDone) {
+        runningWorkers.set(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(() -> work(upstreamDone)));
+        }
+    }
+
+    boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Stops the workers, e.g. when the downstream consumer failed and will no longer drain the
+     * output queue. Workers blocked on a full output queue give up, and items left in the
+     * queues of the stage are failed so they release their resources.
+     */
+    void cancel() {
+        cancelled = true;
+        futures.forEach(future -> future.cancel(true));
+    }
+
+    private void work(BooleanSupplier upstreamDone) {
+        // Stage actions may use request scoped beans such as OcrAiService
+        ManagedContext requestContext = Arc.container().requestContext();
+        requestContext.activate();
+        // The item this worker holds, i.e. taken from the input but not yet handed to the output
+        W work = null;
+        try {
+            while (!cancelled) {
+                work = input.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (work == null) {
+                    if (upstreamDone.getAsBoolean() && input.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                if (work.error() == null) {
+                    long start = System.nanoTime();
+                    try {
+                        action.apply(work);
+                    } catch (Exception e) {
+                        work.fail(e);
+                    } finally {
+                        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                }
+                processed.increment();
+                while (!output.offer(work, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        return;
+                    }
+                }
+                work = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!cancelled) {
+                Log.warnf("OCR pipeline stage %s interrupted", name);
+            }
+        } finally {
+            requestContext.terminate();
+            if (cancelled) {
+                if (work != null) {
+                    work.fail(new CancellationException("OCR pipeline cancelled"));
+                }
+                // Whichever of a queue's producer and consumer stops last leaves it empty
+                discard(input);
+                discard(output);
+            }
+            if (runningWorkers.decrementAndGet() == 0) {
+                done = true;
+            }
+        }
+    }
+
+    private static <W extends Work> void discard(BlockingQueue<W> queue) {
+        List<W> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(work -> work.fail(new CancellationException("OCR pipeline cancelled")));
+    }
+}
@@ -0,0 +1,49 @@
+package org.ldclrcq.service;
+
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.listener.ChatModelResponseContext;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Captures the raw chat model response of the current thread so it can be archived
+ * next to the parsed OCR result. The listener is invoked synchronously by the chat
+ * model, on the same thread that called {@link OcrAiService#extract}.
+ */
+@ApplicationScoped
+public class OcrResponseCapture implements ChatModelListener {
+
+    public record CapturedResponse(String text, String modelName, String finishReason) {}
+
+    private static final ThreadLocal<CapturedResponse> LAST_RESPONSE = new ThreadLocal<>();
+
+    @Override
+    public void onResponse(ChatModelResponseContext context) {
+        ChatResponse response = context.chatResponse();
+        if (response == null || response.aiMessage() == null) {
+            return;
+        }
+        LAST_RESPONSE.set(new CapturedResponse(
+                response.aiMessage().text(),
+                response.modelName(),
+                response.finishReason() != null ? response.finishReason().name() : null
+        ));
+    }
+
+    /**
+     * Clears any response captured earlier on this thread. Call before each extraction.
+     */
+    public void reset() {
+        LAST_RESPONSE.remove();
+    }
+
+    /**
+     * Returns and clears the response captured on this thread, or null if none was captured
+     * (e.g. when the AI service is mocked).
+     */
+    public CapturedResponse take() {
+        CapturedResponse response = LAST_RESPONSE.get();
+        LAST_RESPONSE.remove();
+        return response;
+    }
+}
@@ -0,0 +1,224 @@
+package org.ldclrcq.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.logging.Log;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.ldclrcq.dto.OcrResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lenient parser for raw extraction responses. Repairs the usual model output defects
+ * (markdown fences and surrounding prose, then trailing commas) and, when the output is truncated,
+ * salvages every complete element of the {@code recipes} array.
+ */
+@ApplicationScoped
+public class OcrResponseParser {
+
+    public record ParsedResponse(OcrResult result, boolean repaired, int salvagedCount, boolean partial) {}
+
+    private final ObjectMapper objectMapper;
+    private final Counter strictParses;
+    private final Counter repairedParses;
+    private final Counter salvagedRecipes;
+    private final Counter partialParses;
+    private final Counter failedParses;
+
+    @Inject
+    public OcrResponseParser(ObjectMapper objectMapper, MeterRegistry registry) {
+        this.objectMapper = objectMapper;
+        this.strictParses = registry.counter("ocr.response.parse", "outcome", "strict");
+        this.repairedParses = registry.counter("ocr.response.parse", "outcome", "repaired");
+        this.partialParses = registry.counter("ocr.response.parse", "outcome", "partial");
+        this.failedParses = registry.counter("ocr.response.parse", "outcome", "failed");
+        this.salvagedRecipes = registry.counter("ocr.response.salvaged.recipes");
+    }
+
+    /**
+     * Parses a raw extraction response.
+     *
+     * @throws IllegalArgumentException if nothing could be recovered from the response
+     */
+    public ParsedResponse parse(String text) {
+        if (text == null || text.isBlank()) {
+            failedParses.increment();
+            throw new IllegalArgumentException("Empty extraction response");
+        }
+
+        try {
+            OcrResult result = read(text);
+            strictParses.increment();
+            return new ParsedResponse(result, false, 0, false);
+        } catch (JsonProcessingException ignored) {
+            // fall through to repair
+        }
+
+        String repaired = stripProse(text);
+        try {
+            return repaired(read(repaired));
+        } catch (JsonProcessingException ignored) {
+            // fall through to dropping trailing commas
+        }
+        repaired = dropTrailingCommas(repaired);
+        try {
+            return repaired(read(repaired));
+        } catch (JsonProcessingException ignored) {
+            // fall through to salvage
+        }
+
+        Salvage salvage = salvage(repaired);
+        if (salvage.recipes().isEmpty()) {
+            failedParses.increment();
+            throw new IllegalArgumentException("Could not parse or salvage extraction response");
+        }
+        int count = salvage.recipes().size();
+        salvagedRecipes.increment(count);
+        if (salvage.complete()) {
+            repairedParses.increment();
+        } else {
+            partialParses.increment();
+        }
+        Log.infof("Salvaged %d recipes from a malformed or truncated extraction response", count);
+        return new ParsedResponse(new OcrResult(salvage.recipes()), true, count, !salvage.complete());
+    }
+
+    private ParsedResponse repaired(OcrResult result) {
+        repairedParses.increment();
+        Log.debugf("Repaired extraction response into %d recipes", result.recipes().size());
+        return new ParsedResponse(result, true, 0, false);
+    }
+
+    private OcrResult read(String json) throws JsonProcessingException {
+        OcrResult result = objectMapper.readValue(json, OcrResult.class);
+        return result.recipes() != null ? result : new OcrResult(List.of());
+    }
+
+    /**
+     * Strips markdown fences and surrounding prose.
+     */
+    String stripProse(String text) {
+        String json = text.strip();
+        if (json.startsWith("```")) {
+            int firstNewline = json.indexOf('\n');
+            json = firstNewline >= 0 ? json.substring(firstNewline + 1) : json.substring(3);
+            int closingFence = json.lastIndexOf("```");
+            if (closingFence >= 0) {
+                json = json.substring(0, closingFence);
+            }
+        }
+        int start = json.indexOf('{');
+        int end = json.lastIndexOf('}');
+        if (start >= 0) {
+            json = end > start ? json.substring(start, end + 1) : json.substring(start);
+        }
+        return json;
+    }
+
+    /**
+     * Drops commas followed by the end of an object or array. Text in strings is left as is,
+     * so a recipe name such as "Salad, ]" is not rewritten.
+     */
+    String dropTrailingCommas(String json) {
+        StringBuilder out = new StringBuilder(json.length());
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == ',') {
+                int next = i + 1;
+                while (next < json.length() && Character.isWhitespace(json.charAt(next))) {
+                    next++;
+                }
+                if (next < json.length() && (json.charAt(next) == '}' || json.charAt(next) == ']')) {
+                    continue;
+                }
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    // Salvaged recipes; complete is false when the array was truncated or some elements were dropped
+    record Salvage(List<OcrResult.ExtractedRecipe> recipes, boolean complete) {}
+
+    /**
+     * Extracts every complete top-level object of the {@code recipes} array, ignoring an
+     * unterminated last element and elements that fail to parse.
+     */
+    Salvage salvage(String json) {
+        List<OcrResult.ExtractedRecipe> recipes = new ArrayList<>();
+        int key = json.indexOf("\"recipes\"");
+        if (key < 0) {
+            return new Salvage(recipes, false);
+        }
+        int arrayStart = json.indexOf('[', key);
+        if (arrayStart < 0) {
+            return new Salvage(recipes, false);
+        }
+
+        int depth = 0;
+        int objectStart = -1;
+        int elements = 0;
+        boolean closed = false;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = arrayStart + 1; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                if (depth == 0) {
+                    objectStart = i;
+                }
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0 && objectStart >= 0) {
+                    elements++;
+                    readRecipe(json.substring(objectStart, i + 1), recipes);
+                    objectStart = -1;
+                }
+            } else if (c == ']' && depth == 0) {
+                closed = true;
+                break;
+            }
+        }
+        return new Salvage(recipes, closed && recipes.size() == elements);
+    }
+
+    private void readRecipe(String element, List<OcrResult.ExtractedRecipe> recipes) {
+        try {
+            OcrResult.ExtractedRecipe recipe = objectMapper.readValue(element, OcrResult.ExtractedRecipe.class);
+            if (recipe.recipeName() != null && recipe.ingredient() != null) {
+                recipes.add(recipe);
+            }
+        } catch (JsonProcessingException e) {
+            Log.debugf("Skipping unparseable recipe element: %s", e.getOriginalMessage());
+        }
+    }
+}
@@ -6,32 +6,125 @@ import io.quarkus.arc.ManagedContext;
 import io.quarkus.logging.Log;
 import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.virtual.threads.VirtualThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.ldclrcq.dto.OcrProgressResponse;
 import org.ldclrcq.dto.OcrResult;
 import org.ldclrcq.dto.OcrResultDto;
 import org.ldclrcq.dto.PageError;
 import org.ldclrcq.entity.Cookbook;
 import org.ldclrcq.entity.CookbookIndexPage;
+import org.ldclrcq.entity.OcrRawResponse;
 import org.ldclrcq.entity.OcrResultEntity;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 @ApplicationScoped
 public class OcrService {
 
+    private static final String STAGE_LOAD = "load";
+    private static final String STAGE_ENCODE = "encode";
+    private static final String STAGE_EXTRACT = "extract";
+    private static final String STAGE_PERSIST = "persist";
+    private static final List<String> STAGES = List.of(STAGE_LOAD, STAGE_ENCODE, STAGE_EXTRACT, STAGE_PERSIST);
+    private static final long PERSIST_POLL_MILLIS = 200;
+
     @Inject
     OcrAiService aiService;
 
+    @Inject
+    OcrResponseCapture responseCapture;
+
+    @Inject
+    OcrResponseParser responseParser;
+
     @Inject
     @VirtualThreads
     ExecutorService virtualThreadExecutor;
 
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    ImageBufferPool bufferPool;
+
+    @Inject
+    Blobs blobs;
+
+    @Inject
+    IndexTextParser textParser;
+
+    @Inject
+    NearDuplicateDetector nearDuplicateDetector;
+
+    @ConfigProperty(name = "ocr.skip-near-duplicates", defaultValue = "true")
+    boolean skipNearDuplicates;
+
+    @ConfigProperty(name = "ocr.pipeline.load.concurrency", defaultValue = "2")
+    int loadConcurrency;
+
+    @ConfigProperty(name = "ocr.pipeline.encode.concurrency", defaultValue = "2")
+    int encodeConcurrency;
+
+    @ConfigProperty(name = "ocr.pipeline.extract.concurrency", defaultValue = "4")
+    int extractConcurrency;
+
+    @ConfigProperty(name = "ocr.pipeline.queue-capacity", defaultValue = "4")
+    int queueCapacity;
+
+    @ConfigProperty(name = "ocr.pipeline.persist.batch-size", defaultValue = "200")
+    int persistBatchSize;
+
+    // Bounds the CPU bound encode work across all running jobs, whatever the number of encode workers
+    private Semaphore encodePermits;
+
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> stageProcessed = new ConcurrentHashMap<>();
+    private final Map<String, Set<BlockingQueue<PageWork>>> activeQueues = new ConcurrentHashMap<>();
+    private Counter textLayerParsed;
+    private Counter textLayerFallbacks;
+    private Counter nearDuplicatesSkipped;
+
+    @PostConstruct
+    void init() {
+        encodePermits = new Semaphore(encodeConcurrency);
+        textLayerParsed = registry.counter("ocr.text-layer.pages", "outcome", "parsed");
+        textLayerFallbacks = registry.counter("ocr.text-layer.pages", "outcome", "fallback");
+        nearDuplicatesSkipped = registry.counter("ocr.near-duplicate.pages.skipped");
+        for (String stage : STAGES) {
+            Tags tags = Tags.of("stage", stage);
+            stageTimers.put(stage, registry.timer("ocr.pipeline.stage.duration", tags));
+            stageProcessed.put(stage, registry.counter("ocr.pipeline.stage.processed", tags));
+            Set<BlockingQueue<PageWork>> queues = ConcurrentHashMap.newKeySet();
+            activeQueues.put(stage, queues);
+            registry.gauge("ocr.pipeline.queue.depth", tags, queues,
+                    q -> q.stream().mapToInt(BlockingQueue::size).sum());
+        }
+    }
+
     /**
      * Starts async OCR processing for a cookbook.
      * Updates cookbook status and persists results to the database.
@@ -39,80 +132,133 @@ public class OcrService {
     public void startAsyncProcessing(UUID cookbookId) {
         Log.infof("Starting async OCR processing for cookbook %s", cookbookId);
 
-        virtualThreadExecutor.submit(() -> {
-            // Activate request context for async execution (needed for RequestScoped beans like OcrAiService)
-            ManagedContext requestContext = Arc.container().requestContext();
-            requestContext.activate();
-            try {
-                processAndPersist(cookbookId);
-            } catch (Exception e) {
-                Log.errorf(e, "Unexpected error in async OCR processing for cookbook %s", cookbookId);
-                QuarkusTransaction.requiringNew().run(() -> {
-                    Cookbook.updateOcrStatus(cookbookId, Cookbook.OcrStatus.FAILED, e.getMessage());
-                });
-            } finally {
-                requestContext.terminate();
-            }
-        });
+        virtualThreadExecutor.submit(() -> process(cookbookId));
     }
 
-    // Helper record to hold page data outside transaction
-    private record PageData(UUID id, int pageOrder, byte[] imageData, String contentType) {}
+    /**
+     * Runs OCR processing for a cookbook already claimed for processing, on the calling thread.
+     * Failures are recorded on the cookbook rather than thrown.
+     */
+    public void process(UUID cookbookId) {
+        // Activate request context for async execution (needed for RequestScoped beans like OcrAiService)
+        ManagedContext requestContext = Arc.container().requestContext();
+        requestContext.activate();
+        try {
+            processAndPersist(cookbookId);
+        } catch (Exception e) {
+            Log.errorf(e, "Unexpected error in async OCR processing for cookbook %s", cookbookId);
+            QuarkusTransaction.requiringNew().run(() -> {
+                Cookbook.updateOcrStatus(cookbookId, Cookbook.OcrStatus.FAILED, e.getMessage());
+            });
+        } finally {
+            requestContext.terminate();
+        }
+    }
+
+    /**
+     * Work item for one index page, carried through the pipeline stages.
+     */
+    private static final class PageWork implements OcrPipelineStage.Work {
+        final UUID pageId;
+        final int pageOrder;
+        final String imageKey;
+        final String contentType;
+        final String textLayer;
+        ImageBufferPool.Lease<ByteBuffer> imageBuffer;
+        Image image;
+        Extraction extraction;
+        Exception error;
+
+        PageWork(UUID pageId, int pageOrder, String imageKey, String contentType, String textLayer) {
+            this.pageId = pageId;
+            this.pageOrder = pageOrder;
+            this.imageKey = imageKey;
+            this.contentType = contentType;
+            this.textLayer = textLayer;
+        }
+
+        @Override
+        public Exception error() {
+            return error;
+        }
 
+        @Override
+        public void fail(Exception error) {
+            this.error = error;
+            // Release the image as soon as the page is known to have failed
+            releaseImageBuffer();
+            this.image = null;
+        }
+
+        void releaseImageBuffer() {
+            if (imageBuffer != null) {
+                imageBuffer.close();
+                imageBuffer = null;
+            }
+        }
+    }
+
+    /**
+     * Runs the OCR pipeline for a cookbook. Pages flow through four stages connected by bounded
+     * queues, each with its own parallelism: load (DB), encode (CPU, bounded by permits shared
+     * by all jobs), extract (AI call, virtual threads) and persist (single writer, batched across pages).
+     * Pages whose text layer can be parsed are extracted by the load stage and skip the model.
+     * Pages flagged as near-duplicates of an earlier page are not extracted at all, and recipes
+     * found on several pages are only stored once.
+     */
     private void processAndPersist(UUID cookbookId) {
-        // Get pages and their image data in a transaction
-        List<PageData> pageDataList = QuarkusTransaction.requiringNew().call(() -> {
-            List<CookbookIndexPage> pages = CookbookIndexPage.findByCookbookIdOrdered(cookbookId);
-            // Eagerly fetch image data while in transaction
-            return pages.stream()
-                    .map(p -> new PageData(p.id, p.pageOrder, p.imageData, p.contentType))
-                    .toList();
-        });
+        Set<UUID> nearDuplicates = skipNearDuplicates ? nearDuplicateDetector.flag(cookbookId) : Set.of();
+
+        // Only fetch page metadata here: image data is loaded page by page by the load stage
+        List<PageWork> pages = QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findRefsByCookbookIdOrdered(cookbookId).stream()
+                        .filter(p -> !nearDuplicates.contains(p.id()))
+                        .map(p -> new PageWork(p.id(), p.pageOrder(), p.imageKey(), p.contentType(), p.textLayer()))
+                        .toList());
+        if (!nearDuplicates.isEmpty()) {
+            nearDuplicatesSkipped.increment(nearDuplicates.size());
+            Log.infof("Skipping %d near-duplicate index pages of cookbook %s", nearDuplicates.size(), cookbookId);
+        }
 
-        if (pageDataList.isEmpty()) {
+        if (pages.isEmpty()) {
             QuarkusTransaction.requiringNew().run(() -> {
                 Cookbook.updateOcrStatus(cookbookId, Cookbook.OcrStatus.FAILED, "No index pages found for cookbook");
             });
             return;
         }
 
-        // Clear any existing OCR results
+        // Clear any existing OCR results and archived responses
         QuarkusTransaction.requiringNew().run(() -> {
             OcrResultEntity.deleteByCookbookId(cookbookId);
+            OcrRawResponse.deleteByCookbookId(cookbookId);
         });
 
-        int totalPages = pageDataList.size();
-        List<PageError> failedPages = new ArrayList<>();
+        BlockingQueue<PageWork> toLoad = new LinkedBlockingQueue<>(pages);
+        activeQueues.get(STAGE_LOAD).add(toLoad);
+        BlockingQueue<PageWork> toEncode = trackedQueue(STAGE_ENCODE);
+        BlockingQueue<PageWork> toExtract = trackedQueue(STAGE_EXTRACT);
+        BlockingQueue<PageWork> toPersist = trackedQueue(STAGE_PERSIST);
 
-        for (PageData pageData : pageDataList) {
-            try {
-                // Process page (AI call - outside transaction)
-                OcrResult result = extractRecipesFromData(pageData.imageData, pageData.contentType);
-
-                // Persist results in a new transaction
-                QuarkusTransaction.requiringNew().run(() -> {
-                    for (OcrResult.ExtractedRecipe recipe : result.recipes()) {
-                        OcrResultEntity entity = OcrResultEntity.create(
-                                cookbookId,
-                                recipe.ingredient(),
-                                recipe.recipeName(),
-                                recipe.pageNumber(),
-                                recipe.confidence(),
-                                recipe.needsReview()
-                        );
-                        entity.persist();
-                    }
-                });
+        OcrPipelineStage<PageWork> load = stage(STAGE_LOAD, toLoad, toEncode, this::loadPage);
+        OcrPipelineStage<PageWork> encode = stage(STAGE_ENCODE, toEncode, toExtract, this::encodePage);
+        OcrPipelineStage<PageWork> extract = stage(STAGE_EXTRACT, toExtract, toPersist, this::extractPage);
 
-                Log.infof("Processed page %d of cookbook %s: found %d recipes",
-                        pageData.pageOrder, cookbookId, result.recipes().size());
+        load.start(virtualThreadExecutor, loadConcurrency, () -> true);
+        encode.start(virtualThreadExecutor, encodeConcurrency, load::isDone);
+        extract.start(virtualThreadExecutor, extractConcurrency, encode::isDone);
 
-            } catch (Exception e) {
-                Log.errorf(e, "OCR processing failed for page %d of cookbook %s", pageData.pageOrder, cookbookId);
-                failedPages.add(new PageError(pageData.pageOrder, e.getMessage()));
-            }
+        List<PageError> failedPages = new ArrayList<>();
+        List<Integer> partialPages = new ArrayList<>();
+        try {
+            persistStage(cookbookId, toPersist, extract::isDone, failedPages, partialPages);
+        } finally {
+            // No-op once the pipeline completed; otherwise keeps the stages from blocking on queues nobody drains
+            List.of(load, encode, extract).forEach(OcrPipelineStage::cancel);
+            activeQueues.values().forEach(queues -> queues.removeAll(List.of(toLoad, toEncode, toExtract, toPersist)));
         }
 
+        int totalPages = pages.size();
+
         // Determine final status
         Cookbook.OcrStatus finalStatus;
         String errorMessage = null;
@@ -123,6 +269,12 @@ public class OcrService {
         } else if (!failedPages.isEmpty()) {
             finalStatus = Cookbook.OcrStatus.COMPLETED_WITH_ERRORS;
             errorMessage = String.format("%d of %d pages failed", failedPages.size(), totalPages);
+            if (!partialPages.isEmpty()) {
+                errorMessage += String.format(", %d partially extracted", partialPages.size());
+            }
+        } else if (!partialPages.isEmpty()) {
+            finalStatus = Cookbook.OcrStatus.COMPLETED_WITH_ERRORS;
+            errorMessage = String.format("%d of %d pages partially extracted", partialPages.size(), totalPages);
         } else {
             finalStatus = Cookbook.OcrStatus.COMPLETED;
         }
@@ -137,6 +289,232 @@ public class OcrService {
         Log.infof("OCR processing completed for cookbook %s with status %s", cookbookId, finalStatus);
     }
 
+    private void loadPage(PageWork work) throws IOException {
+        work.extraction = parseTextLayer(work.textLayer);
+        if (work.extraction != null) {
+            return;
+        }
+        // Stream the blob straight into a pooled off-heap buffer instead of a byte[]
+        work.imageBuffer = blobs.read(work.imageKey, bufferPool::readDirect);
+    }
+
+    private void encodePage(PageWork work) throws InterruptedException {
+        if (work.extraction != null) {
+            return;
+        }
+        try {
+            encodePermits.acquire();
+            try {
+                work.image = toImage(bufferPool.toBase64(work.imageBuffer.buffer()), work.contentType);
+            } finally {
+                encodePermits.release();
+            }
+        } finally {
+            work.releaseImageBuffer();
+        }
+    }
+
+    private void extractPage(PageWork work) {
+        if (work.extraction != null) {
+            return;
+        }
+        work.extraction = extract(work.image);
+        work.image = null;
+    }
+
+    /**
+     * Single writer draining the extract stage: results of several pages are written in one
+     * transaction, flushed when the batch is large enough or when the queue runs dry.
+     */
+    private void persistStage(UUID cookbookId, BlockingQueue<PageWork> input, BooleanSupplier upstreamDone,
+                              List<PageError> failedPages, List<Integer> partialPages) {
+        List<PageWork> batch = new ArrayList<>();
+        Set<String> persistedRecipes = new HashSet<>();
+        int batchRows = 0;
+        try {
+            while (true) {
+                PageWork work = input.poll(PERSIST_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (work == null) {
+                    if (!batch.isEmpty()) {
+                        flush(cookbookId, batch, persistedRecipes, failedPages, partialPages);
+                        batchRows = 0;
+                    }
+                    if (upstreamDone.getAsBoolean() && input.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                if (work.error != null) {
+                    Log.errorf(work.error, "OCR processing failed for page %d of cookbook %s", work.pageOrder, cookbookId);
+                    failedPages.add(new PageError(work.pageOrder, work.error.getMessage()));
+                    stageProcessed.get(STAGE_PERSIST).increment();
+                    continue;
+                }
+                batch.add(work);
+                batchRows += work.extraction.result().recipes().size();
+                if (batchRows >= persistBatchSize) {
+                    flush(cookbookId, batch, persistedRecipes, failedPages, partialPages);
+                    batchRows = 0;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("OCR processing interrupted", e);
+        }
+    }
+
+    /**
+     * Writes a batch of pages. {@code persistedRecipes} holds the recipes written so far, and is
+     * only updated once a transaction has committed, so a rolled back page does not hide its
+     * recipes from the retry.
+     */
+    private void flush(UUID cookbookId, List<PageWork> batch, Set<String> persistedRecipes,
+                       List<PageError> failedPages, List<Integer> partialPages) {
+        long start = System.nanoTime();
+        try {
+            Set<String> seen = new HashSet<>(persistedRecipes);
+            QuarkusTransaction.requiringNew().run(() -> batch.forEach(work -> persistPage(cookbookId, work, seen)));
+            persistedRecipes.addAll(seen);
+            batch.forEach(work -> pagePersisted(cookbookId, work, partialPages));
+        } catch (Exception batchError) {
+            // Isolate the failing page by retrying the batch one page per transaction
+            Log.warnf("Batched persist failed for cookbook %s, retrying page by page: %s", cookbookId, batchError.getMessage());
+            for (PageWork work : batch) {
+                try {
+                    Set<String> seen = new HashSet<>(persistedRecipes);
+                    QuarkusTransaction.requiringNew().run(() -> persistPage(cookbookId, work, seen));
+                    persistedRecipes.addAll(seen);
+                    pagePersisted(cookbookId, work, partialPages);
+                } catch (Exception e) {
+                    Log.errorf(e, "OCR processing failed for page %d of cookbook %s", work.pageOrder, cookbookId);
+                    failedPages.add(new PageError(work.pageOrder, e.getMessage()));
+                }
+            }
+        } finally {
+            stageTimers.get(STAGE_PERSIST).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            stageProcessed.get(STAGE_PERSIST).increment(batch.size());
+            batch.clear();
+        }
+    }
+
+    private void persistPage(UUID cookbookId, PageWork work, Set<String> seen) {
+        archiveRawResponse(cookbookId, work.pageId, work.pageOrder, work.extraction);
+        persistResults(cookbookId, work.extraction.result(), seen);
+    }
+
+    private void pagePersisted(UUID cookbookId, PageWork work, List<Integer> partialPages) {
+        if (work.extraction.partial()) {
+            partialPages.add(work.pageOrder);
+        }
+        Log.infof("Processed page %d of cookbook %s: found %d recipes%s",
+                work.pageOrder, cookbookId, work.extraction.result().recipes().size(),
+                work.extraction.partial() ? " (partial)" : "");
+    }
+
+    private OcrPipelineStage<PageWork> stage(String name, BlockingQueue<PageWork> input, BlockingQueue<PageWork> output,
+                                             OcrPipelineStage.Action<PageWork> action) {
+        return new OcrPipelineStage<>(name, input, output, action, stageTimers.get(name), stageProcessed.get(name));
+    }
+
+    private BlockingQueue<PageWork> trackedQueue(String stage) {
+        BlockingQueue<PageWork> queue = new ArrayBlockingQueue<>(queueCapacity);
+        activeQueues.get(stage).add(queue);
+        return queue;
+    }
+
+    /**
+     * Rebuilds the OCR results of a cookbook from its archived raw model responses,
+     * without calling the model again.
+     *
+     * @return the number of OCR results rebuilt, or -1 if no archived response exists
+     */
+    public int reparse(UUID cookbookId) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            List<OcrRawResponse> archived = OcrRawResponse.findByCookbookIdOrdered(cookbookId);
+            if (archived.isEmpty()) {
+                return -1;
+            }
+
+            OcrResultEntity.deleteByCookbookId(cookbookId);
+
+            Set<String> seen = new HashSet<>();
+            int count = 0;
+            for (OcrRawResponse raw : archived) {
+                if (IndexTextParser.MODEL.equals(raw.model)) {
+                    Extraction extraction = parseTextLayer(raw.responseText());
+                    if (extraction == null) {
+                        Log.warnf("Could not re-parse the text layer of page %d of cookbook %s", raw.pageOrder, cookbookId);
+                        continue;
+                    }
+                    count += persistResults(cookbookId, extraction.result(), seen);
+                    continue;
+                }
+                try {
+                    OcrResponseParser.ParsedResponse parsed = responseParser.parse(raw.responseText());
+                    raw.partial = parsed.partial();
+                    raw.salvagedCount = parsed.salvagedCount();
+                    count += persistResults(cookbookId, parsed.result(), seen);
+                } catch (IllegalArgumentException e) {
+                    Log.warnf("Could not re-parse archived response for page %d of cookbook %s: %s",
+                            raw.pageOrder, cookbookId, e.getMessage());
+                }
+            }
+
+            Log.infof("Re-parsed %d archived responses of cookbook %s into %d results", archived.size(), cookbookId, count);
+            return count;
+        });
+    }
+
+    /**
+     * Stores the recipes of one page, except those already in {@code seen}: the same entry read
+     * from two photos of a page, or listed twice on a page, becomes a single result.
+     *
+     * @return the number of results stored
+     */
+    private int persistResults(UUID cookbookId, OcrResult result, Set<String> seen) {
+        int count = 0;
+        for (OcrResult.ExtractedRecipe recipe : result.recipes()) {
+            String key = normalize(recipe.ingredient()) + "|" + normalize(recipe.recipeName()) + "|" + recipe.pageNumber();
+            if (!seen.add(key)) {
+                continue;
+            }
+            OcrResultEntity entity = OcrResultEntity.create(
+                    cookbookId,
+                    recipe.ingredient(),
+                    recipe.recipeName(),
+                    recipe.pageNumber(),
+                    recipe.confidence(),
+                    recipe.needsReview()
+            );
+            entity.persist();
+            count++;
+        }
+        return count;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private void archiveRawResponse(UUID cookbookId, UUID pageId, int pageOrder, Extraction extraction) {
+        OcrResponseCapture.CapturedResponse raw = extraction.raw();
+        if (raw == null || raw.text() == null) {
+            return;
+        }
+        OcrRawResponse.create(
+                cookbookId,
+                pageId,
+                pageOrder,
+                raw.modelName(),
+                extraction.promptVersion(),
+                extraction.latencyMs(),
+                raw.finishReason(),
+                raw.text(),
+                extraction.partial(),
+                extraction.salvagedCount()
+        ).persist();
+    }
+
     /**
      * Synchronous processing - returns results directly.
      * Used for tests and backward compatibility.
@@ -192,19 +570,75 @@ public class OcrService {
         );
     }
 
-    private OcrResult extractRecipes(CookbookIndexPage page) {
-        return extractRecipesFromData(page.imageData, page.contentType);
+    private OcrResult extractRecipes(CookbookIndexPage page) throws IOException {
+        Extraction fromText = parseTextLayer(page.textLayer);
+        if (fromText != null) {
+            return fromText.result();
+        }
+        String base64 = blobs.read(page.imageKey, (in, size) -> {
+            try (ImageBufferPool.Lease<ByteBuffer> buffer = bufferPool.readDirect(in, size)) {
+                return bufferPool.toBase64(buffer.buffer());
+            }
+        });
+        return extract(toImage(base64, page.contentType)).result();
     }
 
-    private OcrResult extractRecipesFromData(byte[] imageData, String contentType) {
-        String base64 = Base64.getEncoder().encodeToString(imageData);
+    // Parsed result of one AI call or text layer, with the raw response it was parsed from (null when not captured)
+    private record Extraction(OcrResult result, OcrResponseCapture.CapturedResponse raw, String promptVersion,
+                              long latencyMs, boolean partial, int salvagedCount) {}
 
-        Image image = Image.builder()
+    /**
+     * Extracts a page from its text layer, or returns null if it has none or the parser
+     * could not make sense of it, in which case the image goes to the model.
+     */
+    private Extraction parseTextLayer(String textLayer) {
+        if (textLayer == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Optional<IndexTextParser.ParsedPage> parsed = textParser.parse(textLayer);
+        if (parsed.isEmpty()) {
+            textLayerFallbacks.increment();
+            return null;
+        }
+        textLayerParsed.increment();
+        long latencyMs = (System.nanoTime() - start) / 1_000_000;
+        OcrResponseCapture.CapturedResponse raw = new OcrResponseCapture.CapturedResponse(textLayer, IndexTextParser.MODEL, null);
+        return new Extraction(parsed.get().result(), raw, IndexTextParser.VERSION, latencyMs, false, 0);
+    }
+
+    private Image toImage(String base64, String contentType) {
+        return Image.builder()
                 .base64Data(base64)
                 .mimeType(contentType)
                 .build();
+    }
 
-        return aiService.extract(image);
+    private Extraction extract(Image image) {
+        responseCapture.reset();
+        long start = System.nanoTime();
+        try {
+            OcrResult result = aiService.extract(image);
+            long latencyMs = (System.nanoTime() - start) / 1_000_000;
+            return new Extraction(result, responseCapture.take(), OcrAiService.PROMPT_VERSION, latencyMs, false, 0);
+        } catch (RuntimeException e) {
+            // The model answered but its output could not be mapped: repair or salvage it ourselves
+            OcrResponseCapture.CapturedResponse raw = responseCapture.take();
+            if (raw == null || raw.text() == null) {
+                throw e;
+            }
+            long latencyMs = (System.nanoTime() - start) / 1_000_000;
+            OcrResponseParser.ParsedResponse parsed;
+            try {
+                parsed = responseParser.parse(raw.text());
+            } catch (IllegalArgumentException parseError) {
+                e.addSuppressed(parseError);
+                throw e;
+            }
+            Log.warnf("Recovered %d recipes from a malformed extraction response (%s)",
+                    parsed.result().recipes().size(), e.getMessage());
+            return new Extraction(parsed.result(), raw, OcrAiService.PROMPT_VERSION, latencyMs, parsed.partial(), parsed.salvagedCount());
+        }
     }
 
     private OcrProgressResponse createFailedResponse(String message) {
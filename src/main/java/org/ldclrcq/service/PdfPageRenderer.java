@@ -0,0 +1,210 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders pages of an uploaded PDF to JPEG images in the blob store, so that scanned books can be
+ * imported without converting them on the client. The text layer of each page is extracted as
+ * well, so that digital indexes can be parsed without the model. Pages are rendered in parallel by at most
+ * {@code pdf-import.concurrency} workers. PDFBox documents are not thread safe, so each worker
+ * opens its own, backed by temp files rather than memory; with one rendered page per worker in
+ * memory at a time, memory use does not depend on the size of the PDF.
+ */
+@ApplicationScoped
+public class PdfPageRenderer {
+
+    public static final String CONTENT_TYPE = "application/pdf";
+
+    /**
+     * A rendered page, with its 1-based number in the PDF, its preview, its perceptual hash and
+     * its text layer (null when the page has no text, as in scanned documents).
+     */
+    public record RenderedPage(int pageNumber, BlobStore.StoredBlob image, BlobStore.StoredBlob preview,
+                               Long perceptualHash, String text) {
+    }
+
+    @Inject
+    Blobs blobs;
+
+    @Inject
+    IndexPagePreparer preparer;
+
+    @ConfigProperty(name = "pdf-import.concurrency", defaultValue = "2")
+    int concurrency;
+
+    @ConfigProperty(name = "pdf-import.max-pages", defaultValue = "50")
+    int maxPages;
+
+    @ConfigProperty(name = "pdf-import.default-dpi", defaultValue = "150")
+    int defaultDpi;
+
+    @ConfigProperty(name = "pdf-import.max-dpi", defaultValue = "300")
+    int maxDpi;
+
+    @ConfigProperty(name = "pdf-import.jpeg-quality", defaultValue = "0.85")
+    float jpegQuality;
+
+    private ExecutorService renderExecutor;
+
+    @PostConstruct
+    void init() {
+        renderExecutor = Executors.newFixedThreadPool(concurrency);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        renderExecutor.shutdownNow();
+    }
+
+    /**
+     * Renders the selected pages of a PDF.
+     *
+     * @param pageSpec pages to render, e.g. {@code "3-5,8"}; all pages when null or blank
+     * @param dpi      rendering resolution; {@code pdf-import.default-dpi} when null
+     * @return the rendered pages in document order
+     * @throws IllegalArgumentException if the PDF, the page selection or the resolution is invalid
+     */
+    public List<RenderedPage> render(Path pdf, String pageSpec, Integer dpi) throws IOException {
+        int resolution = dpi != null ? dpi : defaultDpi;
+        if (resolution < 36 || resolution > maxDpi) {
+            throw new IllegalArgumentException("DPI must be between 36 and " + maxDpi);
+        }
+
+        int pageCount;
+        try (PDDocument document = open(pdf)) {
+            pageCount = document.getNumberOfPages();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid PDF: " + e.getMessage(), e);
+        }
+
+        List<Integer> pages = parsePageRange(pageSpec, pageCount);
+        if (pages.size() > maxPages) {
+            throw new IllegalArgumentException("At most " + maxPages + " pages can be imported at once, "
+                    + pages.size() + " selected");
+        }
+
+        RenderedPage[] rendered = new RenderedPage[pages.size()];
+        int workers = Math.min(concurrency, pages.size());
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int worker = 0; worker < workers; worker++) {
+            int first = worker;
+            futures.add(renderExecutor.submit(() -> {
+                try (PDDocument document = open(pdf)) {
+                    PDFRenderer renderer = new PDFRenderer(document);
+                    PDFTextStripper stripper = new PDFTextStripper();
+                    stripper.setSortByPosition(true);
+                    for (int i = first; i < pages.size(); i += workers) {
+                        int pageNumber = pages.get(i);
+                        BufferedImage image = renderer.renderImageWithDPI(pageNumber - 1, resolution, ImageType.RGB);
+                        byte[] jpeg = Images.encodeJpeg(image, jpegQuality);
+                        BlobStore.StoredBlob preview = preparer.preview(image);
+                        stripper.setStartPage(pageNumber);
+                        stripper.setEndPage(pageNumber);
+                        String text = stripper.getText(document);
+                        rendered[i] = new RenderedPage(pageNumber, blobs.write(new ByteArrayInputStream(jpeg)), preview,
+                                PerceptualHash.dHash(image), text.isBlank() ? null : text);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        // Wait for every worker, even after a failure, so no page is stored after the cleanup
+        Throwable failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failure = failure != null ? failure : e.getCause();
+            } catch (CancellationException e) {
+                failure = failure != null ? failure : e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                failure = failure != null ? failure : e;
+            }
+        }
+        if (failure != null) {
+            discard(rendered);
+            throw new IOException("Failed to render PDF: " + failure.getMessage(), failure);
+        }
+        return List.of(rendered);
+    }
+
+    /**
+     * Parses a page selection such as {@code "1-3,5"} into distinct, sorted 1-based page numbers.
+     */
+    public static List<Integer> parsePageRange(String spec, int pageCount) {
+        TreeSet<Integer> pages = new TreeSet<>();
+        if (spec == null || spec.isBlank()) {
+            for (int page = 1; page <= pageCount; page++) {
+                pages.add(page);
+            }
+            return List.copyOf(pages);
+        }
+
+        for (String part : spec.split(",")) {
+            String range = part.trim();
+            int dash = range.indexOf('-');
+            try {
+                int from = Integer.parseInt((dash < 0 ? range : range.substring(0, dash)).trim());
+                int to = dash < 0 ? from : Integer.parseInt(range.substring(dash + 1).trim());
+                if (from < 1 || to < from || to > pageCount) {
+                    throw new IllegalArgumentException("Invalid page range '" + range + "' for a PDF of " + pageCount + " pages");
+                }
+                for (int page = from; page <= to; page++) {
+                    pages.add(page);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page range '" + range + "'");
+            }
+        }
+        return List.copyOf(pages);
+    }
+
+    private static PDDocument open(Path pdf) throws IOException {
+        return Loader.loadPDF(pdf.toFile(), IOUtils.createTempFileOnlyStreamCache());
+    }
+
+    private void discard(RenderedPage[] rendered) {
+        for (RenderedPage page : rendered) {
+            if (page == null) {
+                continue;
+            }
+            for (BlobStore.StoredBlob blob : new BlobStore.StoredBlob[]{page.image(), page.preview()}) {
+                if (blob == null) {
+                    continue;
+                }
+                try {
+                    blobs.deleteIfUnreferenced(blob.key());
+                } catch (IOException e) {
+                    Log.warnf(e, "Failed to delete rendered page blob %s", blob.key());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.ldclrcq.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * 64-bit difference hash (dHash) of an index page. The page is cropped to its content, reduced
+ * to a grid of 4 by 17 grey levels, and each bit tells whether a cell is brighter than the cell
+ * below it. Photos of the same page taken at a slightly different angle, framing, exposure or
+ * resolution get hashes a few bits apart, while byte hashes would differ entirely.
+ * <p>
+ * The usual dHash compares cells left to right, but index pages share their column layout and
+ * differ mostly in where their lines, headings and gaps fall, so two different pages of a book
+ * would get nearly the same hash. Comparing vertically, over more rows than columns, keeps them
+ * apart.
+ */
+final class PerceptualHash {
+
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 16;
+    // Reduce in halving steps, so that the cells average pixels rather than sample them
+    private static final int WORKING_WIDTH = 256;
+    private static final int CELL_SOURCE_WIDTH = 64;
+    // Pixels darker than this fraction of the mean brightness are content rather than paper
+    private static final double INK_THRESHOLD = 0.75;
+
+    private PerceptualHash() {
+    }
+
+    static long dHash(BufferedImage image) {
+        BufferedImage source = image.getWidth() > WORKING_WIDTH
+                ? Images.scaleToWidth(image, WORKING_WIDTH, false)
+                : image;
+        BufferedImage content = cropToContent(grey(source, source.getWidth(), source.getHeight()));
+        if (content.getWidth() > CELL_SOURCE_WIDTH) {
+            content = Images.scaleToWidth(content, CELL_SOURCE_WIDTH, false);
+        }
+        BufferedImage cells = grey(content, COLUMNS, ROWS + 1);
+
+        Raster pixels = cells.getRaster();
+        long hash = 0;
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLUMNS; x++) {
+                hash <<= 1;
+                if (pixels.getSample(x, y, 0) > pixels.getSample(x, y + 1, 0)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Number of differing bits between two hashes, from 0 (same picture) to 64.
+     */
+    static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Crops to the bounding box of the content, so that margins and framing do not count.
+     */
+    private static BufferedImage cropToContent(BufferedImage grey) {
+        Raster pixels = grey.getRaster();
+        int width = grey.getWidth();
+        int height = grey.getHeight();
+        long total = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                total += pixels.getSample(x, y, 0);
+            }
+        }
+        double ink = INK_THRESHOLD * total / ((long) width * height);
+
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (pixels.getSample(x, y, 0) < ink) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0) {
+            return grey;
+        }
+        return grey.getSubimage(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    private static BufferedImage grey(BufferedImage source, int width, int height) {
+        BufferedImage grey = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = grey.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return grey;
+    }
+}
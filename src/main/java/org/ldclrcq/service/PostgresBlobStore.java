@@ -0,0 +1,115 @@
+package org.ldclrcq.service;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.narayana.jta.QuarkusTransactionException;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.largeobject.LargeObject;
+import org.postgresql.largeobject.LargeObjectManager;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.sql.SQLException;
+import java.util.HexFormat;
+import java.util.concurrent.Callable;
+
+/**
+ * Blob store keeping content in PostgreSQL large objects, streamed through a fixed size buffer.
+ * Large object descriptors are only valid inside a transaction, so each call joins the current
+ * transaction or runs in its own.
+ */
+@ApplicationScoped
+public class PostgresBlobStore implements BlobStore {
+
+    public static final String SCHEME = "pg";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Inject
+    EntityManager entityManager;
+
+    @Override
+    public String scheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public StoredBlob write(InputStream in) throws IOException {
+        return inTransaction(() -> {
+            LargeObjectManager api = api();
+            long oid = api.createLO(LargeObjectManager.READWRITE);
+            LargeObject lo = api.open(oid, LargeObjectManager.WRITE);
+            DigestInputStream digestIn = new DigestInputStream(in, Blobs.sha256());
+            long size;
+            try (OutputStream out = new BufferedOutputStream(lo.getOutputStream(), BUFFER_SIZE)) {
+                size = digestIn.transferTo(out);
+            } finally {
+                lo.close();
+            }
+            return new StoredBlob(SCHEME + ":" + oid, size, HexFormat.of().formatHex(digestIn.getMessageDigest().digest()));
+        });
+    }
+
+    @Override
+    public <T> T read(String key, Reader<T> reader) throws IOException {
+        long oid = oid(key);
+        return inTransaction(() -> {
+            LargeObject lo = api().open(oid, LargeObjectManager.READ);
+            try (InputStream in = lo.getInputStream()) {
+                return reader.read(in, lo.size64());
+            } finally {
+                lo.close();
+            }
+        });
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        long oid = oid(key);
+        inTransaction(() -> {
+            api().delete(oid);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        long oid = oid(key);
+        return inTransaction(() -> (Boolean) entityManager
+                .createNativeQuery("SELECT EXISTS (SELECT 1 FROM pg_largeobject_metadata WHERE oid = :oid)")
+                .setParameter("oid", oid)
+                .getSingleResult());
+    }
+
+    public static long oid(String key) {
+        if (key == null || !key.startsWith(SCHEME + ":")) {
+            throw new IllegalArgumentException("Not a PostgreSQL blob key: " + key);
+        }
+        return Long.parseLong(key.substring(SCHEME.length() + 1));
+    }
+
+    private LargeObjectManager api() {
+        return entityManager.unwrap(Session.class)
+                .doReturningWork(connection -> connection.unwrap(PGConnection.class).getLargeObjectAPI());
+    }
+
+    private static <T> T inTransaction(Callable<T> work) throws IOException {
+        try {
+            return QuarkusTransaction.joiningExisting().call(work);
+        } catch (QuarkusTransactionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof SQLException sql) {
+                throw new IOException("Large object operation failed", sql);
+            }
+            throw e;
+        }
+    }
+}
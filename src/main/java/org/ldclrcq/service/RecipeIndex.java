@@ -0,0 +1,451 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import org.ldclrcq.entity.Ingredient;
+import org.ldclrcq.entity.Recipe;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of what recipes can be filtered on: their ingredients, their cookbook and the
+ * months their ingredients are available in. Recipes are numbered densely, and each ingredient,
+ * cookbook and month keeps a compressed bitmap of recipe numbers, so a filtered search is a few
+ * bitmap intersections and a selection of the first page by name, instead of joins over
+ * recipe_ingredient and ingredient_available_month. Only the recipes of the page are then loaded
+ * from the database. The same bitmaps serve as posting lists to rank recipes by the ingredients
+ * on hand in a pantry.
+ * <p>
+ * The index is built at startup and updated from {@link RecipesChanged} and {@link ImportConfirmed}
+ * events once their transaction is committed. Those events only reach the instance that fired
+ * them, so the index is also rebuilt every {@code recipe-index.rebuild-every} to pick up changes
+ * made by other instances. Searches by name are ranked by the database and never use the index;
+ * all searches use the database while the index is not built.
+ * <p>
+ * Names are sorted with a {@link Collator} for the locale of the database collation, so that
+ * accented names sort among the others as they do in the database.
+ */
+@ApplicationScoped
+public class RecipeIndex {
+
+    // Same order as Recipe.search: names by the collation key of the database collation, with ties
+    // broken like PostgreSQL does by comparing the names themselves, then ids as unsigned bytes
+    private static final Comparator<Indexed> ORDER = Comparator
+            .comparing(Indexed::nameKey, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(indexed -> indexed.ref().name())
+            .thenComparing(indexed -> indexed.ref().id().toString());
+
+    // Same order as Recipe.rankByPantry: largest share of ingredients on hand first
+    private static final Comparator<Scored> RANK = ((Comparator<Scored>) (a, b) -> Long.compare(
+            (long) b.onHand() * a.ingredientCount(), (long) a.onHand() * b.ingredientCount()))
+            .thenComparing(Comparator.comparingInt(Scored::onHand).reversed())
+            .thenComparing(Scored::recipe, ORDER);
+
+    // A recipe with the collation key of its name, or null when the database sorts names as bytes
+    private record Indexed(Recipe.FilterRef ref, CollationKey nameKey) {
+    }
+
+    private record Scored(Indexed recipe, int onHand) {
+
+        int ingredientCount() {
+            return recipe.ref().ingredientIds().size();
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Held while the index is changed, so that changes are read and applied in commit order
+    private final Object updates = new Object();
+
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final List<Indexed> recipes = new ArrayList<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final Map<UUID, RoaringBitmap> byIngredient = new HashMap<>();
+    private final Map<UUID, RoaringBitmap> byCookbook = new HashMap<>();
+    private final RoaringBitmap[] byMonth = new RoaringBitmap[13];
+    private final Map<UUID, Set<Integer>> monthsByIngredient = new HashMap<>();
+
+    private Collator collator;
+    private volatile boolean ready;
+
+    void onStart(@Observes StartupEvent event) {
+        rebuild();
+    }
+
+    @Scheduled(every = "${recipe-index.rebuild-every:10m}", delayed = "${recipe-index.rebuild-every:10m}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void scheduledRebuild() {
+        rebuild();
+    }
+
+    void onRecipesChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) RecipesChanged event) {
+        refresh(event.recipeIds(), event.ingredientIds(), event.cookbookIds());
+    }
+
+    void onImportConfirmed(@Observes(during = TransactionPhase.AFTER_SUCCESS) ImportConfirmed event) {
+        refresh(Set.of(), Set.of(), Set.of(event.cookbookId()));
+    }
+
+    /**
+     * Builds the index again from the database. Searches use the database if it fails.
+     */
+    public void rebuild() {
+        synchronized (updates) {
+            long start = System.nanoTime();
+            try {
+                Collection<Recipe.FilterRef> loaded = QuarkusTransaction.requiringNew().call(Recipe::findAllFilterRefs);
+                Map<UUID, Set<Integer>> months = QuarkusTransaction.requiringNew().call(Ingredient::findAllAvailableMonths);
+                String collation = QuarkusTransaction.requiringNew().call(Recipe::findDatabaseCollation);
+
+                lock.writeLock().lock();
+                try {
+                    clear();
+                    collator = collatorFor(collation);
+                    monthsByIngredient.putAll(months);
+                    loaded.forEach(this::add);
+                    ready = true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                Log.infof("Indexed %d recipes in %d ms", loaded.size(), (System.nanoTime() - start) / 1_000_000);
+            } catch (RuntimeException e) {
+                ready = false;
+                Log.errorf(e, "Failed to build the recipe index, recipes are searched in the database");
+            }
+        }
+    }
+
+    /**
+     * Searches recipes like {@link Recipe#search}, answering filters from the index.
+     */
+    public Recipe.SearchResult search(String nameQuery, Recipe.IngredientFilter ingredients, Boolean availableNow, UUID cookbookId, UUID cursorId, int limit) {
+        if (!ready || (nameQuery != null && !nameQuery.isBlank())) {
+            return Recipe.search(nameQuery, ingredients, availableNow, cookbookId, cursorId, limit);
+        }
+
+        List<Recipe.FilterRef> first;
+        lock.readLock().lock();
+        try {
+            Indexed after = null;
+            if (cursorId != null) {
+                Integer ordinal = ordinals.get(cursorId);
+                if (ordinal == null) {
+                    return new Recipe.SearchResult(List.of(), null, false);
+                }
+                after = recipes.get(ordinal);
+            }
+            first = first(filter(ingredients, availableNow != null && availableNow, cookbookId), after, limit + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        boolean hasMore = first.size() > limit;
+        if (hasMore) {
+            first = first.subList(0, limit);
+        }
+        List<Recipe> page = Recipe.findByIdsOrdered(first.stream().map(Recipe.FilterRef::id).toList());
+        String nextCursor = hasMore ? first.getLast().id().toString() : null;
+        return new Recipe.SearchResult(page, nextCursor, hasMore);
+    }
+
+    /**
+     * Ranks recipes like {@link Recipe#rankByPantry}. The recipes using the pantry are the union
+     * of its ingredients' bitmaps, each counted by how many of those bitmaps hold it, and the first
+     * ones are selected with a bounded heap, so the cost depends on how many recipes use the
+     * pantry, not on the number of recipes.
+     */
+    public Recipe.PantryResult rankByPantry(Set<UUID> pantry, UUID cursorId, int limit) {
+        if (!ready) {
+            return Recipe.rankByPantry(pantry, cursorId, limit);
+        }
+
+        List<Scored> first;
+        lock.readLock().lock();
+        try {
+            List<RoaringBitmap> postings = pantry.stream()
+                    .map(byIngredient::get)
+                    .filter(Objects::nonNull)
+                    .toList();
+
+            Scored after = null;
+            if (cursorId != null) {
+                Integer ordinal = ordinals.get(cursorId);
+                int onHand = ordinal != null ? countOnHand(postings, ordinal) : 0;
+                if (onHand == 0) {
+                    return new Recipe.PantryResult(List.of(), null, false);
+                }
+                after = new Scored(recipes.get(ordinal), onHand);
+            }
+
+            PriorityQueue<Scored> last = new PriorityQueue<>(limit + 1, RANK.reversed());
+            IntIterator matching = FastAggregation.or(postings.iterator()).getIntIterator();
+            while (matching.hasNext()) {
+                int ordinal = matching.next();
+                Scored recipe = new Scored(recipes.get(ordinal), countOnHand(postings, ordinal));
+                if (after != null && RANK.compare(recipe, after) <= 0) {
+                    continue;
+                }
+                if (last.size() <= limit) {
+                    last.add(recipe);
+                } else if (RANK.compare(recipe, last.peek()) < 0) {
+                    last.poll();
+                    last.add(recipe);
+                }
+            }
+            first = new ArrayList<>(last);
+            first.sort(RANK);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        boolean hasMore = first.size() > limit;
+        if (hasMore) {
+            first = first.subList(0, limit);
+        }
+        Map<UUID, Recipe> loaded = new HashMap<>();
+        Recipe.findByIdsOrdered(first.stream().map(scored -> scored.recipe().ref().id()).toList())
+                .forEach(recipe -> loaded.put(recipe.id, recipe));
+        List<Recipe.PantryMatch> matches = first.stream()
+                .filter(scored -> loaded.containsKey(scored.recipe().ref().id()))
+                .map(scored -> new Recipe.PantryMatch(loaded.get(scored.recipe().ref().id()), scored.onHand(), scored.ingredientCount()))
+                .toList();
+        String nextCursor = hasMore ? first.getLast().recipe().ref().id().toString() : null;
+        return new Recipe.PantryResult(matches, nextCursor, hasMore);
+    }
+
+    private static int countOnHand(List<RoaringBitmap> postings, int ordinal) {
+        int onHand = 0;
+        for (RoaringBitmap bitmap : postings) {
+            if (bitmap.contains(ordinal)) {
+                onHand++;
+            }
+        }
+        return onHand;
+    }
+
+    /**
+     * The recipes that match the filters, as in {@link Recipe#search}. Must be called with the
+     * read lock held, and the result must not be changed.
+     */
+    private RoaringBitmap filter(Recipe.IngredientFilter ingredients, boolean availableNow, UUID cookbookId) {
+        int month = LocalDate.now().getMonthValue();
+        RoaringBitmap matches = null;
+
+        if (!ingredients.all().isEmpty()) {
+            if (availableNow && !ingredients.all().stream().allMatch(id -> isAvailable(id, month))) {
+                return new RoaringBitmap();
+            }
+            // Rarest ingredients first: intersections only get smaller, and stop once empty
+            List<RoaringBitmap> required = ingredients.all().stream()
+                    .map(this::recipesUsing)
+                    .sorted(Comparator.comparingLong(RoaringBitmap::getLongCardinality))
+                    .toList();
+            matches = required.getFirst();
+            for (int i = 1; i < required.size() && !matches.isEmpty(); i++) {
+                matches = RoaringBitmap.and(matches, required.get(i));
+            }
+        }
+
+        if (!ingredients.any().isEmpty()) {
+            RoaringBitmap anyOf = FastAggregation.or(ingredients.any().stream()
+                    .filter(id -> !availableNow || isAvailable(id, month))
+                    .map(this::recipesUsing)
+                    .iterator());
+            matches = matches != null ? RoaringBitmap.and(matches, anyOf) : anyOf;
+        }
+
+        if (matches == null) {
+            matches = availableNow ? byMonth[month] : all;
+        }
+
+        if (!ingredients.none().isEmpty() && !matches.isEmpty()) {
+            matches = RoaringBitmap.andNot(matches, FastAggregation.or(ingredients.none().stream()
+                    .map(this::recipesUsing)
+                    .iterator()));
+        }
+
+        if (cookbookId != null) {
+            matches = RoaringBitmap.and(matches, byCookbook.getOrDefault(cookbookId, new RoaringBitmap()));
+        }
+        return matches;
+    }
+
+    private RoaringBitmap recipesUsing(UUID ingredientId) {
+        return byIngredient.getOrDefault(ingredientId, new RoaringBitmap());
+    }
+
+    private boolean isAvailable(UUID ingredientId, int month) {
+        return monthsByIngredient.getOrDefault(ingredientId, Set.of()).contains(month);
+    }
+
+    /**
+     * Selects the first recipes after a given one, in search order, without sorting all matches.
+     */
+    private List<Recipe.FilterRef> first(RoaringBitmap matches, Indexed after, int count) {
+        PriorityQueue<Indexed> last = new PriorityQueue<>(count, ORDER.reversed());
+        IntIterator matching = matches.getIntIterator();
+        while (matching.hasNext()) {
+            Indexed recipe = recipes.get(matching.next());
+            if (after != null && ORDER.compare(recipe, after) <= 0) {
+                continue;
+            }
+            if (last.size() < count) {
+                last.add(recipe);
+            } else if (ORDER.compare(recipe, last.peek()) < 0) {
+                last.poll();
+                last.add(recipe);
+            }
+        }
+        List<Indexed> sorted = new ArrayList<>(last);
+        sorted.sort(ORDER);
+        return sorted.stream().map(Indexed::ref).toList();
+    }
+
+    /**
+     * Reloads the given recipes, the recipes using the given ingredients and the recipes of the
+     * given cookbooks, and the months of the given ingredients. Rebuilds the whole index if that
+     * fails, so that it does not stay out of date.
+     */
+    private void refresh(Set<UUID> recipeIds, Set<UUID> ingredientIds, Set<UUID> cookbookIds) {
+        synchronized (updates) {
+            if (!ready) {
+                return;
+            }
+            try {
+                // Only this thread changes the index, so it can be read without the lock
+                Set<UUID> affected = new HashSet<>(recipeIds);
+                ingredientIds.forEach(id -> addIds(byIngredient.get(id), affected));
+                cookbookIds.forEach(id -> addIds(byCookbook.get(id), affected));
+
+                Collection<Recipe.FilterRef> loaded = QuarkusTransaction.requiringNew().call(() ->
+                        Recipe.findFilterRefs(affected, cookbookIds));
+                Map<UUID, Set<Integer>> months = QuarkusTransaction.requiringNew().call(() ->
+                        Ingredient.findAvailableMonths(ingredientIds));
+
+                lock.writeLock().lock();
+                try {
+                    for (UUID ingredientId : ingredientIds) {
+                        Set<Integer> available = months.get(ingredientId);
+                        if (available != null) {
+                            monthsByIngredient.put(ingredientId, available);
+                        } else {
+                            monthsByIngredient.remove(ingredientId);
+                        }
+                    }
+                    affected.forEach(this::remove);
+                    loaded.forEach(this::add);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (RuntimeException e) {
+                Log.warnf(e, "Failed to update the recipe index, rebuilding it");
+                rebuild();
+            }
+        }
+    }
+
+    private void addIds(RoaringBitmap bitmap, Set<UUID> ids) {
+        if (bitmap != null) {
+            bitmap.forEach((int ordinal) -> ids.add(recipes.get(ordinal).ref().id()));
+        }
+    }
+
+    private void add(Recipe.FilterRef recipe) {
+        Indexed indexed = new Indexed(recipe, collator != null ? collator.getCollationKey(recipe.name()) : null);
+        int ordinal;
+        if (freeOrdinals.isEmpty()) {
+            ordinal = recipes.size();
+            recipes.add(indexed);
+        } else {
+            ordinal = freeOrdinals.pop();
+            recipes.set(ordinal, indexed);
+        }
+        ordinals.put(recipe.id(), ordinal);
+        all.add(ordinal);
+        byCookbook.computeIfAbsent(recipe.cookbookId(), id -> new RoaringBitmap()).add(ordinal);
+        for (UUID ingredientId : recipe.ingredientIds()) {
+            byIngredient.computeIfAbsent(ingredientId, id -> new RoaringBitmap()).add(ordinal);
+            for (int month : monthsByIngredient.getOrDefault(ingredientId, Set.of())) {
+                byMonth[month].add(ordinal);
+            }
+        }
+    }
+
+    private void remove(UUID recipeId) {
+        Integer ordinal = ordinals.remove(recipeId);
+        if (ordinal == null) {
+            return;
+        }
+        Recipe.FilterRef recipe = recipes.set(ordinal, null).ref();
+        all.remove(ordinal);
+        removeFrom(byCookbook, recipe.cookbookId(), ordinal);
+        for (UUID ingredientId : recipe.ingredientIds()) {
+            removeFrom(byIngredient, ingredientId, ordinal);
+        }
+        for (int month = 1; month <= 12; month++) {
+            byMonth[month].remove(ordinal);
+        }
+        freeOrdinals.push(ordinal);
+    }
+
+    private static void removeFrom(Map<UUID, RoaringBitmap> bitmaps, UUID key, int ordinal) {
+        RoaringBitmap bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            bitmap.remove(ordinal);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+
+    /**
+     * A collator sorting like a PostgreSQL collation name such as {@code fr_FR.UTF-8}, or null for
+     * {@code C} and {@code POSIX}, which sort by bytes.
+     */
+    static Collator collatorFor(String collation) {
+        String locale = collation.split("[.@]", 2)[0];
+        if (locale.isEmpty() || locale.equals("C") || locale.equals("POSIX")) {
+            return null;
+        }
+        return Collator.getInstance(Locale.forLanguageTag(locale.replace('_', '-')));
+    }
+
+    private void clear() {
+        ordinals.clear();
+        recipes.clear();
+        freeOrdinals.clear();
+        all.clear();
+        byIngredient.clear();
+        byCookbook.clear();
+        monthsByIngredient.clear();
+        for (int month = 1; month <= 12; month++) {
+            byMonth[month] = new RoaringBitmap();
+        }
+    }
+}
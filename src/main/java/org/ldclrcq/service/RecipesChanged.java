@@ -0,0 +1,24 @@
+package org.ldclrcq.service;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * CDI event fired when recipes, the ingredients they use or the months ingredients are available
+ * change, so that in-memory indexes can catch up once the change is committed. Recipes are
+ * identified directly, through their ingredients, or through their cookbook.
+ */
+public record RecipesChanged(Set<UUID> recipeIds, Set<UUID> ingredientIds, Set<UUID> cookbookIds) {
+
+    public static RecipesChanged ofRecipe(UUID recipeId) {
+        return new RecipesChanged(Set.of(recipeId), Set.of(), Set.of());
+    }
+
+    public static RecipesChanged ofIngredients(Set<UUID> ingredientIds) {
+        return new RecipesChanged(Set.of(), ingredientIds, Set.of());
+    }
+
+    public static RecipesChanged ofCookbook(UUID cookbookId) {
+        return new RecipesChanged(Set.of(), Set.of(), Set.of(cookbookId));
+    }
+}
@@ -0,0 +1,324 @@
+package org.ldclrcq.service;
+
+import io.quarkus.logging.Log;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.ldclrcq.entity.Cookbook;
+import org.ldclrcq.entity.UploadSession;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable uploads of index page files, following the core of the tus protocol: an upload is
+ * created with its total length, then its bytes are appended in chunks at the offset the server
+ * reports. Received bytes are appended to a staging file and flushed to disk before the offset
+ * is advanced in the database, so an interrupted chunk keeps what was received and the client
+ * resumes from there. Once complete, the file is stored in the blob store and becomes one index
+ * page, or one page per PDF page.
+ * <p>
+ * The blob stores are write-once (the file system store is content-addressed), which is why
+ * chunks are staged rather than appended to a blob. Uploads not touched for
+ * {@code uploads.expire-after} are discarded.
+ */
+@ApplicationScoped
+public class ResumableUploadService {
+
+    private static final Set<String> CONTENT_TYPES = Set.of("image/jpeg", "image/png", PdfPageRenderer.CONTENT_TYPE);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CLEANUP_BATCH_SIZE = 200;
+
+    public record UploadStatus(UUID id, long offset, long length, Integer pageCount) {
+        public boolean completed() {
+            return pageCount != null;
+        }
+    }
+
+    /**
+     * Thrown when a chunk does not start at the current offset, or while another chunk of the
+     * same upload is being received.
+     */
+    public static class OffsetConflictException extends RuntimeException {
+        public OffsetConflictException(String message) {
+            super(message);
+        }
+    }
+
+    @Inject
+    PdfPageRenderer pdfRenderer;
+
+    @Inject
+    IndexPagePreparer preparer;
+
+    @ConfigProperty(name = "uploads.staging-dir", defaultValue = "data/uploads")
+    Path stagingDir;
+
+    @ConfigProperty(name = "uploads.max-length", defaultValue = "104857600")
+    long maxLength;
+
+    @ConfigProperty(name = "uploads.expire-after", defaultValue = "24h")
+    Duration expireAfter;
+
+    // Uploads currently receiving a chunk: the staging file has a single writer
+    private final Set<UUID> receiving = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates an upload.
+     *
+     * @param metadata tus {@code Upload-Metadata}: comma-separated keys with base64 values;
+     *                 {@code filetype} is required, {@code filename} optional
+     * @return the new upload, or empty if the cookbook does not exist
+     * @throws IllegalArgumentException if the length or the file type is not acceptable
+     */
+    public Optional<UploadStatus> create(UUID cookbookId, long length, String metadata) throws IOException {
+        if (length <= 0 || length > maxLength) {
+            throw new IllegalArgumentException("Upload-Length must be between 1 and " + maxLength);
+        }
+        Map<String, String> values = parseMetadata(metadata);
+        String contentType = values.get("filetype");
+        if (contentType == null || !CONTENT_TYPES.contains(contentType)) {
+            throw new IllegalArgumentException("Upload-Metadata filetype must be one of " + CONTENT_TYPES);
+        }
+
+        Optional<UploadSession> created = QuarkusTransaction.requiringNew().call(() -> {
+            if (Cookbook.findByIdOptional(cookbookId).isEmpty()) {
+                return Optional.empty();
+            }
+            UploadSession session = UploadSession.create(cookbookId, values.get("filename"), contentType, length);
+            session.persist();
+            return Optional.of(session);
+        });
+        if (created.isEmpty()) {
+            return Optional.empty();
+        }
+        Files.createDirectories(stagingDir);
+        Files.deleteIfExists(staging(created.get().id));
+        Files.createFile(staging(created.get().id));
+        return created.map(ResumableUploadService::status);
+    }
+
+    public Optional<UploadStatus> status(UUID cookbookId, UUID uploadId) {
+        return QuarkusTransaction.requiringNew().call(() ->
+                UploadSession.findByIdAndCookbookId(uploadId, cookbookId).map(ResumableUploadService::status));
+    }
+
+    /**
+     * Appends a chunk at the given offset. When the last byte has been received, the file is
+     * stored as index pages.
+     *
+     * @return the upload after the chunk, or empty if it does not exist
+     * @throws OffsetConflictException  if the offset is not the current one
+     * @throws IllegalArgumentException if the chunk goes past the upload length, or the completed
+     *                                  file is not a valid page; the upload is discarded then
+     * @throws IOException              if the chunk was interrupted; the bytes received are kept.
+     *                                  Also if the completed file could not be stored; the upload
+     *                                  then stays at the offset of its last chunk, to be sent again
+     */
+    public Optional<UploadStatus> append(UUID cookbookId, UUID uploadId, long offset, InputStream chunk) throws IOException {
+        if (!receiving.add(uploadId)) {
+            throw new OffsetConflictException("Another chunk of this upload is being received");
+        }
+        try {
+            Optional<UploadSession> found = QuarkusTransaction.requiringNew().call(() ->
+                    UploadSession.findByIdAndCookbookId(uploadId, cookbookId));
+            if (found.isEmpty()) {
+                return Optional.empty();
+            }
+            UploadSession session = found.get();
+            if (session.uploadOffset != offset) {
+                throw new OffsetConflictException("Upload-Offset is " + offset + " but the upload is at " + session.uploadOffset);
+            }
+            if (session.isCompleted()) {
+                return Optional.of(status(session));
+            }
+
+            long received = 0;
+            IOException interrupted = null;
+            try (FileChannel channel = FileChannel.open(staging(uploadId), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Drop anything past the recorded offset, left by a chunk that failed before it was recorded
+                channel.truncate(offset);
+                channel.position(offset);
+                long remaining = session.uploadLength - offset;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try {
+                    int n;
+                    while (received < remaining
+                            && (n = chunk.read(buffer, 0, (int) Math.min(buffer.length, remaining - received))) != -1) {
+                        channel.write(ByteBuffer.wrap(buffer, 0, n));
+                        received += n;
+                    }
+                    if (received == remaining && chunk.read() != -1) {
+                        channel.truncate(offset);
+                        throw new IllegalArgumentException("Chunk goes past the Upload-Length of " + session.uploadLength);
+                    }
+                } catch (IOException e) {
+                    interrupted = e;
+                }
+                channel.force(false);
+            }
+
+            long newOffset = offset + received;
+            if (interrupted != null || newOffset < session.uploadLength) {
+                QuarkusTransaction.requiringNew().run(() ->
+                        UploadSession.update("uploadOffset = ?1, updatedAt = ?2 where id = ?3", newOffset, Instant.now(), uploadId));
+                session.uploadOffset = newOffset;
+                if (interrupted != null) {
+                    Log.infof("Upload %s interrupted at %d of %d bytes", uploadId, newOffset, session.uploadLength);
+                    throw interrupted;
+                }
+                return Optional.of(status(session));
+            }
+
+            // The last offset is only recorded with the pages: until then, clients see the upload
+            // as unfinished and send the last chunk again
+            session.pageCount = complete(session);
+            session.uploadOffset = newOffset;
+            return Optional.of(status(session));
+        } finally {
+            receiving.remove(uploadId);
+        }
+    }
+
+    /**
+     * Discards an upload and the bytes received so far.
+     *
+     * @return false if the upload does not exist
+     */
+    public boolean cancel(UUID cookbookId, UUID uploadId) throws IOException {
+        long deleted = QuarkusTransaction.requiringNew().call(() ->
+                UploadSession.delete("id = ?1 AND cookbookId = ?2", uploadId, cookbookId));
+        Files.deleteIfExists(staging(uploadId));
+        return deleted > 0;
+    }
+
+    /**
+     * Discards uploads not touched for the expiry period, and staging files whose upload is gone,
+     * e.g. because the cookbook was deleted.
+     */
+    @Scheduled(every = "${uploads.cleanup-interval:1h}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void discardExpired() {
+        Instant cutoff = Instant.now().minus(expireAfter);
+        List<UUID> expired;
+        do {
+            expired = QuarkusTransaction.requiringNew().call(() -> UploadSession.findIdsUpdatedBefore(cutoff, CLEANUP_BATCH_SIZE));
+            for (UUID id : expired) {
+                try {
+                    QuarkusTransaction.requiringNew().run(() -> UploadSession.deleteById(id));
+                    Files.deleteIfExists(staging(id));
+                } catch (IOException | RuntimeException e) {
+                    Log.warnf(e, "Failed to discard expired upload %s", id);
+                }
+            }
+        } while (expired.size() == CLEANUP_BATCH_SIZE);
+
+        if (!Files.isDirectory(stagingDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingDir, "*.part")) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toInstant().isAfter(cutoff)) {
+                    continue;
+                }
+                UUID id = UUID.fromString(file.getFileName().toString().replace(".part", ""));
+                if (QuarkusTransaction.requiringNew().call(() -> UploadSession.findByIdOptional(id).isEmpty())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.warnf(e, "Failed to clean up the upload staging directory %s", stagingDir);
+        }
+    }
+
+    /**
+     * Stores a complete upload as index pages, in the same transaction that records its last
+     * offset and marks it complete. Pages the cookbook already has are not added again.
+     *
+     * @return the number of pages created
+     */
+    private int complete(UploadSession session) throws IOException {
+        Path file = staging(session.id);
+        String fileName = session.fileName != null ? session.fileName : "upload " + session.id;
+        List<IndexPagePreparer.PreparedPage> pages = new ArrayList<>();
+        try {
+            if (PdfPageRenderer.CONTENT_TYPE.equals(session.contentType)) {
+                for (PdfPageRenderer.RenderedPage page : pdfRenderer.render(file, null, null)) {
+                    pages.add(new IndexPagePreparer.PreparedPage(fileName + " (page " + page.pageNumber() + ")",
+                            page.image(), "image/jpeg", page.preview(), page.perceptualHash(), page.text()));
+                }
+            } else {
+                // Checked, previewed and hashed like images uploaded in one request
+                pages.addAll(preparer.prepareAll(List.of(fileName), List.of(file), List.of(session.contentType)));
+            }
+        } catch (IllegalArgumentException e) {
+            // The file will not get any better by retrying: drop the upload
+            cancel(session.cookbookId, session.id);
+            throw e;
+        }
+
+        IndexPagePreparer.Appended appended;
+        try {
+            appended = QuarkusTransaction.requiringNew().call(() -> {
+                IndexPagePreparer.Appended added = IndexPagePreparer.append(session.cookbookId, pages)
+                        .orElseThrow(() -> new IllegalStateException("Cookbook not found: " + session.cookbookId));
+                UploadSession.update("uploadOffset = ?1, pageCount = ?2, updatedAt = ?3 where id = ?4",
+                        session.uploadLength, added.added().size(), Instant.now(), session.id);
+                return added;
+            });
+        } catch (RuntimeException e) {
+            preparer.discard(pages);
+            throw e;
+        }
+        preparer.appended(appended);
+        Files.deleteIfExists(file);
+        Log.infof("Upload %s completed into %d index pages of cookbook %s, %d already in it", session.id,
+                appended.added().size(), session.cookbookId, appended.duplicates().size());
+        return appended.added().size();
+    }
+
+    private Path staging(UUID uploadId) {
+        return stagingDir.resolve(uploadId + ".part");
+    }
+
+    private static UploadStatus status(UploadSession session) {
+        return new UploadStatus(session.id, session.uploadOffset, session.uploadLength, session.pageCount);
+    }
+
+    private static Map<String, String> parseMetadata(String metadata) {
+        Map<String, String> values = new HashMap<>();
+        if (metadata == null || metadata.isBlank()) {
+            return values;
+        }
+        for (String pair : metadata.split(",")) {
+            String[] parts = pair.strip().split(" ", 2);
+            try {
+                values.put(parts[0], parts.length == 2
+                        ? new String(Base64.getDecoder().decode(parts[1].strip()), StandardCharsets.UTF_8)
+                        : "");
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Upload-Metadata value of " + parts[0] + " is not base64");
+            }
+        }
+        return values;
+    }
+}
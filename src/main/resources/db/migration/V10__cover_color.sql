@@ -0,0 +1,2 @@
+-- Dominant color of the cover (#rrggbb), shown as a placeholder while the image loads
+ALTER TABLE cookbook ADD COLUMN cover_color VARCHAR(7);
@@ -0,0 +1,7 @@
+-- Large objects found unreferenced by the sweeper. They are only unlinked once they have stayed
+-- unreferenced for a grace period, so blobs written just before their row commits are kept.
+CREATE TABLE lo_orphan_candidate (
+    oid OID PRIMARY KEY,
+    size BIGINT NOT NULL,
+    first_seen_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
@@ -0,0 +1,4 @@
+-- Retention of index page images once their import is confirmed
+ALTER TABLE cookbook ADD COLUMN index_pages_purge_after TIMESTAMP WITH TIME ZONE;
+
+ALTER TABLE cookbook_index_page ADD COLUMN archived BOOLEAN NOT NULL DEFAULT FALSE;
@@ -0,0 +1,2 @@
+-- Text layer of index pages imported from digital PDFs, parsed without calling the model
+ALTER TABLE cookbook_index_page ADD COLUMN text_layer TEXT;
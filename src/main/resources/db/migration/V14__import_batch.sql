@@ -0,0 +1,12 @@
+-- Cookbooks onboarded together from one library archive
+CREATE TABLE import_batch (
+    id UUID PRIMARY KEY,
+    cookbook_count INTEGER NOT NULL DEFAULT 0,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+ALTER TABLE cookbook ADD COLUMN import_batch_id UUID;
+ALTER TABLE cookbook ADD CONSTRAINT fk_cookbook_import_batch
+    FOREIGN KEY (import_batch_id) REFERENCES import_batch(id) ON DELETE SET NULL;
+
+CREATE INDEX idx_cookbook_import_batch_id ON cookbook(import_batch_id);
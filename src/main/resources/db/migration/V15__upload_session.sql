@@ -0,0 +1,15 @@
+-- Resumable index page uploads, received chunk by chunk
+CREATE TABLE upload_session (
+    id UUID PRIMARY KEY,
+    cookbook_id UUID NOT NULL,
+    file_name VARCHAR(255),
+    content_type VARCHAR(255) NOT NULL,
+    upload_length BIGINT NOT NULL,
+    upload_offset BIGINT NOT NULL DEFAULT 0,
+    page_count INTEGER,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    CONSTRAINT fk_upload_session_cookbook FOREIGN KEY (cookbook_id) REFERENCES cookbook(id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_upload_session_updated_at ON upload_session(updated_at);
@@ -0,0 +1,5 @@
+-- Small previews of index pages for the review UI, and lookups of duplicate pages by content
+ALTER TABLE cookbook_index_page ADD COLUMN preview_key VARCHAR(80);
+ALTER TABLE cookbook_index_page ADD COLUMN preview_size BIGINT;
+
+CREATE INDEX idx_cookbook_index_page_image_sha256 ON cookbook_index_page(image_sha256);
@@ -0,0 +1,4 @@
+-- Perceptual hashes of index pages, to catch the same page uploaded twice from different photos
+ALTER TABLE cookbook_index_page ADD COLUMN perceptual_hash BIGINT;
+ALTER TABLE cookbook_index_page ADD COLUMN duplicate_of_page_id UUID REFERENCES cookbook_index_page(id) ON DELETE SET NULL;
+ALTER TABLE cookbook_index_page ADD COLUMN duplicate_dismissed BOOLEAN NOT NULL DEFAULT FALSE;
@@ -0,0 +1,16 @@
+-- Full-text search on recipe names, stemmed in French and English and without accents,
+-- so that "tomates" finds "Tomate farcie" and "creme" finds "Crème brûlée"
+CREATE EXTENSION IF NOT EXISTS unaccent;
+
+CREATE TEXT SEARCH CONFIGURATION recipe_french (COPY = french);
+ALTER TEXT SEARCH CONFIGURATION recipe_french
+    ALTER MAPPING FOR hword, hword_part, word WITH unaccent, french_stem;
+
+CREATE TEXT SEARCH CONFIGURATION recipe_english (COPY = english);
+ALTER TEXT SEARCH CONFIGURATION recipe_english
+    ALTER MAPPING FOR hword, hword_part, word WITH unaccent, english_stem;
+
+ALTER TABLE recipe ADD COLUMN search_vector TSVECTOR
+    GENERATED ALWAYS AS (to_tsvector('recipe_french', name) || to_tsvector('recipe_english', name)) STORED;
+
+CREATE INDEX idx_recipe_search_vector ON recipe USING GIN (search_vector);
@@ -0,0 +1,6 @@
+-- Trigram indexes to find existing ingredients whose name or disambiguation looks like an OCR
+-- ingredient, e.g. "tomato" for "tomatoe"
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX idx_ingredient_name_trgm ON ingredient USING GIN (name gin_trgm_ops);
+CREATE INDEX idx_disambiguation_name_trgm ON ingredient_disambiguation USING GIN (name gin_trgm_ops);
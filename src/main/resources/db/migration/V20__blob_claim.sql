@@ -0,0 +1,7 @@
+-- Blobs that a row is about to reference: content-addressed files found already stored, and
+-- blobs reused from another row. They are not deleted as unreferenced within a grace period,
+-- since the row pointing at them may not be committed yet.
+CREATE TABLE blob_claim (
+    blob_key VARCHAR(80) PRIMARY KEY,
+    claimed_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
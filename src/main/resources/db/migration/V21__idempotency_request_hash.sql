@@ -0,0 +1,6 @@
+-- Fingerprint of the request that reserved a key, so that the key reused for another request is
+-- rejected instead of replaying an unrelated response
+ALTER TABLE idempotency_key ADD COLUMN request_hash VARCHAR(64);
+
+-- Reservations are taken over once stale, and expired keys purged, by creation time
+CREATE INDEX idx_idempotency_key_created_at ON idempotency_key (created_at);
@@ -0,0 +1,2 @@
+-- Trigram index to match recipe names with LIKE when a search query is only stopwords, e.g. "à la"
+CREATE INDEX idx_recipe_name_trgm ON recipe USING GIN (lower(name) gin_trgm_ops);
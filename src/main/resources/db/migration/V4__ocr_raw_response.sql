@@ -0,0 +1,17 @@
+-- Archive of raw model responses, so OCR results can be re-parsed without calling the model again
+CREATE TABLE ocr_raw_response (
+    id UUID PRIMARY KEY,
+    cookbook_id UUID NOT NULL,
+    page_id UUID NOT NULL,
+    page_order INTEGER NOT NULL,
+    model VARCHAR(255),
+    prompt_version VARCHAR(50) NOT NULL,
+    latency_ms BIGINT NOT NULL,
+    finish_reason VARCHAR(50),
+    response_size INTEGER NOT NULL,
+    response_gzip BYTEA NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    CONSTRAINT fk_ocr_raw_response_cookbook FOREIGN KEY (cookbook_id) REFERENCES cookbook(id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_ocr_raw_response_cookbook_id ON ocr_raw_response(cookbook_id);
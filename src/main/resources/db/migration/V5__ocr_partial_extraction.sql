@@ -0,0 +1,3 @@
+-- Track pages whose extraction response had to be repaired or partially salvaged
+ALTER TABLE ocr_raw_response ADD COLUMN partial BOOLEAN NOT NULL DEFAULT FALSE;
+ALTER TABLE ocr_raw_response ADD COLUMN salvaged_count INTEGER NOT NULL DEFAULT 0;
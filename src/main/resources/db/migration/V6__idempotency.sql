@@ -0,0 +1,24 @@
+-- Responses of requests sent with an Idempotency-Key header, replayed on retries
+CREATE TABLE idempotency_key (
+    id UUID PRIMARY KEY,
+    scope VARCHAR(255) NOT NULL,
+    idempotency_key VARCHAR(255) NOT NULL,
+    status_code INTEGER,
+    content_type VARCHAR(255),
+    response_body TEXT,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    completed_at TIMESTAMP WITH TIME ZONE,
+    CONSTRAINT uk_idempotency_scope_key UNIQUE (scope, idempotency_key)
+);
+
+-- Renumber index pages that reused page_order values across uploads, then forbid duplicates
+UPDATE cookbook_index_page p
+SET page_order = ordered.new_order
+FROM (
+    SELECT id, ROW_NUMBER() OVER (PARTITION BY cookbook_id ORDER BY page_order, created_at, id) - 1 AS new_order
+    FROM cookbook_index_page
+) ordered
+WHERE p.id = ordered.id AND p.page_order <> ordered.new_order;
+
+ALTER TABLE cookbook_index_page
+    ADD CONSTRAINT uk_index_page_cookbook_order UNIQUE (cookbook_id, page_order);
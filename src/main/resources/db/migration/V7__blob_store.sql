@@ -0,0 +1,31 @@
+-- Images are referenced by blob store key ("pg:<oid>" for large objects, "fs:<sha256>" for files)
+-- with their size and hash, instead of by a raw large object oid. Existing large objects are kept
+-- and keyed in place; they can then be moved to another backend with the blob migration endpoint.
+ALTER TABLE cookbook_index_page
+    ADD COLUMN image_key VARCHAR(80),
+    ADD COLUMN image_size BIGINT,
+    ADD COLUMN image_sha256 VARCHAR(64);
+
+UPDATE cookbook_index_page
+SET image_key = 'pg:' || image_data,
+    image_size = octet_length(lo_get(image_data)),
+    image_sha256 = encode(sha256(lo_get(image_data)), 'hex');
+
+ALTER TABLE cookbook_index_page
+    ALTER COLUMN image_key SET NOT NULL,
+    ALTER COLUMN image_size SET NOT NULL,
+    ALTER COLUMN image_sha256 SET NOT NULL,
+    DROP COLUMN image_data;
+
+ALTER TABLE cookbook
+    ADD COLUMN cover_key VARCHAR(80),
+    ADD COLUMN cover_size BIGINT,
+    ADD COLUMN cover_sha256 VARCHAR(64);
+
+UPDATE cookbook
+SET cover_key = 'pg:' || cover_data,
+    cover_size = octet_length(lo_get(cover_data)),
+    cover_sha256 = encode(sha256(lo_get(cover_data)), 'hex')
+WHERE cover_data IS NOT NULL;
+
+ALTER TABLE cookbook DROP COLUMN cover_data;
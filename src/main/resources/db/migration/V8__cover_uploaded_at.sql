@@ -0,0 +1,4 @@
+-- Upload time of the current cover, sent as Last-Modified
+ALTER TABLE cookbook ADD COLUMN cover_uploaded_at TIMESTAMP WITH TIME ZONE;
+
+UPDATE cookbook SET cover_uploaded_at = updated_at WHERE cover_key IS NOT NULL;
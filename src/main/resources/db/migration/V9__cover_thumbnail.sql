@@ -0,0 +1,13 @@
+-- Fixed-width variants of cover images, generated on first request
+CREATE TABLE cover_thumbnail (
+    id UUID PRIMARY KEY,
+    cookbook_id UUID NOT NULL,
+    width INTEGER NOT NULL,
+    cover_sha256 VARCHAR(64) NOT NULL,
+    blob_key VARCHAR(80) NOT NULL,
+    blob_size BIGINT NOT NULL,
+    content_type VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    CONSTRAINT fk_cover_thumbnail_cookbook FOREIGN KEY (cookbook_id) REFERENCES cookbook(id) ON DELETE CASCADE,
+    CONSTRAINT uk_cover_thumbnail_variant UNIQUE (cookbook_id, width, cover_sha256)
+);
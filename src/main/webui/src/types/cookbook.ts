@@ -1,4 +1,4 @@
-export type OcrStatus = 'NONE' | 'PROCESSING' | 'COMPLETED' | 'COMPLETED_WITH_ERRORS' | 'FAILED'
+export type OcrStatus = 'NONE' | 'QUEUED' | 'PROCESSING' | 'COMPLETED' | 'COMPLETED_WITH_ERRORS' | 'FAILED'
 
 export interface Cookbook {
   id: string
@@ -7,6 +7,8 @@ export interface Cookbook {
   createdAt: string
   recipeCount: number
   hasCover: boolean
+  coverHash: string | null
+  coverColor: string | null
   ocrStatus: OcrStatus
   ocrErrorMessage: string | null
 }
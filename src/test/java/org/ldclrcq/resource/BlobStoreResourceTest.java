@@ -0,0 +1,79 @@
+package org.ldclrcq.resource;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.Test;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+@QuarkusTest
+class BlobStoreResourceTest {
+
+    @Test
+    void migrate_shouldReturn400ForUnknownStore() {
+        given()
+                .queryParam("to", "s3")
+                .when()
+                .post("/api/admin/blob-store/migrate")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void migrate_shouldMoveCoversToFilesystemAndKeepServingThem() {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Blob Migration",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        byte[] cover = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0x42, 0x42};
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("file", "cover.jpg", cover, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200);
+
+        given()
+                .queryParam("to", "fs")
+                .when()
+                .post("/api/admin/blob-store/migrate")
+                .then()
+                .statusCode(200)
+                .body("target", equalTo("fs"))
+                .body("migratedCovers", greaterThanOrEqualTo(1))
+                .body("failures", equalTo(0));
+
+        byte[] served = given()
+                .when()
+                .get("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray();
+        assertArrayEquals(cover, served);
+
+        // Everything already lives in the target store
+        given()
+                .queryParam("to", "fs")
+                .when()
+                .post("/api/admin/blob-store/migrate")
+                .then()
+                .statusCode(200)
+                .body("migratedPages", equalTo(0))
+                .body("migratedCovers", equalTo(0));
+    }
+}
@@ -1,17 +1,44 @@
 package org.ldclrcq.resource;
 
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.mockito.InjectSpy;
 import io.restassured.http.ContentType;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.junit.jupiter.api.Test;
+import org.ldclrcq.entity.CookbookIndexPage;
+import org.ldclrcq.entity.IdempotencyRecord;
+import org.ldclrcq.service.IndexPagePreparer;
 
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
 import java.util.UUID;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
 
 @QuarkusTest
 class CookbookResourceTest {
 
+    @InjectSpy
+    IndexPagePreparer preparer;
+
     @Test
     void createCookbook_shouldReturnCreatedCookbook() {
         given()
@@ -153,6 +180,795 @@ class CookbookResourceTest {
                 .statusCode(400);
     }
 
+    @Test
+    void uploadIndexPages_shouldReplayResponseForSameIdempotencyKey() throws Exception {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Idempotent Upload",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        byte[] page = jpeg(100, new Color(0x40, 0x80, 0xC0));
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        given()
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", page, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200)
+                .header("Idempotent-Replayed", nullValue())
+                .body("pageCount", equalTo(1));
+
+        // A retry with the same key gets the original response without storing the page again
+        given()
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", page, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200)
+                .header("Idempotent-Replayed", equalTo("true"))
+                .body("pageCount", equalTo(1));
+    }
+
+    @Test
+    void uploadIndexPages_shouldRejectIdempotencyKeyReusedForDifferentRequest() throws Exception {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Reused Key",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        byte[] page = jpeg(100, new Color(0x20, 0x60, 0xA0));
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        given()
+                .header("Idempotency-Key", idempotencyKey)
+                .header("Content-Digest", "sha-256=:first:")
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", page, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200);
+
+        given()
+                .header("Idempotency-Key", idempotencyKey)
+                .header("Content-Digest", "sha-256=:second:")
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index2.jpg", page, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(422);
+    }
+
+    @Test
+    void uploadIndexPages_shouldTakeOverStaleIdempotencyReservation() throws Exception {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Stale Reservation",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        String idempotencyKey = UUID.randomUUID().toString();
+        given()
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", jpeg(100, Color.GRAY), "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200);
+
+        // As if the request had reserved the key an hour ago and never got a response
+        QuarkusTransaction.requiringNew().run(() -> IdempotencyRecord.getEntityManager().createNativeQuery("""
+                        UPDATE idempotency_key SET status_code = NULL, created_at = NOW() - INTERVAL '1 hour'
+                        WHERE idempotency_key = :key
+                        """)
+                .setParameter("key", idempotencyKey)
+                .executeUpdate());
+
+        given()
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", jpeg(100, Color.GRAY), "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200)
+                .header("Idempotent-Replayed", nullValue());
+    }
+
+    @Test
+    void uploadIndexPages_shouldRejectContentThatIsNotTheDeclaredType() throws Exception {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Mislabelled Upload",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), "png", png);
+
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", jpeg(100, Color.WHITE), "image/jpeg")
+                .multiPart("files", "index2.jpg", png.toByteArray(), "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(400)
+                .body(containsString("index2.jpg is declared as image/jpeg but its content is image/png"));
+
+        // A JPEG header alone is not an image
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index.jpg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 1}, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(400)
+                .body(containsString("not a readable image"));
+
+        // Nothing was stored by the rejected uploads
+        assertEquals(0, QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findByCookbookIdOrdered(UUID.fromString(cookbookId)).size()));
+    }
+
+    @Test
+    void uploadIndexPages_shouldLinkDuplicatePagesAndServePreviews() throws Exception {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Duplicate Upload",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        byte[] first = jpeg(800, new Color(0x20, 0x60, 0x20));
+        byte[] second = jpeg(200, new Color(0x60, 0x20, 0x20));
+
+        String firstPageId = given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", first, "image/jpeg")
+                .multiPart("files", "index1-again.jpg", first, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("pageCount", equalTo(1))
+                .body("duplicates.size()", equalTo(1))
+                .body("duplicates[0].fileName", equalTo("index1-again.jpg"))
+                .extract()
+                .path("duplicates[0].pageId");
+
+        // Pages already in the cookbook are linked rather than added again
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", first, "image/jpeg")
+                .multiPart("files", "index2.jpg", second, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("pageCount", equalTo(1))
+                .body("duplicates[0].fileName", equalTo("index1.jpg"))
+                .body("duplicates[0].pageId", equalTo(firstPageId));
+
+        List<CookbookIndexPage> pages = QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findByCookbookIdOrdered(UUID.fromString(cookbookId)));
+        assertEquals(2, pages.size());
+        assertEquals(firstPageId, pages.getFirst().id.toString());
+
+        byte[] preview = given()
+                .when()
+                .get("/api/cookbooks/{id}/index-pages/{pageId}/preview", cookbookId, firstPageId)
+                .then()
+                .statusCode(200)
+                .contentType("image/jpeg")
+                .extract()
+                .asByteArray();
+        assertEquals(320, ImageIO.read(new ByteArrayInputStream(preview)).getWidth());
+
+        // Narrow pages have no preview of their own
+        assertArrayEquals(second, given()
+                .when()
+                .get("/api/cookbooks/{id}/index-pages/{pageId}/preview", cookbookId, pages.get(1).id)
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray());
+    }
+
+    @Test
+    void uploadIndexPages_shouldRenderSelectedPdfPages() throws Exception {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "PDF Upload",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 0; i < 3; i++) {
+                PDPage page = new PDPage(PDRectangle.A6);
+                document.addPage(page);
+                // Pages with the same content would be stored once
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.addRect(20, 20, 40 * (i + 1), 40);
+                    content.fill();
+                }
+            }
+            document.save(pdf);
+        }
+
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index.pdf", pdf.toByteArray(), "application/pdf")
+                .multiPart("pages", "1,3")
+                .multiPart("dpi", "72")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("pageCount", equalTo(2));
+
+        // A range outside the document is rejected
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index.pdf", pdf.toByteArray(), "application/pdf")
+                .multiPart("pages", "5-9")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void resumableUpload_shouldAppendChunksAndCreatePageWhenComplete() throws IOException {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Resumable Upload",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        byte[] page = jpeg(480, Color.ORANGE);
+        String metadata = "filename " + Base64.getEncoder().encodeToString("index.jpg".getBytes())
+                + ",filetype " + Base64.getEncoder().encodeToString("image/jpeg".getBytes());
+
+        String location = given()
+                .header("Upload-Length", page.length)
+                .header("Upload-Metadata", metadata)
+                .when()
+                .post("/api/cookbooks/{id}/uploads", cookbookId)
+                .then()
+                .statusCode(201)
+                .header("Tus-Resumable", "1.0.0")
+                .extract()
+                .header("Location");
+
+        given()
+                .header("Upload-Offset", 0)
+                .contentType("application/offset+octet-stream")
+                .body(Arrays.copyOfRange(page, 0, 5))
+                .when()
+                .patch(location)
+                .then()
+                .statusCode(204)
+                .header("Upload-Offset", "5")
+                .header("Index-Page-Count", nullValue());
+
+        // A retry of a chunk that was already received is rejected, and the offset tells where to resume
+        given()
+                .header("Upload-Offset", 0)
+                .contentType("application/offset+octet-stream")
+                .body(Arrays.copyOfRange(page, 0, 5))
+                .when()
+                .patch(location)
+                .then()
+                .statusCode(409);
+        given()
+                .when()
+                .head(location)
+                .then()
+                .statusCode(200)
+                .header("Upload-Offset", "5")
+                .header("Upload-Length", String.valueOf(page.length));
+
+        given()
+                .header("Upload-Offset", 5)
+                .contentType("application/offset+octet-stream")
+                .body(Arrays.copyOfRange(page, 5, page.length))
+                .when()
+                .patch(location)
+                .then()
+                .statusCode(204)
+                .header("Upload-Offset", String.valueOf(page.length))
+                .header("Index-Page-Count", "1");
+
+        List<CookbookIndexPage> pages = QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findByCookbookIdOrdered(UUID.fromString(cookbookId)));
+        assertEquals(1, pages.size());
+        UUID pageId = pages.getFirst().id;
+        byte[] stored = given()
+                .when()
+                .get("/api/cookbooks/{id}/index-pages/{pageId}/image", cookbookId, pageId)
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray();
+        assertArrayEquals(page, stored);
+        // Checked and previewed like pages uploaded in one request
+        assertNotNull(pages.getFirst().previewKey);
+        assertNotNull(pages.getFirst().perceptualHash);
+    }
+
+    @Test
+    void resumableUpload_shouldRejectUnreadableImageWhenComplete() {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Unreadable Resumable Upload",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        // A JPEG header followed by garbage
+        byte[] page = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 1, 2, 3, 4, 5, 6, 7, 8};
+        String location = given()
+                .header("Upload-Length", page.length)
+                .header("Upload-Metadata", "filename " + Base64.getEncoder().encodeToString("index.jpg".getBytes())
+                        + ",filetype " + Base64.getEncoder().encodeToString("image/jpeg".getBytes()))
+                .when()
+                .post("/api/cookbooks/{id}/uploads", cookbookId)
+                .then()
+                .statusCode(201)
+                .extract()
+                .header("Location");
+
+        given()
+                .header("Upload-Offset", 0)
+                .contentType("application/offset+octet-stream")
+                .body(page)
+                .when()
+                .patch(location)
+                .then()
+                .statusCode(400)
+                .body(containsString("not a readable image"));
+
+        assertEquals(0, QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findByCookbookIdOrdered(UUID.fromString(cookbookId))).size());
+    }
+
+    @Test
+    void resumableUpload_shouldKeepLastChunkToResendWhenCompletingFails() throws IOException {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Retried Resumable Upload",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        byte[] page = jpeg(480, Color.MAGENTA);
+        String location = given()
+                .header("Upload-Length", page.length)
+                .header("Upload-Metadata", "filename " + Base64.getEncoder().encodeToString("index.jpg".getBytes())
+                        + ",filetype " + Base64.getEncoder().encodeToString("image/jpeg".getBytes()))
+                .when()
+                .post("/api/cookbooks/{id}/uploads", cookbookId)
+                .then()
+                .statusCode(201)
+                .extract()
+                .header("Location");
+
+        doThrow(new IOException("Disk full")).doCallRealMethod().when(preparer).prepareAll(any(), any(), any());
+        given()
+                .header("Upload-Offset", 0)
+                .contentType("application/offset+octet-stream")
+                .body(page)
+                .when()
+                .patch(location)
+                .then()
+                .statusCode(500);
+
+        // The upload is not reported as finished, so the client sends the last chunk again
+        given()
+                .when()
+                .head(location)
+                .then()
+                .statusCode(200)
+                .header("Upload-Offset", "0")
+                .header("Index-Page-Count", nullValue());
+        given()
+                .header("Upload-Offset", 0)
+                .contentType("application/offset+octet-stream")
+                .body(page)
+                .when()
+                .patch(location)
+                .then()
+                .statusCode(204)
+                .header("Upload-Offset", String.valueOf(page.length))
+                .header("Index-Page-Count", "1");
+
+        assertEquals(1, QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findByCookbookIdOrdered(UUID.fromString(cookbookId))).size());
+    }
+
+    @Test
+    void resumableUpload_shouldLinkPageTheCookbookAlreadyHas() throws IOException {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Duplicate Resumable Upload",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        byte[] page = jpeg(480, Color.CYAN);
+        for (String pageCount : List.of("1", "0")) {
+            String location = given()
+                    .header("Upload-Length", page.length)
+                    .header("Upload-Metadata", "filename " + Base64.getEncoder().encodeToString("index.jpg".getBytes())
+                            + ",filetype " + Base64.getEncoder().encodeToString("image/jpeg".getBytes()))
+                    .when()
+                    .post("/api/cookbooks/{id}/uploads", cookbookId)
+                    .then()
+                    .statusCode(201)
+                    .extract()
+                    .header("Location");
+            given()
+                    .header("Upload-Offset", 0)
+                    .contentType("application/offset+octet-stream")
+                    .body(page)
+                    .when()
+                    .patch(location)
+                    .then()
+                    .statusCode(204)
+                    .header("Index-Page-Count", pageCount);
+        }
+
+        // The second upload completes without adding the page again
+        assertEquals(1, QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findByCookbookIdOrdered(UUID.fromString(cookbookId))).size());
+    }
+
+    @Test
+    void resumableUpload_shouldRejectUnsupportedFileType() {
+        given()
+                .header("Upload-Length", 10)
+                .header("Upload-Metadata", "filetype " + Base64.getEncoder().encodeToString("text/plain".getBytes()))
+                .when()
+                .post("/api/cookbooks/{id}/uploads", UUID.randomUUID())
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void getCover_shouldServeRequestedByteRange() {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Ranged Cover",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("file", "cover.jpg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 10, 20, 30}, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200);
+
+        given()
+                .when()
+                .get("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200)
+                .header("Accept-Ranges", "bytes")
+                .header("Content-Length", "6");
+
+        byte[] part = given()
+                .header("Range", "bytes=3-4")
+                .when()
+                .get("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(206)
+                .header("Content-Range", "bytes 3-4/6")
+                .extract()
+                .asByteArray();
+        assertArrayEquals(new byte[]{10, 20}, part);
+
+        given()
+                .header("Range", "bytes=100-")
+                .when()
+                .get("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(416)
+                .header("Content-Range", "bytes */6");
+    }
+
+    @Test
+    void getCover_shouldRevalidateWithETagAndCacheVersionedUrlForever() {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Cached Cover",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        String coverHash = given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("file", "cover.jpg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 7}, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200)
+                .extract()
+                .path("coverHash");
+
+        given()
+                .when()
+                .get("/api/cookbooks/{id}", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("coverHash", equalTo(coverHash))
+                .body("coverColor", nullValue()); // not a decodable image
+
+        given()
+                .when()
+                .get("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200)
+                .header("ETag", equalTo("\"" + coverHash + "\""))
+                .header("Last-Modified", notNullValue())
+                .header("Cache-Control", containsString("no-cache"));
+
+        given()
+                .header("If-None-Match", "\"" + coverHash + "\"")
+                .when()
+                .get("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(304);
+
+        given()
+                .queryParam("v", coverHash)
+                .when()
+                .get("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200)
+                .header("Cache-Control", allOf(containsString("immutable"), containsString("max-age=31536000")));
+    }
+
+    @Test
+    void getCover_shouldServeThumbnailForRequestedWidth() throws Exception {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Thumbnail Cover",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        BufferedImage cover = new BufferedImage(800, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = cover.createGraphics();
+        g.setColor(new Color(0xC0, 0x30, 0x20));
+        g.fillRect(0, 0, 800, 1000);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 800, 100);
+        g.dispose();
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(cover, "png", png);
+
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("file", "cover.png", png.toByteArray(), "image/png")
+                .when()
+                .post("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("coverColor", equalTo("#c03020"));
+
+        given()
+                .when()
+                .get("/api/cookbooks/{id}", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("coverColor", equalTo("#c03020"));
+
+        byte[] thumbnail = given()
+                .queryParam("w", 200)
+                .when()
+                .get("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200)
+                .contentType("image/png")
+                .extract()
+                .asByteArray();
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(thumbnail));
+        assertEquals(320, decoded.getWidth());
+        assertEquals(400, decoded.getHeight());
+
+        // Wider than every variant: the original is served
+        byte[] original = given()
+                .queryParam("w", 2000)
+                .when()
+                .get("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray();
+        assertArrayEquals(png.toByteArray(), original);
+    }
+
+    @Test
+    void uploadCover_shouldInvalidateCachedCover() {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Replaced Cover",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        byte[] first = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 1};
+        byte[] second = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 2};
+
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("file", "cover.jpg", first, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200);
+
+        // Served twice so the second answer comes from the cache
+        for (int i = 0; i < 2; i++) {
+            assertArrayEquals(first, given()
+                    .when()
+                    .get("/api/cookbooks/{id}/cover", cookbookId)
+                    .then()
+                    .statusCode(200)
+                    .extract()
+                    .asByteArray());
+        }
+
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("file", "cover.jpg", second, "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200);
+
+        assertArrayEquals(second, given()
+                .when()
+                .get("/api/cookbooks/{id}/cover", cookbookId)
+                .then()
+                .statusCode(200)
+                .extract()
+                .asByteArray());
+    }
+
     @Test
     void confirmImport_shouldReturn404ForNonExistentCookbook() {
         UUID randomId = UUID.randomUUID();
@@ -404,5 +1220,15 @@ class CookbookResourceTest {
                 .statusCode(200)
                 .body("recipes", empty());
     }
-}
 
+    private static byte[] jpeg(int width, Color color) throws IOException {
+        BufferedImage image = new BufferedImage(width, width * 4 / 3, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
@@ -1190,4 +1190,82 @@ class IngredientResourceTest {
                 .statusCode(200)
                 .body("ingredients.findAll { it.name == 'apple' }.size()", equalTo(1));
     }
+
+    @Test
+    void suggestIngredients_shouldMatchMisspelledNames() {
+        String otherCookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Vegetable Test Cookbook",
+                            "author": "Test Chef"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "recipes": [
+                                {
+                                    "recipeName": "Ratatouille",
+                                    "pageNumber": 1,
+                                    "ingredient": "Courgette",
+                                    "keep": true
+                                },
+                                {
+                                    "recipeName": "Ratatouille",
+                                    "pageNumber": 1,
+                                    "ingredient": "Aubergine",
+                                    "keep": true
+                                }
+                            ]
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks/{id}/confirm", otherCookbookId)
+                .then()
+                .statusCode(200);
+
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "names": ["Courgete", "aubergine ", "courgete", "zzqxw"],
+                            "limit": 2
+                        }
+                        """)
+                .when()
+                .post("/api/ingredients/suggestions")
+                .then()
+                .statusCode(200)
+                .body("suggestions.size()", equalTo(3))
+                .body("suggestions[0].name", equalTo("courgete"))
+                .body("suggestions[0].matches[0].name", equalTo("courgette"))
+                .body("suggestions[0].matches[0].score", both(greaterThan(0.5f)).and(lessThan(1f)))
+                .body("suggestions[1].matches[0].name", equalTo("aubergine"))
+                .body("suggestions[1].matches[0].score", equalTo(1f))
+                .body("suggestions[2].matches", empty());
+    }
+
+    @Test
+    void suggestIngredients_shouldReturn400WithoutNames() {
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "names": []
+                        }
+                        """)
+                .when()
+                .post("/api/ingredients/suggestions")
+                .then()
+                .statusCode(400);
+    }
 }
@@ -0,0 +1,232 @@
+package org.ldclrcq.resource;
+
+import dev.langchain4j.data.image.Image;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.ldclrcq.dto.OcrResult;
+import org.ldclrcq.service.OcrAiService;
+import org.mockito.Mockito;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static io.restassured.RestAssured.given;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.*;
+
+@QuarkusTest
+class LibraryImportResourceTest {
+
+    // A JPEG header without an image behind it
+    private static final byte[] BROKEN_JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0x00, 0x10};
+
+    @InjectMock
+    OcrAiService ocrAiService;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.reset(ocrAiService);
+        Mockito.when(ocrAiService.extract(Mockito.any(Image.class))).thenReturn(new OcrResult(List.of(
+                new OcrResult.ExtractedRecipe("Apple Pie", 5, "apple", 0.9)
+        )));
+    }
+
+    @Test
+    void importLibrary_shouldCreateCookbooksFromZipAndQueueOcr() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        // Pages may come before the manifest
+        files.put("Baking/index/02.jpg", jpeg());
+        files.put("Baking/index/01.jpg", jpeg());
+        files.put("Baking/cover.jpg", jpeg());
+        files.put("Baking/manifest.json", manifest("Baking Basics", "Jane Doe"));
+        files.put("Soups/manifest.json", manifest("Soups", "John Doe"));
+        files.put("Soups/page.jpg", jpeg());
+        files.put("Soups/notes.txt", "ignored".getBytes(StandardCharsets.UTF_8));
+        files.put("Unlabelled/page.jpg", jpeg());
+        files.put("README.txt", "ignored".getBytes(StandardCharsets.UTF_8));
+
+        String batchId = given()
+                .contentType("application/zip")
+                .body(zip(files))
+                .when()
+                .post("/api/library-imports")
+                .then()
+                .statusCode(202)
+                .header("Location", containsString("/api/library-imports/"))
+                .body("cookbooks.size()", equalTo(2))
+                .body("cookbooks.find { it.folder == 'Baking' }.pageCount", equalTo(2))
+                .body("cookbooks.find { it.folder == 'Baking' }.hasCover", equalTo(true))
+                .body("cookbooks.find { it.folder == 'Soups' }.pageCount", equalTo(1))
+                .body("skipped.size()", equalTo(1))
+                .body("skipped[0].folder", equalTo("Unlabelled"))
+                .body("skipped[0].error", containsString("manifest.json"))
+                .extract()
+                .path("batchId");
+
+        await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
+            given()
+                    .when()
+                    .get("/api/library-imports/{id}", batchId)
+                    .then()
+                    .statusCode(200)
+                    .body("total", equalTo(2))
+                    .body("completed", equalTo(2))
+                    .body("done", equalTo(true))
+                    .body("cookbooks.title", hasItems("Baking Basics", "Soups"));
+        });
+    }
+
+    @Test
+    void importLibrary_shouldAcceptTar() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+            putTarEntry(tar, "Salads/manifest.json", manifest("Salads", "Jane Doe"));
+            putTarEntry(tar, "Salads/index.jpg", jpeg());
+        }
+
+        given()
+                .contentType("application/x-tar")
+                .body(out.toByteArray())
+                .when()
+                .post("/api/library-imports")
+                .then()
+                .statusCode(202)
+                .body("cookbooks[0].title", equalTo("Salads"))
+                .body("cookbooks[0].pageCount", equalTo(1));
+    }
+
+    @Test
+    void importLibrary_shouldSkipFolderWithUnreadableImage() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("Broken/manifest.json", manifest("Broken", "Jane Doe"));
+        files.put("Broken/index.jpg", BROKEN_JPEG);
+        files.put("Fine/manifest.json", manifest("Fine", "Jane Doe"));
+        files.put("Fine/index.jpg", jpeg());
+
+        given()
+                .contentType("application/zip")
+                .body(zip(files))
+                .when()
+                .post("/api/library-imports")
+                .then()
+                .statusCode(202)
+                .body("cookbooks.size()", equalTo(1))
+                .body("cookbooks[0].folder", equalTo("Fine"))
+                .body("skipped.size()", equalTo(1))
+                .body("skipped[0].folder", equalTo("Broken"))
+                .body("skipped[0].error", containsString("not a readable image"));
+    }
+
+    @Test
+    void importLibrary_shouldAddAnImageFoundTwiceInAFolderOnce() throws IOException {
+        byte[] page = jpeg();
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("Twice/manifest.json", manifest("Twice", "Jane Doe"));
+        files.put("Twice/01.jpg", page);
+        files.put("Twice/02.jpg", page);
+        files.put("Twice/03.jpg", jpeg());
+
+        given()
+                .contentType("application/zip")
+                .body(zip(files))
+                .when()
+                .post("/api/library-imports")
+                .then()
+                .statusCode(202)
+                .body("cookbooks[0].pageCount", equalTo(2));
+    }
+
+    @Test
+    void importLibrary_shouldReturn400WhenNothingCanBeImported() throws IOException {
+        given()
+                .contentType("application/zip")
+                .body(zip(Map.of("Empty/manifest.json", manifest("Empty", "Nobody"))))
+                .when()
+                .post("/api/library-imports")
+                .then()
+                .statusCode(400)
+                .body("batchId", nullValue())
+                .body("skipped[0].error", containsString("No index pages"));
+    }
+
+    @Test
+    void importLibrary_shouldReturn400ForUnreadableArchive() {
+        given()
+                .contentType("application/gzip")
+                .body("not a gzip file".getBytes(StandardCharsets.UTF_8))
+                .when()
+                .post("/api/library-imports")
+                .then()
+                .statusCode(400)
+                .body("error", containsString("Unreadable archive"));
+    }
+
+    @Test
+    void getProgress_shouldReturn404ForNonExistentBatch() {
+        given()
+                .when()
+                .get("/api/library-imports/{id}", UUID.randomUUID())
+                .then()
+                .statusCode(404);
+    }
+
+    private static byte[] manifest(String title, String author) {
+        return ("{\"title\": \"" + title + "\", \"author\": \"" + author + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a small JPEG. Each call gives a different random image, so pages of a folder are
+     * not near-duplicates of each other.
+     */
+    private static byte[] jpeg() {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                image.setRGB(x, y, ThreadLocalRandom.current().nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "jpg", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] zip(Map<String, byte[]> files) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                zip.putNextEntry(new ZipEntry(file.getKey()));
+                zip.write(file.getValue());
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void putTarEntry(TarArchiveOutputStream tar, String name, byte[] content) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        tar.putArchiveEntry(entry);
+        tar.write(content);
+        tar.closeArchiveEntry();
+    }
+}
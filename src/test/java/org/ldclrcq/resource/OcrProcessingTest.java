@@ -1,18 +1,40 @@
 package org.ldclrcq.resource;
 
 import dev.langchain4j.data.image.Image;
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.http.ContentType;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.ldclrcq.dto.OcrResult;
+import org.ldclrcq.entity.Cookbook;
+import org.ldclrcq.entity.OcrRawResponse;
+import org.ldclrcq.entity.OcrResultEntity;
 import org.ldclrcq.service.OcrAiService;
+import org.ldclrcq.service.OcrResponseCapture;
 import org.mockito.Mockito;
 
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.restassured.RestAssured.given;
 import static org.awaitility.Awaitility.await;
@@ -24,9 +46,12 @@ class OcrProcessingTest {
     @InjectMock
     OcrAiService ocrAiService;
 
+    @InjectMock
+    OcrResponseCapture responseCapture;
+
     @BeforeEach
     void setUp() {
-        Mockito.reset(ocrAiService);
+        Mockito.reset(ocrAiService, responseCapture);
     }
 
     @Test
@@ -149,11 +174,10 @@ class OcrProcessingTest {
                 .path("id");
 
         // Upload two index pages
-        byte[] fakeJpegData = createMinimalJpegBytes();
         given()
                 .contentType(ContentType.MULTIPART)
-                .multiPart("files", "index1.jpg", fakeJpegData, "image/jpeg")
-                .multiPart("files", "index2.jpg", fakeJpegData, "image/jpeg")
+                .multiPart("files", "index1.jpg", createMinimalJpegBytes(), "image/jpeg")
+                .multiPart("files", "index2.jpg", createMinimalJpegBytes(), "image/jpeg")
                 .when()
                 .post("/api/cookbooks/{id}/index-pages", cookbookId)
                 .then()
@@ -316,11 +340,10 @@ class OcrProcessingTest {
                 .path("id");
 
         // Upload two index pages
-        byte[] fakeJpegData = createMinimalJpegBytes();
         given()
                 .contentType(ContentType.MULTIPART)
-                .multiPart("files", "index1.jpg", fakeJpegData, "image/jpeg")
-                .multiPart("files", "index2.jpg", fakeJpegData, "image/jpeg")
+                .multiPart("files", "index1.jpg", createMinimalJpegBytes(), "image/jpeg")
+                .multiPart("files", "index2.jpg", createMinimalJpegBytes(), "image/jpeg")
                 .when()
                 .post("/api/cookbooks/{id}/index-pages", cookbookId)
                 .then()
@@ -348,6 +371,181 @@ class OcrProcessingTest {
         });
     }
 
+    @Test
+    void startOcrProcessing_shouldIsolateFailingPageAmongOthers() {
+        // Whichever page is extracted second fails, the pages around it still get their results
+        AtomicInteger calls = new AtomicInteger();
+        Mockito.when(ocrAiService.extract(Mockito.any(Image.class))).thenAnswer(invocation -> {
+            int call = calls.incrementAndGet();
+            if (call == 2) {
+                throw new RuntimeException("AI service unavailable");
+            }
+            return new OcrResult(List.of(
+                    new OcrResult.ExtractedRecipe("Recipe " + call, call, "ingredient " + call, 0.90)
+            ));
+        });
+
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Isolated Failure Test",
+                            "author": "Test Chef"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", createMinimalJpegBytes(), "image/jpeg")
+                .multiPart("files", "index2.jpg", createMinimalJpegBytes(), "image/jpeg")
+                .multiPart("files", "index3.jpg", createMinimalJpegBytes(), "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("pageCount", equalTo(3));
+
+        given()
+                .contentType(ContentType.JSON)
+                .when()
+                .post("/api/cookbooks/{id}/ocr/start", cookbookId)
+                .then()
+                .statusCode(202);
+
+        await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
+            given()
+                    .when()
+                    .get("/api/cookbooks/{id}/ocr/results", cookbookId)
+                    .then()
+                    .statusCode(200)
+                    .body("status", equalTo("COMPLETED_WITH_ERRORS"))
+                    .body("errorMessage", equalTo("1 of 3 pages failed"))
+                    .body("results.size()", equalTo(2))
+                    .body("results.find { it.recipeName == 'Recipe 2' }", nullValue());
+        });
+    }
+
+    @Test
+    void startOcrProcessing_shouldRetryFailedPersistPageByPage() {
+        // The first page extracted has a result the database rejects, which fails the batched
+        // write; the retry one page per transaction must only lose that page
+        AtomicInteger calls = new AtomicInteger();
+        Mockito.when(ocrAiService.extract(Mockito.any(Image.class))).thenAnswer(invocation -> {
+            if (calls.incrementAndGet() == 1) {
+                return new OcrResult(List.of(
+                        new OcrResult.ExtractedRecipe("Nameless Ingredient", 3, null, 0.90)
+                ));
+            }
+            return new OcrResult(List.of(
+                    new OcrResult.ExtractedRecipe("Apple Pie", 5, "apple", 0.90)
+            ));
+        });
+
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Persist Retry Test",
+                            "author": "Test Chef"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", createMinimalJpegBytes(), "image/jpeg")
+                .multiPart("files", "index2.jpg", createMinimalJpegBytes(), "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("pageCount", equalTo(2));
+
+        given()
+                .contentType(ContentType.JSON)
+                .when()
+                .post("/api/cookbooks/{id}/ocr/start", cookbookId)
+                .then()
+                .statusCode(202);
+
+        await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
+            given()
+                    .when()
+                    .get("/api/cookbooks/{id}/ocr/results", cookbookId)
+                    .then()
+                    .statusCode(200)
+                    .body("status", equalTo("COMPLETED_WITH_ERRORS"))
+                    .body("errorMessage", equalTo("1 of 2 pages failed"))
+                    .body("results.size()", equalTo(1))
+                    .body("results[0].recipeName", equalTo("Apple Pie"));
+        });
+    }
+
+    @Test
+    void startOcrProcessing_shouldCompleteWithErrorsWhenPageIsPartiallyExtracted() {
+        // The model output was cut off: the AI service cannot map it, the complete entries are salvaged
+        Mockito.when(ocrAiService.extract(Mockito.any(Image.class)))
+                .thenThrow(new RuntimeException("Could not map the model response"));
+        Mockito.when(responseCapture.take()).thenReturn(new OcrResponseCapture.CapturedResponse("""
+                {"recipes": [
+                  {"ingredient": "apple", "recipeName": "Apple Pie", "pageNumber": 5, "confidence": 0.9},
+                  {"ingredient": "pear", "recipeName": "Pear Tart", "pageNumber": 7, "confidence": 0.8},
+                  {"ingredient": "plum", "recipeName": "Plum Cru""", "test-model", "LENGTH"));
+
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Truncated Response Test",
+                            "author": "Test Chef"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index1.jpg", createMinimalJpegBytes(), "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200);
+
+        given()
+                .contentType(ContentType.JSON)
+                .when()
+                .post("/api/cookbooks/{id}/ocr/start", cookbookId)
+                .then()
+                .statusCode(202);
+
+        await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
+            given()
+                    .when()
+                    .get("/api/cookbooks/{id}/ocr/results", cookbookId)
+                    .then()
+                    .statusCode(200)
+                    .body("status", equalTo("COMPLETED_WITH_ERRORS"))
+                    .body("errorMessage", equalTo("1 of 1 pages partially extracted"))
+                    .body("results.size()", equalTo(2))
+                    .body("results.find { it.recipeName == 'Pear Tart' }.pageNumber", equalTo(7));
+        });
+    }
+
     @Test
     void startOcrProcessing_shouldReturnEmptyResultsWhenNoRecipesExtracted() {
         // Mock AI service to return empty results
@@ -412,6 +610,105 @@ class OcrProcessingTest {
                 .statusCode(404);
     }
 
+    @Test
+    void reparseOcrResults_shouldReturn404ForNonExistentCookbook() {
+        UUID randomId = UUID.randomUUID();
+
+        given()
+                .contentType(ContentType.JSON)
+                .when()
+                .post("/api/cookbooks/{id}/ocr/reparse", randomId)
+                .then()
+                .statusCode(404);
+    }
+
+    @Test
+    void reparseOcrResults_shouldReturnBadRequestWhenNothingArchived() {
+        // Create a cookbook that was never processed
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Never Processed",
+                            "author": "Test Chef"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        given()
+                .contentType(ContentType.JSON)
+                .when()
+                .post("/api/cookbooks/{id}/ocr/reparse", cookbookId)
+                .then()
+                .statusCode(400)
+                .body(containsString("No archived OCR responses"));
+    }
+
+    @Test
+    void reparseOcrResults_shouldRebuildResultsFromArchivedResponses() {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Archived Responses",
+                            "author": "Test Chef"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        // A model response archived by an earlier run, and a result it no longer explains
+        UUID id = UUID.fromString(cookbookId);
+        QuarkusTransaction.requiringNew().run(() -> {
+            OcrRawResponse.create(id, UUID.randomUUID(), 1, "test-model", OcrAiService.PROMPT_VERSION, 1200, "STOP", """
+                    ```json
+                    {"recipes": [
+                      {"ingredient": "apple", "recipeName": "Apple Pie", "pageNumber": 5, "confidence": 0.9},
+                      {"ingredient": "pear", "recipeName": "Pear Tart", "pageNumber": 7, "confidence": 0.6},
+                    ]}
+                    ```""", false, 0).persist();
+            OcrResultEntity.create(id, "stale", "Stale Recipe", 1, 0.9, false).persist();
+            Cookbook.updateOcrStatus(id, Cookbook.OcrStatus.COMPLETED, null);
+        });
+
+        given()
+                .contentType(ContentType.JSON)
+                .when()
+                .post("/api/cookbooks/{id}/ocr/reparse", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("resultCount", equalTo(2));
+
+        given()
+                .when()
+                .get("/api/cookbooks/{id}/ocr/results", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("status", equalTo("COMPLETED"))
+                .body("results.size()", equalTo(2))
+                .body("results.find { it.recipeName == 'Stale Recipe' }", nullValue())
+                .body("results.find { it.recipeName == 'Pear Tart' }.needsReview", equalTo(true));
+        Mockito.verify(ocrAiService, Mockito.never()).extract(Mockito.any(Image.class));
+
+        // Not while a run is replacing the results
+        QuarkusTransaction.requiringNew().run(() -> Cookbook.claimOcrProcessing(id));
+        given()
+                .contentType(ContentType.JSON)
+                .when()
+                .post("/api/cookbooks/{id}/ocr/reparse", cookbookId)
+                .then()
+                .statusCode(409);
+    }
+
     @Test
     void startOcrProcessing_shouldReturn409WhenAlreadyProcessing() {
         // Mock AI service to take a while
@@ -468,16 +765,212 @@ class OcrProcessingTest {
                 .body(containsString("already in progress"));
     }
 
+    @Test
+    void startOcrProcessing_shouldParseTextLayerWithoutCallingTheModel() throws Exception {
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Digital Index Cookbook",
+                            "author": "Test Chef"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        byte[] pdf = createIndexPdf(
+                "APPLES",
+                "Apple pie ............ 45",
+                "Baked apples ......... 67",
+                "BANANAS",
+                "Banana bread ......... 10");
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index.pdf", pdf, "application/pdf")
+                .multiPart("dpi", "72")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("pageCount", equalTo(1));
+
+        given()
+                .contentType(ContentType.JSON)
+                .when()
+                .post("/api/cookbooks/{id}/ocr/start", cookbookId)
+                .then()
+                .statusCode(202);
+
+        await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
+            given()
+                    .when()
+                    .get("/api/cookbooks/{id}/ocr/results", cookbookId)
+                    .then()
+                    .statusCode(200)
+                    .body("status", equalTo("COMPLETED"))
+                    .body("results.size()", equalTo(3))
+                    .body("results.find { it.recipeName == 'Apple pie' && it.ingredient == 'Apples' }.pageNumber", equalTo(45))
+                    .body("results.find { it.recipeName == 'Banana bread' && it.ingredient == 'Bananas' }.pageNumber", equalTo(10));
+        });
+        Mockito.verify(ocrAiService, Mockito.never()).extract(Mockito.any(Image.class));
+
+        // The parsed text is archived, so the results can be rebuilt like model responses
+        given()
+                .contentType(ContentType.JSON)
+                .when()
+                .post("/api/cookbooks/{id}/ocr/reparse", cookbookId)
+                .then()
+                .statusCode(200);
+    }
+
+    @Test
+    void startOcrProcessing_shouldSkipNearDuplicatePages() {
+        Mockito.when(ocrAiService.extract(Mockito.any(Image.class))).thenReturn(new OcrResult(List.of(
+                new OcrResult.ExtractedRecipe("Apple Pie", 45, "apple", 0.9)
+        )));
+
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Photographed Twice",
+                            "author": "Test Chef"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        // The same page photographed twice: different bytes, same content
+        given()
+                .contentType(ContentType.MULTIPART)
+                .multiPart("files", "index.jpg", createIndexPhoto(600), "image/jpeg")
+                .multiPart("files", "index-again.jpg", createIndexPhoto(480), "image/jpeg")
+                .when()
+                .post("/api/cookbooks/{id}/index-pages", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("pageCount", equalTo(2))
+                .body("duplicates.size()", equalTo(0));
+
+        String duplicateId = given()
+                .when()
+                .get("/api/cookbooks/{id}/index-pages/near-duplicates", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(1))
+                .body("[0].pageOrder", equalTo(2))
+                .body("[0].duplicateOfPageId", notNullValue())
+                .extract()
+                .path("[0].pageId");
+
+        given()
+                .contentType(ContentType.JSON)
+                .when()
+                .post("/api/cookbooks/{id}/ocr/start", cookbookId)
+                .then()
+                .statusCode(202);
+
+        await().atMost(10, TimeUnit.SECONDS).untilAsserted(() -> {
+            given()
+                    .when()
+                    .get("/api/cookbooks/{id}/ocr/results", cookbookId)
+                    .then()
+                    .statusCode(200)
+                    .body("status", equalTo("COMPLETED"))
+                    .body("results.size()", equalTo(1));
+        });
+        Mockito.verify(ocrAiService, Mockito.times(1)).extract(Mockito.any(Image.class));
+
+        // Dismissing the flag keeps the page from being flagged again
+        given()
+                .when()
+                .delete("/api/cookbooks/{id}/index-pages/{pageId}/duplicate-of", cookbookId, duplicateId)
+                .then()
+                .statusCode(204);
+
+        given()
+                .when()
+                .get("/api/cookbooks/{id}/index-pages/near-duplicates", cookbookId)
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(0));
+    }
+
+    private byte[] createIndexPdf(String... lines) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A5);
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 11);
+                content.setLeading(16);
+                content.newLineAtOffset(40, 540);
+                for (String line : lines) {
+                    content.showText(line);
+                    content.newLine();
+                }
+                content.endText();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Draws an index page, as a photo of the given width would show it.
+     */
+    private byte[] createIndexPhoto(int width) {
+        int height = width * 4 / 3;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(0xF4EFE4));
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.DARK_GRAY);
+        float scale = width / 600f;
+        String[] lines = {"APPLES", "Apple pie 45", "Baked apples 67", "Crumble 102", "BANANAS",
+                "Banana bread 10", "Fritters 212", "CHERRIES", "Clafoutis 88", "Black Forest cake 140"};
+        for (int i = 0; i < lines.length; i++) {
+            g.setFont(new Font(Font.SANS_SERIF, i % 4 == 0 ? Font.BOLD : Font.PLAIN, Math.round(22 * scale)));
+            g.drawString(lines[i], Math.round((i % 4 == 0 ? 40 : 70) * scale), Math.round((80 + i * 60) * scale));
+        }
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "jpg", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
     /**
-     * Creates minimal bytes that represent valid-ish image data for testing.
-     * The actual content doesn't matter since we're mocking the AI service.
+     * Creates a small JPEG for testing. Each call gives a different random image, since the same
+     * image, or one that looks like it, uploaded twice to a cookbook is only processed once. The
+     * content doesn't matter otherwise, since we're mocking the AI service.
      */
     private byte[] createMinimalJpegBytes() {
-        // JPEG magic bytes + some padding
-        return new byte[]{
-                (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0,
-                0x00, 0x10, 0x4A, 0x46, 0x49, 0x46, 0x00, 0x01,
-                0x01, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00
-        };
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                image.setRGB(x, y, ThreadLocalRandom.current().nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "jpg", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
     }
 }
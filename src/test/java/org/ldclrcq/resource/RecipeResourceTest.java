@@ -114,6 +114,19 @@ class RecipeResourceTest {
                 .body("recipes.every { it.name.toLowerCase().contains('spaghetti') }", equalTo(true));
     }
 
+    @Test
+    void listRecipes_shouldMatchNameWhenQueryIsOnlyStopwords() {
+        // "on" is a stopword in French and English, so full-text search has nothing to look for
+        given()
+                .queryParam("q", "on")
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.find { it.name == 'Spaghetti Bolognese' }", notNullValue())
+                .body("recipes.every { it.name.toLowerCase().contains('on') }", equalTo(true));
+    }
+
     @Test
     void listRecipes_shouldFilterByIngredient() {
         given()
@@ -239,6 +252,463 @@ class RecipeResourceTest {
                 .body("nextCursor", nullValue());
     }
 
+    @Test
+    void listRecipes_shouldMatchStemmedWordsWithoutAccents() {
+        String frenchCookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Cuisine de saison",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "recipes": [
+                                {
+                                    "recipeName": "Tomates farcies",
+                                    "pageNumber": 12,
+                                    "ingredient": "tomate",
+                                    "keep": true
+                                },
+                                {
+                                    "recipeName": "Crème brûlée",
+                                    "pageNumber": 80,
+                                    "ingredient": "crème",
+                                    "keep": true
+                                },
+                                {
+                                    "recipeName": "Roasted tomato soup",
+                                    "pageNumber": 40,
+                                    "ingredient": "tomato",
+                                    "keep": true
+                                }
+                            ]
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks/{id}/confirm", frenchCookbookId)
+                .then()
+                .statusCode(200);
+
+        given()
+                .queryParam("q", "tomate farcie")
+                .queryParam("cookbookId", frenchCookbookId)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Tomates farcies"));
+
+        given()
+                .queryParam("q", "creme brulee")
+                .queryParam("cookbookId", frenchCookbookId)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Crème brûlée"));
+
+        given()
+                .queryParam("q", "tomatoes")
+                .queryParam("cookbookId", frenchCookbookId)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Roasted tomato soup"));
+
+        // The last word matches while it is being typed
+        given()
+                .queryParam("q", "roasted tom")
+                .queryParam("cookbookId", frenchCookbookId)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Roasted tomato soup"));
+    }
+
+    @Test
+    void listRecipes_shouldReflectChangesToFilteredRecipes() {
+        String saffron = "saffron " + UUID.randomUUID();
+        String vanilla = "vanilla " + UUID.randomUUID();
+
+        String paellaCookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Paella Cookbook",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "recipes": [
+                                {
+                                    "recipeName": "Paella",
+                                    "pageNumber": 5,
+                                    "ingredient": "%s",
+                                    "keep": true
+                                }
+                            ]
+                        }
+                        """.formatted(saffron))
+                .when()
+                .post("/api/cookbooks/{id}/confirm", paellaCookbookId)
+                .then()
+                .statusCode(200);
+
+        String recipeId = given()
+                .queryParam("ingredient", saffron)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Paella"))
+                .extract()
+                .path("recipes[0].id");
+
+        given()
+                .queryParam("ingredient", saffron)
+                .queryParam("availableNow", true)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes", empty());
+
+        // Available all year
+        String saffronId = given()
+                .queryParam("q", saffron)
+                .when()
+                .get("/api/ingredients")
+                .then()
+                .statusCode(200)
+                .extract()
+                .path("ingredients[0].id");
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "name": "%s",
+                            "availableMonths": [1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12]
+                        }
+                        """.formatted(saffron))
+                .when()
+                .put("/api/ingredients/{id}", saffronId)
+                .then()
+                .statusCode(200);
+
+        given()
+                .queryParam("ingredient", saffron)
+                .queryParam("availableNow", true)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Paella"));
+
+        given()
+                .queryParam("availableNow", true)
+                .queryParam("cookbookId", paellaCookbookId)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Paella"));
+
+        // Ingredients added to and removed from the recipe
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "ingredientName": "%s"
+                        }
+                        """.formatted(vanilla))
+                .when()
+                .post("/api/recipes/{id}/ingredients", recipeId)
+                .then()
+                .statusCode(200);
+
+        given()
+                .queryParam("ingredient", vanilla)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.id", contains(recipeId));
+
+        given()
+                .when()
+                .delete("/api/recipes/{id}/ingredients/{ingredientName}", recipeId, vanilla)
+                .then()
+                .statusCode(200);
+
+        given()
+                .queryParam("ingredient", vanilla)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes", empty());
+
+        // Recipes of deleted cookbooks
+        given()
+                .when()
+                .delete("/api/cookbooks/{id}", paellaCookbookId)
+                .then()
+                .statusCode(204);
+
+        given()
+                .queryParam("ingredient", saffron)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes", empty());
+    }
+
+    @Test
+    void listRecipes_shouldCombineIngredients() {
+        String leek = "leek " + UUID.randomUUID();
+        String potato = "potato " + UUID.randomUUID();
+        String cream = "cream " + UUID.randomUUID();
+        String poireau = "poireau " + UUID.randomUUID();
+
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Potato Cookbook",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "recipes": [
+                                {"recipeName": "Leek Soup", "pageNumber": 1, "ingredient": "%1$s", "keep": true},
+                                {"recipeName": "Leek Soup", "pageNumber": 1, "ingredient": "%2$s", "keep": true},
+                                {"recipeName": "Gratin", "pageNumber": 2, "ingredient": "%1$s", "keep": true},
+                                {"recipeName": "Gratin", "pageNumber": 2, "ingredient": "%2$s", "keep": true},
+                                {"recipeName": "Gratin", "pageNumber": 2, "ingredient": "%3$s", "keep": true},
+                                {"recipeName": "Potato Salad", "pageNumber": 3, "ingredient": "%2$s", "keep": true}
+                            ]
+                        }
+                        """.formatted(leek, potato, cream))
+                .when()
+                .post("/api/cookbooks/{id}/confirm", cookbookId)
+                .then()
+                .statusCode(200);
+
+        // All of
+        given()
+                .queryParam("ingredient", leek, potato)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Gratin", "Leek Soup"));
+
+        // Any of
+        given()
+                .queryParam("anyIngredient", leek, cream)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Gratin", "Leek Soup"));
+
+        // None of
+        given()
+                .queryParam("ingredient", potato)
+                .queryParam("excludeIngredient", cream)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Leek Soup", "Potato Salad"));
+
+        // Names are also resolved through disambiguations
+        String leekId = given()
+                .queryParam("q", leek)
+                .when()
+                .get("/api/ingredients")
+                .then()
+                .statusCode(200)
+                .extract()
+                .path("ingredients[0].id");
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "name": "%s",
+                            "disambiguations": ["%s"]
+                        }
+                        """.formatted(leek, poireau))
+                .when()
+                .put("/api/ingredients/{id}", leekId)
+                .then()
+                .statusCode(200);
+
+        given()
+                .queryParam("ingredient", poireau)
+                .queryParam("excludeIngredient", cream)
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes.name", contains("Leek Soup"));
+
+        // A required ingredient that does not exist matches nothing
+        given()
+                .queryParam("ingredient", potato, "unknown " + UUID.randomUUID())
+                .when()
+                .get("/api/recipes")
+                .then()
+                .statusCode(200)
+                .body("recipes", empty());
+    }
+
+    @Test
+    void rankByPantry_shouldRankRecipesByIngredientsOnHand() {
+        String leek = "leek " + UUID.randomUUID();
+        String potato = "potato " + UUID.randomUUID();
+        String cream = "cream " + UUID.randomUUID();
+        String mayonnaise = "mayonnaise " + UUID.randomUUID();
+
+        String cookbookId = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "title": "Pantry Cookbook",
+                            "author": "Test Author"
+                        }
+                        """)
+                .when()
+                .post("/api/cookbooks")
+                .then()
+                .statusCode(201)
+                .extract()
+                .path("id");
+
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "recipes": [
+                                {"recipeName": "Gratin", "pageNumber": 1, "ingredient": "%1$s", "keep": true},
+                                {"recipeName": "Gratin", "pageNumber": 1, "ingredient": "%2$s", "keep": true},
+                                {"recipeName": "Gratin", "pageNumber": 1, "ingredient": "%3$s", "keep": true},
+                                {"recipeName": "Leek Soup", "pageNumber": 2, "ingredient": "%1$s", "keep": true},
+                                {"recipeName": "Leek Soup", "pageNumber": 2, "ingredient": "%2$s", "keep": true},
+                                {"recipeName": "Potato Salad", "pageNumber": 3, "ingredient": "%2$s", "keep": true},
+                                {"recipeName": "Potato Salad", "pageNumber": 3, "ingredient": "%4$s", "keep": true}
+                            ]
+                        }
+                        """.formatted(leek, potato, cream, mayonnaise))
+                .when()
+                .post("/api/cookbooks/{id}/confirm", cookbookId)
+                .then()
+                .statusCode(200);
+
+        String pantry = """
+                {
+                    "ingredients": ["%s", "%s", "unknown %s"]
+                }
+                """.formatted(leek, potato.toUpperCase(), UUID.randomUUID());
+        given()
+                .contentType(ContentType.JSON)
+                .body(pantry)
+                .when()
+                .post("/api/recipes/pantry")
+                .then()
+                .statusCode(200)
+                .body("recipes.recipe.name", contains("Leek Soup", "Gratin", "Potato Salad"))
+                .body("recipes.ingredientsOnHand", contains(2, 2, 1))
+                .body("recipes.ingredientCount", contains(2, 3, 2))
+                .body("recipes[0].missingIngredients", empty())
+                .body("recipes[1].missingIngredients", contains(cream))
+                .body("recipes[2].missingIngredients", contains(mayonnaise))
+                .body("hasMore", is(false));
+
+        // Paginated over the ranking
+        String cursor = given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "ingredients": ["%s", "%s"],
+                            "limit": 2
+                        }
+                        """.formatted(leek, potato))
+                .when()
+                .post("/api/recipes/pantry")
+                .then()
+                .statusCode(200)
+                .body("recipes.recipe.name", contains("Leek Soup", "Gratin"))
+                .body("hasMore", is(true))
+                .extract()
+                .path("nextCursor");
+
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "ingredients": ["%s", "%s"],
+                            "cursor": "%s",
+                            "limit": 2
+                        }
+                        """.formatted(leek, potato, cursor))
+                .when()
+                .post("/api/recipes/pantry")
+                .then()
+                .statusCode(200)
+                .body("recipes.recipe.name", contains("Potato Salad"))
+                .body("hasMore", is(false));
+    }
+
+    @Test
+    void rankByPantry_shouldReturn400ForEmptyPantry() {
+        given()
+                .contentType(ContentType.JSON)
+                .body("""
+                        {
+                            "ingredients": []
+                        }
+                        """)
+                .when()
+                .post("/api/recipes/pantry")
+                .then()
+                .statusCode(400);
+    }
+
     @Test
     void listRecipes_shouldRespectMaxLimit() {
         // Try to request more than MAX_LIMIT (100)
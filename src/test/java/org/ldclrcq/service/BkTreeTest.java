@@ -0,0 +1,56 @@
+package org.ldclrcq.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BkTreeTest {
+
+    @Test
+    void search_shouldFindTheSameHashesAsALinearScan() {
+        Random random = new Random(42);
+        BkTree<Integer> tree = new BkTree<>();
+        List<Long> hashes = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // Clusters of nearby hashes, as several photos of one page would give
+            long hash = i % 4 == 0 || hashes.isEmpty()
+                    ? random.nextLong()
+                    : hashes.get(random.nextInt(hashes.size())) ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64));
+            hashes.add(hash);
+            tree.add(hash, i);
+        }
+
+        for (int query = 0; query < 50; query++) {
+            long hash = hashes.get(random.nextInt(hashes.size())) ^ (1L << random.nextInt(64));
+            for (int maxDistance : new int[]{0, 3, 8}) {
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < hashes.size(); i++) {
+                    if (PerceptualHash.distance(hashes.get(i), hash) <= maxDistance) {
+                        expected.add(i);
+                    }
+                }
+                List<Integer> found = tree.search(hash, maxDistance).stream().map(BkTree.Match::value).sorted().toList();
+                assertEquals(expected, found);
+            }
+        }
+        assertEquals(2000, tree.size());
+    }
+
+    @Test
+    void search_shouldKeepEveryValueOfAHash() {
+        BkTree<String> tree = new BkTree<>();
+        tree.add(7L, "first");
+        tree.add(7L, "second");
+        tree.add(6L, "near");
+
+        List<BkTree.Match<String>> matches = tree.search(7L, 0);
+
+        assertEquals(List.of("first", "second"), matches.stream().map(BkTree.Match::value).toList());
+        assertEquals(3, tree.search(7L, 1).size());
+        assertTrue(new BkTree<String>().search(7L, 64).isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package org.ldclrcq.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlobSpoolTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void add_shouldShareOneCopyBetweenBlobsWithTheSameContent() throws IOException {
+        BlobSpool spool = new BlobSpool(dir, 1000);
+        Path first = spool.add("pg:1", temp(10), "aaaa", 10);
+        Path second = spool.add("pg:2", temp(10), "aaaa", 10);
+
+        assertEquals(first, second);
+        assertEquals(first, spool.find("pg:1"));
+
+        // The copy is kept while another blob uses it
+        spool.discard("pg:1");
+        assertNull(spool.find("pg:1"));
+        assertTrue(Files.exists(first));
+        spool.discard("pg:2");
+        assertFalse(Files.exists(first));
+    }
+
+    @Test
+    void add_shouldEvictLeastRecentlyUsedCopiesPastTheMaximumSize() throws IOException {
+        BlobSpool spool = new BlobSpool(dir, 25);
+        Path a = spool.add("pg:1", temp(10), "aaaa", 10);
+        spool.add("pg:2", temp(10), "bbbb", 10);
+        // Reading pg:1 makes pg:2 the least recently used
+        spool.find("pg:1");
+        spool.add("pg:3", temp(10), "cccc", 10);
+
+        assertEquals(a, spool.find("pg:1"));
+        assertNull(spool.find("pg:2"));
+        assertFalse(Files.exists(dir.resolve("bbbb")));
+        assertNotNull(spool.find("pg:3"));
+    }
+
+    @Test
+    void add_shouldKeepACopyLargerThanTheMaximumSizeUntilTheNextOne() throws IOException {
+        BlobSpool spool = new BlobSpool(dir, 5);
+        Path large = spool.add("pg:1", temp(10), "aaaa", 10);
+        assertTrue(Files.exists(large));
+
+        spool.add("pg:2", temp(10), "bbbb", 10);
+        assertFalse(Files.exists(large));
+        assertNull(spool.find("pg:1"));
+    }
+
+    @Test
+    void clear_shouldDeleteCopiesLeftByAPreviousRun() throws IOException {
+        Files.write(dir.resolve("aaaa"), new byte[10]);
+        Files.write(dir.resolve("spool-1.part"), new byte[3]);
+
+        new BlobSpool(dir, 1000).clear();
+
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private Path temp(int size) throws IOException {
+        Path temp = Files.createTempFile(dir, "spool-", ".part");
+        Files.write(temp, new byte[size]);
+        return temp;
+    }
+}
@@ -0,0 +1,51 @@
+package org.ldclrcq.service;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+import org.ldclrcq.entity.Cookbook;
+import org.ldclrcq.entity.CookbookIndexPage;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class FileSystemBlobSweeperTest {
+
+    @Inject
+    FileSystemBlobStore fileSystem;
+
+    @Inject
+    Blobs blobs;
+
+    @Inject
+    FileSystemBlobSweeper sweeper;
+
+    @Test
+    void sweep_shouldDeleteOnlyUnreferencedFilesOnceTheirClaimExpired() throws Exception {
+        BlobStore.StoredBlob orphan = fileSystem.write(new ByteArrayInputStream(UUID.randomUUID().toString().getBytes()));
+        BlobStore.StoredBlob referenced = fileSystem.write(new ByteArrayInputStream(UUID.randomUUID().toString().getBytes()));
+        QuarkusTransaction.requiringNew().run(() -> {
+            Cookbook cookbook = Cookbook.create("Filesystem sweeper", "Test Author");
+            cookbook.persist();
+            CookbookIndexPage.create(cookbook.id, 0, referenced, "image/jpeg").persist();
+        });
+
+        // Just written, so its row may still be on its way
+        blobs.deleteIfUnreferenced(orphan.key());
+        assertTrue(fileSystem.exists(orphan.key()));
+        sweeper.sweep(Duration.ofHours(1));
+        assertTrue(fileSystem.exists(orphan.key()));
+
+        assertTrue(sweeper.sweep(Duration.ZERO) >= 1);
+
+        assertFalse(fileSystem.exists(orphan.key()));
+        assertTrue(fileSystem.exists(referenced.key()));
+        assertFalse(blobs.reuse(orphan.key()));
+        assertTrue(blobs.reuse(referenced.key()));
+    }
+}
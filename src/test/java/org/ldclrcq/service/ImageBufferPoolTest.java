@@ -0,0 +1,80 @@
+package org.ldclrcq.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageBufferPoolTest {
+
+    private static final int IMAGE_SIZE = 4 * 1024 * 1024;
+    private static final int PAGES = 20;
+
+    @Test
+    void toBase64_shouldMatchJdkEncoder() throws Exception {
+        byte[] image = randomImage(100_003);
+        ImageBufferPool pool = new ImageBufferPool(64L * 1024 * 1024);
+
+        try (ImageBufferPool.Lease<ByteBuffer> lease = pool.readDirect(new ByteArrayInputStream(image), image.length)) {
+            assertEquals(Base64.getEncoder().encodeToString(image), pool.toBase64(lease.buffer()));
+            assertTrue(lease.buffer().isDirect());
+        }
+        assertTrue(pool.retainedBytes() > 0, "released buffers should be kept for reuse");
+    }
+
+    @Test
+    void readDirect_shouldFailWhenStreamIsShorterThanLength() {
+        byte[] image = randomImage(1000);
+        ImageBufferPool pool = new ImageBufferPool(64L * 1024 * 1024);
+
+        assertThrows(EOFException.class, () -> pool.readDirect(new ByteArrayInputStream(image), image.length + 1));
+        // The buffer went back to the pool
+        assertTrue(pool.retainedBytes() > 0);
+    }
+
+    /**
+     * Allocation benchmark: the pooled path allocates only the final base64 String per page,
+     * while the byte[] path also allocates the image array and the encoder's intermediate array.
+     */
+    @Test
+    void pooledEncoding_shouldAllocateFarLessThanByteArrays() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        byte[] source = randomImage(IMAGE_SIZE);
+        ImageBufferPool pool = new ImageBufferPool(64L * 1024 * 1024);
+
+        // Warm up the pool so steady state is measured
+        try (ImageBufferPool.Lease<ByteBuffer> lease = pool.readDirect(new ByteArrayInputStream(source), source.length)) {
+            pool.toBase64(lease.buffer());
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < PAGES; i++) {
+            byte[] imageData = new ByteArrayInputStream(source).readAllBytes();
+            assertNotNull(Base64.getEncoder().encodeToString(imageData));
+        }
+        long byteArrayPath = threads.getCurrentThreadAllocatedBytes() - before;
+
+        before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < PAGES; i++) {
+            try (ImageBufferPool.Lease<ByteBuffer> lease = pool.readDirect(new ByteArrayInputStream(source), source.length)) {
+                assertNotNull(pool.toBase64(lease.buffer()));
+            }
+        }
+        long pooledPath = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(pooledPath < byteArrayPath / 2,
+                "pooled path allocated " + pooledPath + " bytes vs " + byteArrayPath);
+    }
+
+    private static byte[] randomImage(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,77 @@
+package org.ldclrcq.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageCacheTest {
+
+    @Test
+    void put_shouldEvictLeastRecentlyUsedEntriesByTotalBytes() {
+        ImageCache cache = new ImageCache(1000, 600, false, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+
+        cache.put(ImageCache.key(first, 0), "a", "a", Instant.now(), "image/jpeg", new byte[400], cache.generation());
+        cache.put(ImageCache.key(second, 0), "b", "b", Instant.now(), "image/jpeg", new byte[400], cache.generation());
+        // Touch the first entry so the second becomes the least recently used
+        assertTrue(cache.get(ImageCache.key(first, 0)).isPresent());
+
+        cache.put(ImageCache.key(third, 0), "c", "c", Instant.now(), "image/jpeg", new byte[400], cache.generation());
+
+        assertTrue(cache.get(ImageCache.key(first, 0)).isPresent());
+        assertTrue(cache.get(ImageCache.key(second, 0)).isEmpty());
+        assertTrue(cache.get(ImageCache.key(third, 0)).isPresent());
+        assertEquals(800, cache.residentBytes());
+        assertEquals(0.75, cache.hitRatio(), 0.001);
+    }
+
+    @Test
+    void put_shouldSkipEntriesLargerThanTheEntryLimit() {
+        ImageCache cache = new ImageCache(1000, 600, true, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        UUID cookbookId = UUID.randomUUID();
+
+        cache.put(ImageCache.key(cookbookId, 0), "a", "a", Instant.now(), "image/jpeg", new byte[700], cache.generation());
+
+        assertTrue(cache.get(ImageCache.key(cookbookId, 0)).isEmpty());
+        assertEquals(0, cache.residentBytes());
+    }
+
+    @Test
+    void put_shouldSkipImagesReadBeforeAnInvalidation() {
+        ImageCache cache = new ImageCache(1000, 600, false, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        UUID cookbookId = UUID.randomUUID();
+
+        // The previous cover was read, then replaced before it could be cached
+        long generation = cache.generation();
+        cache.invalidate(cookbookId);
+        cache.put(ImageCache.key(cookbookId, 0), "old", "old", Instant.now(), "image/jpeg", new byte[100], generation);
+
+        assertTrue(cache.get(ImageCache.key(cookbookId, 0)).isEmpty());
+        assertEquals(0, cache.residentBytes());
+    }
+
+    @Test
+    void invalidate_shouldDropEveryVariantOfACover() {
+        ImageCache cache = new ImageCache(10_000, 1000, true, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        UUID cookbookId = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+
+        cache.put(ImageCache.key(cookbookId, 0), "a", "a", Instant.now(), "image/jpeg", new byte[500], cache.generation());
+        cache.put(ImageCache.key(cookbookId, 160), "a", "a-w160", Instant.now(), "image/jpeg", new byte[50], cache.generation());
+        cache.put(ImageCache.key(other, 0), "b", "b", Instant.now(), "image/jpeg", new byte[100], cache.generation());
+
+        cache.invalidate(cookbookId);
+
+        assertTrue(cache.get(ImageCache.key(cookbookId, 0)).isEmpty());
+        assertTrue(cache.get(ImageCache.key(cookbookId, 160)).isEmpty());
+        assertTrue(cache.get(ImageCache.key(other, 0)).isPresent());
+        assertEquals(100, cache.residentBytes());
+    }
+}
@@ -0,0 +1,44 @@
+package org.ldclrcq.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexPagePreparerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sniff_shouldReadFormatFromMagicBytes() throws IOException {
+        assertEquals("image/jpeg", IndexPagePreparer.sniff(file("a.jpg", 0xFF, 0xD8, 0xFF, 0xE0, 0x00)));
+        assertEquals("image/png", IndexPagePreparer.sniff(file("a.png", 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0)));
+        assertEquals("application/pdf", IndexPagePreparer.sniff(file("a.pdf", '%', 'P', 'D', 'F', '-', '1', '.', '7')));
+        assertNull(IndexPagePreparer.sniff(file("a.gif", 'G', 'I', 'F', '8', '9', 'a')));
+        assertNull(IndexPagePreparer.sniff(file("short", 0xFF, 0xD8)));
+        assertNull(IndexPagePreparer.sniff(file("empty")));
+    }
+
+    @Test
+    void checkFormat_shouldRejectContentOfAnotherType() throws IOException {
+        Path png = file("scan.jpg", 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n');
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> IndexPagePreparer.checkFormat("scan.jpg", png, "image/jpeg"));
+        assertEquals("scan.jpg is declared as image/jpeg but its content is image/png", e.getMessage());
+        assertDoesNotThrow(() -> IndexPagePreparer.checkFormat("scan.jpg", png, "image/png"));
+    }
+
+    private Path file(String name, int... bytes) throws IOException {
+        byte[] content = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            content[i] = (byte) bytes[i];
+        }
+        return Files.write(dir.resolve(name), content);
+    }
+}
@@ -0,0 +1,83 @@
+package org.ldclrcq.service;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+import org.ldclrcq.entity.Cookbook;
+import org.ldclrcq.entity.CookbookIndexPage;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class IndexPageRetentionServiceTest {
+
+    @Inject
+    IndexPageRetentionService retention;
+
+    @Inject
+    Blobs blobs;
+
+    @Test
+    void archive_shouldDownscaleAndRecompressPages() throws Exception {
+        UUID cookbookId = cookbookWithPage(indexPagePng(2400, 1200));
+
+        long reclaimed = retention.archive(cookbookId);
+
+        CookbookIndexPage page = QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findByCookbookIdOrdered(cookbookId).getFirst());
+        assertTrue(reclaimed > 0);
+        assertTrue(page.archived);
+        assertEquals("image/jpeg", page.contentType);
+        BufferedImage archived = ImageIO.read(new ByteArrayInputStream(blobs.readAllBytes(page.imageKey)));
+        assertEquals(1600, archived.getWidth());
+
+        // Already archived pages are left alone
+        assertEquals(0, retention.archive(cookbookId));
+    }
+
+    @Test
+    void purge_shouldDeletePagesAndReportTheirSize() throws Exception {
+        byte[] image = indexPagePng(400, 200);
+        UUID cookbookId = cookbookWithPage(image);
+
+        assertEquals(image.length, retention.purge(cookbookId));
+
+        List<CookbookIndexPage> pages = QuarkusTransaction.requiringNew().call(() ->
+                CookbookIndexPage.findByCookbookIdOrdered(cookbookId));
+        assertTrue(pages.isEmpty());
+    }
+
+    private UUID cookbookWithPage(byte[] image) throws Exception {
+        BlobStore.StoredBlob blob = blobs.write(new ByteArrayInputStream(image));
+        return QuarkusTransaction.requiringNew().call(() -> {
+            Cookbook cookbook = Cookbook.create("Retention", "Test Author");
+            cookbook.persist();
+            CookbookIndexPage.create(cookbook.id, 0, blob, "image/png").persist();
+            return cookbook.id;
+        });
+    }
+
+    // Noisy content so that the PNG is large, like a photographed page
+    private static byte[] indexPagePng(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(7);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int grey = 200 + random.nextInt(40);
+                image.setRGB(x, y, grey << 16 | grey << 8 | grey);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,119 @@
+package org.ldclrcq.service;
+
+import org.junit.jupiter.api.Test;
+import org.ldclrcq.dto.OcrResult;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexTextParserTest {
+
+    private final IndexTextParser parser = new IndexTextParser(0.8, 3);
+
+    @Test
+    void parse_shouldReadHeadingsDotLeadersAndContinuationLines() {
+        List<OcrResult.ExtractedRecipe> recipes = parser.parse("""
+                INDEX
+                APPLES
+                Apple pie with cinnamon
+                and walnuts ............ 45
+                Baked apples ........... 67, 112
+                A
+                Apricots
+                Apricot jam, 12
+                Apricot tart . . . . . . 14-15
+                212
+                """).orElseThrow().result().recipes();
+
+        assertEquals(5, recipes.size());
+        assertEquals(new OcrResult.ExtractedRecipe("Apple pie with cinnamon and walnuts", 45, "Apples", 0.9), recipes.get(0));
+        assertEquals(new OcrResult.ExtractedRecipe("Baked apples", 67, "Apples", 0.95), recipes.get(1));
+        assertEquals(112, recipes.get(2).pageNumber());
+        assertEquals(new OcrResult.ExtractedRecipe("Apricot jam", 12, "Apricots", 0.95), recipes.get(3));
+        assertEquals(new OcrResult.ExtractedRecipe("Apricot tart", 14, "Apricots", 0.95), recipes.get(4));
+        assertFalse(recipes.get(0).needsReview());
+    }
+
+    @Test
+    void parse_shouldKeepLowercaseEntriesUnderTheirHeading() {
+        List<OcrResult.ExtractedRecipe> recipes = parser.parse("""
+                Pears
+                poached pears .......... 9
+                pear and almond
+                tart ................... 31
+                Plums
+                plum crumble ........... 40
+                """).orElseThrow().result().recipes();
+
+        assertEquals(List.of("poached pears", "pear and almond tart", "plum crumble"),
+                recipes.stream().map(OcrResult.ExtractedRecipe::recipeName).toList());
+        assertEquals(List.of("Pears", "Pears", "Plums"),
+                recipes.stream().map(OcrResult.ExtractedRecipe::ingredient).toList());
+    }
+
+    @Test
+    void parse_shouldReadInlineIngredients() {
+        List<OcrResult.ExtractedRecipe> recipes = parser.parse("""
+                Leeks → Leek and potato soup, 20
+                Lemons → Lemon curd, 88
+                Lentils → Dal, 102
+                """).orElseThrow().result().recipes();
+
+        assertEquals(new OcrResult.ExtractedRecipe("Leek and potato soup", 20, "Leeks", 0.95), recipes.get(0));
+        assertEquals("Lentils", recipes.get(2).ingredient());
+    }
+
+    @Test
+    void parse_shouldLowerConfidenceForUnexplainedLines() {
+        OcrResult.ExtractedRecipe recipe = parser.parse("""
+                Carrots
+                Carrot cake ............ 5
+                Glazed carrots ......... 6
+                Carrot soup ............ 7
+                Roasted roots .......... 8
+                see also Parsnips
+                Turnips
+                Turnip gratin .......... 9
+                """).orElseThrow().result().recipes().getFirst();
+
+        assertTrue(recipe.confidence() < 0.95, "confidence " + recipe.confidence());
+    }
+
+    @Test
+    void parse_shouldSkipLinesWithoutAnyName() {
+        List<OcrResult.ExtractedRecipe> recipes = parser.parse("""
+                Apples
+                . . . .
+                Apple pie ... 45
+                :
+                Baked apples ... 67
+                ……
+                Pears:
+                Poached pears ... 9
+                · · → Pear tart, 31
+                """).orElseThrow().result().recipes();
+
+        assertEquals(List.of("Apple pie", "Baked apples", "Poached pears", "Pear tart"),
+                recipes.stream().map(OcrResult.ExtractedRecipe::recipeName).toList());
+        assertEquals(List.of("Apples", "Apples", "Pears", "Pears"),
+                recipes.stream().map(OcrResult.ExtractedRecipe::ingredient).toList());
+    }
+
+    @Test
+    void parse_shouldRejectPagesItDoesNotUnderstand() {
+        assertTrue(parser.parse(null).isEmpty());
+        assertTrue(parser.parse("   ").isEmpty());
+        // Garbled font encoding
+        assertTrue(parser.parse("��� ��� 12\n��� 14\n��� 16").isEmpty());
+        // Prose rather than an index
+        assertTrue(parser.parse("""
+                This book collects the recipes
+                of three generations of cooks
+                from the south of France
+                Sauces ................. 12
+                """).isEmpty());
+        // Too few entries
+        assertTrue(parser.parse("Apples\nApple pie ..... 4").isEmpty());
+    }
+}
@@ -0,0 +1,44 @@
+package org.ldclrcq.service;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+import org.ldclrcq.entity.Cookbook;
+import org.ldclrcq.entity.CookbookIndexPage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class LargeObjectSweeperTest {
+
+    @Inject
+    PostgresBlobStore largeObjects;
+
+    @Inject
+    LargeObjectSweeper sweeper;
+
+    @Test
+    void sweep_shouldUnlinkOnlyUnreferencedLargeObjects() throws Exception {
+        BlobStore.StoredBlob orphan = largeObjects.write(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        BlobStore.StoredBlob referenced = largeObjects.write(new ByteArrayInputStream(new byte[]{4, 5, 6}));
+        QuarkusTransaction.requiringNew().run(() -> {
+            Cookbook cookbook = Cookbook.create("Sweeper", "Test Author");
+            cookbook.persist();
+            CookbookIndexPage.create(cookbook.id, 0, referenced, "image/jpeg").persist();
+        });
+
+        // Within the grace period nothing is unlinked
+        sweeper.sweep(Duration.ofHours(1));
+        assertArrayEquals(new byte[]{1, 2, 3}, largeObjects.read(orphan.key(), (in, size) -> in.readAllBytes()));
+
+        assertTrue(sweeper.sweep(Duration.ZERO) >= 1);
+
+        assertThrows(IOException.class, () -> largeObjects.read(orphan.key(), (in, size) -> in.readAllBytes()));
+        assertArrayEquals(new byte[]{4, 5, 6}, largeObjects.read(referenced.key(), (in, size) -> in.readAllBytes()));
+    }
+}
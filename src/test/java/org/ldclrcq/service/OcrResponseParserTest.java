@@ -0,0 +1,76 @@
+package org.ldclrcq.service;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class OcrResponseParserTest {
+
+    @Inject
+    OcrResponseParser parser;
+
+    @Test
+    void parse_shouldAcceptStrictJson() {
+        OcrResponseParser.ParsedResponse parsed = parser.parse("""
+                {"recipes": [{"ingredient": "apple", "recipeName": "Apple Pie", "pageNumber": 5, "confidence": 0.9}]}
+                """);
+
+        assertFalse(parsed.repaired());
+        assertFalse(parsed.partial());
+        assertEquals(1, parsed.result().recipes().size());
+    }
+
+    @Test
+    void parse_shouldRepairMarkdownFenceAndTrailingCommas() {
+        OcrResponseParser.ParsedResponse parsed = parser.parse("""
+                ```json
+                {"recipes": [
+                  {"ingredient": "apple", "recipeName": "Apple Pie", "pageNumber": 5, "confidence": 0.9,},
+                  {"ingredient": "pear", "recipeName": "Pear Tart", "pageNumber": 7, "confidence": 0.8},
+                ]}
+                ```
+                """);
+
+        assertTrue(parsed.repaired());
+        assertFalse(parsed.partial());
+        assertEquals(2, parsed.result().recipes().size());
+    }
+
+    @Test
+    void parse_shouldKeepCommasInsideStrings() {
+        OcrResponseParser.ParsedResponse parsed = parser.parse("""
+                ```json
+                {"recipes": [{"ingredient": "leek", "recipeName": "Leeks, ] and more, }", "pageNumber": 3, "confidence": 0.9}]}
+                ```
+                """);
+        assertEquals("Leeks, ] and more, }", parsed.result().recipes().getFirst().recipeName());
+
+        // Also when trailing commas elsewhere had to be dropped
+        parsed = parser.parse("""
+                {"recipes": [{"ingredient": "leek", "recipeName": "Leeks, ]", "pageNumber": 3, "confidence": 0.9,},]}
+                """);
+        assertTrue(parsed.repaired());
+        assertEquals("Leeks, ]", parsed.result().recipes().getFirst().recipeName());
+    }
+
+    @Test
+    void parse_shouldSalvageCompleteElementsFromTruncatedOutput() {
+        OcrResponseParser.ParsedResponse parsed = parser.parse("""
+                {"recipes": [
+                  {"ingredient": "apple", "recipeName": "Apple Pie", "pageNumber": 5, "confidence": 0.9},
+                  {"ingredient": "pear", "recipeName": "Pear {Tart}", "pageNumber": 7, "confidence": 0.8},
+                  {"ingredient": "plum", "recipeName": "Plum Cru""");
+
+        assertTrue(parsed.partial());
+        assertEquals(2, parsed.salvagedCount());
+        assertEquals("Pear {Tart}", parsed.result().recipes().get(1).recipeName());
+    }
+
+    @Test
+    void parse_shouldRejectUnrecoverableOutput() {
+        assertThrows(IllegalArgumentException.class, () -> parser.parse("Sorry, I cannot read this page."));
+    }
+}
@@ -0,0 +1,77 @@
+package org.ldclrcq.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerceptualHashTest {
+
+    @Test
+    void dHash_shouldBeCloseForAnotherPhotoOfTheSamePage() throws IOException {
+        long original = PerceptualHash.dHash(page(1, 1200, 0));
+        // Smaller, framed tighter, slightly rotated, darker and recompressed
+        BufferedImage retaken = page(1, 900, 0.005).getSubimage(20, 30, 860, 1130);
+        BufferedImage darker = new BufferedImage(retaken.getWidth(), retaken.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = darker.createGraphics();
+        g.drawImage(retaken, 0, 0, null);
+        g.setColor(new Color(0, 0, 0, 40));
+        g.fillRect(0, 0, darker.getWidth(), darker.getHeight());
+        g.dispose();
+        BufferedImage recompressed = ImageIO.read(new ByteArrayInputStream(Images.encodeJpeg(darker, 0.5f)));
+
+        int distance = PerceptualHash.distance(original, PerceptualHash.dHash(recompressed));
+        assertTrue(distance <= 10, "distance " + distance);
+    }
+
+    @Test
+    void dHash_shouldBeFarForOtherPagesWithTheSameLayout() {
+        long first = PerceptualHash.dHash(page(1, 1200, 0));
+        for (long seed = 2; seed <= 6; seed++) {
+            int distance = PerceptualHash.distance(first, PerceptualHash.dHash(page(seed, 1200, 0)));
+            assertTrue(distance > 16, "distance to page " + seed + ": " + distance);
+        }
+    }
+
+    @Test
+    void distance_shouldCountDifferingBits() {
+        assertEquals(0, PerceptualHash.distance(0xF0F0L, 0xF0F0L));
+        assertEquals(2, PerceptualHash.distance(0b1010L, 0b0110L));
+        assertEquals(64, PerceptualHash.distance(0L, -1L));
+    }
+
+    /**
+     * A two-column index page: headings and entries of random lengths, different for each seed.
+     */
+    static BufferedImage page(long seed, int width, double rotation) {
+        int height = width * 4 / 3;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.setTransform(AffineTransform.getRotateInstance(rotation, width / 2.0, height / 2.0));
+        g.setColor(Color.BLACK);
+        Random random = new Random(seed);
+        double unit = width / 100.0;
+        for (int column = 0; column < 2; column++) {
+            double y = 8 * unit;
+            while (y < height - 8 * unit) {
+                boolean heading = random.nextInt(6) == 0;
+                double length = (heading ? 12 : 15 + random.nextInt(28)) * unit;
+                double lineHeight = (heading ? 2.4 : 1.4) * unit;
+                g.fillRect((int) ((6 + column * 48) * unit), (int) y, (int) length, (int) lineHeight);
+                y += (heading ? 5 : 3) * unit + random.nextInt(4) * unit * (random.nextInt(5) == 0 ? 2 : 0);
+            }
+        }
+        g.dispose();
+        return image;
+    }
+}
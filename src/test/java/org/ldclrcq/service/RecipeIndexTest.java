@@ -0,0 +1,31 @@
+package org.ldclrcq.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecipeIndexTest {
+
+    @Test
+    void collatorFor_shouldSortAccentedNamesAmongTheOthers() {
+        Collator collator = RecipeIndex.collatorFor("fr_FR.UTF-8");
+        List<String> names = new ArrayList<>(List.of("Zucchini bread", "Éclair", "eggs benedict", "Crêpes", "Clafoutis"));
+
+        names.sort(collator);
+
+        assertEquals(List.of("Clafoutis", "Crêpes", "Éclair", "eggs benedict", "Zucchini bread"), names);
+    }
+
+    @Test
+    void collatorFor_shouldUnderstandCollationNameVariants() {
+        assertNotNull(RecipeIndex.collatorFor("en_US.utf8"));
+        assertNotNull(RecipeIndex.collatorFor("de_DE@euro"));
+        assertNull(RecipeIndex.collatorFor("C"));
+        assertNull(RecipeIndex.collatorFor("C.UTF-8"));
+        assertNull(RecipeIndex.collatorFor("POSIX"));
+    }
+}